@@ -39,10 +39,46 @@ import java.util.Observable;
  */
 public abstract class AbstractMessageReceiver extends Observable implements Runnable, Closeable {
 
+    /**
+     * The maximum payload of an UDP datagram.
+     */
+    static final int MAX_UDP_SIZE = 65507;
+
+    private volatile boolean datagramDelivery;
+
     protected AbstractMessageReceiver() {
         super();
     }
 
+    /**
+     * Selects the type of the objects notified to the observers.
+     * <p>
+     * By default, received messages are notified as {@link
+     * java.lang.String}. If datagram delivery is enabled, receivers
+     * reading from the network notify {@link Datagram} objects instead,
+     * so no charset decoding and no String allocation takes place on
+     * the receive path. Receivers which don't read from the network
+     * might ignore this setting.
+     *
+     * @param enable {@code true} to notify {@link Datagram} objects,
+     * {@code false} to notify {@link java.lang.String}s.
+     *
+     * @since 2.3
+     */
+    public void setDatagramDelivery(boolean enable) {
+        this.datagramDelivery = enable;
+    }
+
+    /**
+     * @return {@code true} if {@link Datagram} objects are notified
+     * instead of {@link java.lang.String}s.
+     *
+     * @since 2.3
+     */
+    public boolean isDatagramDelivery() {
+        return datagramDelivery;
+    }
+
     @Override
     public abstract void close();
 }
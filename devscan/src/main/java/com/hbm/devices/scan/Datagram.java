@@ -0,0 +1,130 @@
+/*
+ * Java Scan, a library for scanning and configuring HBM devices.
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) Hottinger Baldwin Messtechnik GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.hbm.devices.scan;
+
+import java.net.SocketAddress;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * A raw multicast message as received from the network.
+ * <p>
+ * Message receivers notify objects of this class instead of {@link
+ * java.lang.String}s if {@link
+ * AbstractMessageReceiver#setDatagramDelivery(boolean)} was enabled. This
+ * allows later stages to work on the received bytes without decoding them.
+ * <p>
+ * To avoid allocations on the receive path, receivers reuse a single
+ * {@code Datagram} object and its backing array for all notified messages.
+ * So the content of a notified {@code Datagram} is only valid during the
+ * call of {@link java.util.Observer#update(java.util.Observable, Object)
+ * update()}. Observers that want to keep the message must use {@link
+ * #copy()}.
+ * <p>
+ * If known, the {@link SocketAddress} of the sender is kept together
+ * with the message, so later stages can treat messages differently
+ * depending on their origin.
+ *
+ * @since 2.3
+ */
+public final class Datagram {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private byte[] data;
+    private int length;
+    private SocketAddress source;
+
+    /**
+     * Constructs a {@code Datagram} wrapping the given array without copying it.
+     *
+     * @param data the array containing the message.
+     * @param length the number of valid bytes in {@code data}.
+     */
+    public Datagram(byte[] data, int length) {
+        set(data, length, null);
+    }
+
+    /**
+     * Constructs a {@code Datagram} wrapping the given array without copying it.
+     *
+     * @param data the array containing the message.
+     * @param length the number of valid bytes in {@code data}.
+     * @param source the address the message was sent from, might be {@code null}.
+     */
+    public Datagram(byte[] data, int length, SocketAddress source) {
+        set(data, length, source);
+    }
+
+    /**
+     * @return the array containing the message. The array is not
+     * copied and might be larger than the message, only the first
+     * {@link #getLength()} bytes are valid.
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    /**
+     * @return the number of valid bytes in the array returned by {@link #getData()}.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return the address the message was sent from or {@code null} if unknown.
+     */
+    public SocketAddress getSource() {
+        return source;
+    }
+
+    /**
+     * @return the message decoded as UTF-8 {@link java.lang.String}.
+     */
+    public String getMessage() {
+        return new String(data, 0, length, UTF8);
+    }
+
+    /**
+     * @return a {@code Datagram} owning a copy of the valid bytes of this datagram.
+     */
+    public Datagram copy() {
+        return new Datagram(Arrays.copyOf(data, length), length, source);
+    }
+
+    void set(byte[] data, int length, SocketAddress source) {
+        if (length < 0 || length > data.length) {
+            throw new IllegalArgumentException("length exceeds data");
+        }
+        this.data = data;
+        this.length = length;
+        this.source = source;
+    }
+}
@@ -0,0 +1,299 @@
+/*
+ * Java Scan, a library for scanning and configuring HBM devices.
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) Hottinger Baldwin Messtechnik GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.hbm.devices.scan;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.MembershipKey;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+
+/**
+ * This class receives messages from a multicast UDP {@link DatagramChannel}
+ * and converts them to a {@link java.lang.String}.
+ * <p>
+ * In contrast to {@link MulticastMessageReceiver}, the multicast group is
+ * joined via a {@link MembershipKey} for each network interface eligible to
+ * receive IPv4 multicast messages (see {@link com.hbm.devices.scan.ScanInterfaces}).
+ * Datagrams are received into a single direct {@link ByteBuffer} which is
+ * reused for the whole lifetime of the receiver, avoiding the copy from
+ * the kernel into a heap buffer and the allocation of a receive buffer
+ * per datagram.
+ * <p>
+ * Whenever the channel becomes readable, all datagrams already queued
+ * in the socket are drained without blocking. By default every datagram
+ * is notified as a single {@link java.lang.String}. After calling
+ * {@link #setBatchSize(int) setBatchSize()} with a value greater than 1, up to
+ * that many datagrams are notified at once as an unmodifiable {@link
+ * java.util.List} of {@link java.lang.String}s (or {@link Datagram}s). The downstream stages {@link
+ * com.hbm.devices.scan.announce.AnnounceDeserializer}, {@link
+ * com.hbm.devices.scan.announce.filter.Filter} and {@link
+ * com.hbm.devices.scan.announce.DeviceMonitor} forward such a batch as a
+ * whole, so locking and dispatching is done once per batch.
+ * <p>
+ * Receiving messages is done infinitely when calling {@link #run() run()}. After calling
+ * {@link #close() close()}, {@link #run() run()} returns.
+ * <p>
+ * Objects which are interested in String multicast messages have
+ * to implement the {@link java.util.Observer} interface and register themselves to an instance of
+ * this class with addObserver().
+ *
+ * @since 2.3
+ */
+public class MulticastChannelReceiver extends AbstractMessageReceiver {
+
+    private volatile boolean shallRun = true;
+    private final DatagramChannel channel;
+    private final Selector selector;
+    private volatile int batchSize = 1;
+    private final List<MembershipKey> memberships;
+    private final ByteBuffer buffer;
+    private final MulticastChannels.Decoder decoder;
+    private final byte[] datagramBytes;
+    private final Datagram datagram;
+    private SocketAddress source;
+    private static final Logger LOGGER = Logger.getLogger(ScanConstants.LOGGER_NAME);
+
+    /**
+     * Creates a {@link MulticastChannelReceiver} for receiving
+     * multicast messsages
+     *
+     * @param multicastIP The multicast IP the {@link MulticastChannelReceiver} will listen to.
+     * @param port The port for listening to multicast packets.
+     *
+     * @throws IOException if creating the underlying channel fails.
+     */
+    public MulticastChannelReceiver(String multicastIP, int port) throws IOException {
+        this(InetAddress.getByName(multicastIP), port);
+    }
+
+    /**
+     * Creates a {@link MulticastChannelReceiver} for receiving
+     * multicast messsages
+     *
+     * @param multicastIP The multicast IP the {@link MulticastChannelReceiver} will listen to.
+     * @param port The port for listening to multicast packets.
+     * @param ifacePredicate custom filter to be applied to each available network interface
+     *        before checking its multicast capability.
+     *
+     * @throws IOException if creating the underlying channel fails.
+     */
+    public MulticastChannelReceiver(String multicastIP, int port, Predicate<NetworkInterface> ifacePredicate) throws IOException {
+        this(InetAddress.getByName(multicastIP), port, ifacePredicate);
+    }
+
+    /**
+     * Creates a {@link MulticastChannelReceiver} for receiving
+     * multicast messsages
+     *
+     * @param multicastIP The multicast IP the {@link MulticastChannelReceiver} will listen to.
+     * @param port The port for listening to multicast packets.
+     *
+     * @throws IOException if creating the underlying channel fails.
+     */
+    public MulticastChannelReceiver(InetAddress multicastIP, int port) throws IOException {
+        this(multicastIP, port, Predicates.<NetworkInterface>alwaysTrue());
+    }
+
+    /**
+     * Creates a {@link MulticastChannelReceiver} for receiving
+     * multicast messsages
+     *
+     * @param multicastIP The multicast IP the {@link MulticastChannelReceiver} will listen to.
+     * @param port The port for listening to multicast packets.
+     * @param ifacePredicate custom filter to be applied to each available network interface
+     *        before checking its multicast capability.
+     *
+     * @throws IOException if creating the underlying channel fails.
+     */
+    public MulticastChannelReceiver(InetAddress multicastIP, int port, Predicate<NetworkInterface> ifacePredicate) throws IOException {
+        super();
+        this.buffer = ByteBuffer.allocateDirect(MAX_UDP_SIZE);
+        this.decoder = new MulticastChannels.Decoder();
+        this.datagramBytes = new byte[MAX_UDP_SIZE];
+        this.datagram = new Datagram(datagramBytes, 0);
+        this.channel = MulticastChannels.open(port);
+        this.memberships = MulticastChannels.joinOnAllInterfaces(channel, multicastIP, ifacePredicate);
+        this.selector = registerChannel(channel);
+    }
+
+    /**
+     * Sets the maximum number of datagrams notified at once.
+     *
+     * @param batchSize the maximum number of datagrams drained from the
+     * socket and notified as a single {@link java.util.List}. A value of 1
+     * (the default) notifies every datagram as a single {@link
+     * java.lang.String}.
+     *
+     * @throws IllegalArgumentException if {@code batchSize} is less than 1.
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batch size must be at least 1");
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @return the maximum number of datagrams notified at once.
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * This method starts receiving from the multicast channel.
+     *
+     * In an infinite loop this method waits for incoming
+     * messages, converts them into strings (or {@link Datagram}s if
+     * {@link #setDatagramDelivery(boolean) datagram delivery} is enabled)
+     * and forwards them to all observers.
+     */
+    @Override
+    public void run() {
+        while (shallRun) {
+            try {
+                selector.select();
+                selector.selectedKeys().clear();
+                drain();
+            } catch (ClosedChannelException | ClosedSelectorException e) {
+                /*
+                 * The channel was closed, either by close() or because
+                 * the receiving thread was interrupted. In both cases
+                 * there is nothing left to receive.
+                 */
+                break;
+            } catch (IOException e) {
+                /*
+                 * No error handling by intention. Receiving announce datagrams is a best effort
+                 * service. so don't bother users of the class with error handling.
+                 *
+                 * Just try receiving the next datagram.
+                 */
+                if (shallRun) {
+                    LOGGER.log(Level.INFO, "Error receiving Multicast messages!", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * This method closes the multicast channel and cancels the infinite receiving loop.
+     */
+    @Override
+    public void close() {
+        shallRun = false;
+        MulticastChannels.leave(memberships);
+        try {
+            channel.close();
+            selector.close();
+        } catch (IOException e) {
+            /*
+             * No error handling by intention. Stopping to receive datagrams is best effort.
+             */
+            LOGGER.log(Level.INFO, "Can't close multicast channel!", e);
+        }
+    }
+
+    private static Selector registerChannel(DatagramChannel chan) throws IOException {
+        Selector sel = null;
+        try {
+            sel = Selector.open();
+            chan.configureBlocking(false);
+            chan.register(sel, SelectionKey.OP_READ);
+            return sel;
+        } catch (IOException e) {
+            if (sel != null) {
+                sel.close();
+            }
+            chan.close();
+            throw e;
+        }
+    }
+
+    private void drain() throws IOException {
+        final int maxBatch = batchSize;
+        final boolean raw = isDatagramDelivery();
+        if (maxBatch == 1) {
+            while (shallRun && receive()) {
+                setChanged();
+                notifyObservers(raw ? fillDatagram() : decoder.decode(buffer));
+            }
+            return;
+        }
+
+        List<Object> batch = new ArrayList<>(maxBatch);
+        while (shallRun && receive()) {
+            batch.add(raw ? fillDatagram().copy() : decoder.decode(buffer));
+            if (batch.size() == maxBatch) {
+                notifyBatch(batch);
+                batch = new ArrayList<>(maxBatch);
+            }
+        }
+        if (!batch.isEmpty()) {
+            notifyBatch(batch);
+        }
+    }
+
+    private boolean receive() throws IOException {
+        buffer.clear();
+        source = channel.receive(buffer);
+        if (source == null) {
+            return false;
+        }
+        buffer.flip();
+        return true;
+    }
+
+    private Datagram fillDatagram() {
+        final int length = buffer.remaining();
+        buffer.get(datagramBytes, 0, length);
+        datagram.set(datagramBytes, length, source);
+        return datagram;
+    }
+
+    private void notifyBatch(List<Object> batch) {
+        setChanged();
+        notifyObservers(Collections.unmodifiableList(batch));
+    }
+}
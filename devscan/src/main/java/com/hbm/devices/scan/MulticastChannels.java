@@ -0,0 +1,117 @@
+/*
+ * Java Scan, a library for scanning and configuring HBM devices.
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) Hottinger Baldwin Messtechnik GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.hbm.devices.scan;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.MembershipKey;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.google.common.base.Predicate;
+
+/*
+ * Helper methods shared by all receivers built on
+ * java.nio.channels.DatagramChannel.
+ */
+final class MulticastChannels {
+
+    private MulticastChannels() {
+    }
+
+    static DatagramChannel open(int port) throws IOException {
+        final DatagramChannel chan = DatagramChannel.open(StandardProtocolFamily.INET);
+        try {
+            chan.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            chan.bind(new InetSocketAddress(port));
+        } catch (IOException e) {
+            chan.close();
+            throw e;
+        }
+        return chan;
+    }
+
+    static List<MembershipKey> joinOnAllInterfaces(DatagramChannel chan, InetAddress multicastIP,
+            Predicate<NetworkInterface> ifacePredicate) throws IOException {
+        final Collection<NetworkInterface> interfaces = new ScanInterfaces(ifacePredicate).getInterfaces();
+        final List<MembershipKey> keys = new ArrayList<>(interfaces.size());
+        try {
+            for (final NetworkInterface ni : interfaces) {
+                keys.add(chan.join(multicastIP, ni));
+            }
+        } catch (IOException e) {
+            chan.close();
+            throw e;
+        }
+        return keys;
+    }
+
+    static void leave(List<MembershipKey> keys) {
+        for (final MembershipKey key : keys) {
+            key.drop();
+        }
+    }
+
+    /*
+     * Decodes UTF-8 datagrams into Strings, reusing the decoder and
+     * the character buffer for every datagram. Instances are not
+     * thread safe.
+     */
+    static final class Decoder {
+        private final CharsetDecoder decoder;
+        private final CharBuffer chars;
+
+        Decoder() {
+            this.chars = CharBuffer.allocate(AbstractMessageReceiver.MAX_UDP_SIZE);
+            this.decoder = Charset.forName("UTF-8").newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+
+        String decode(ByteBuffer bytes) {
+            decoder.reset();
+            chars.clear();
+            decoder.decode(bytes, chars, true);
+            decoder.flush(chars);
+            chars.flip();
+            return chars.toString();
+        }
+    }
+}
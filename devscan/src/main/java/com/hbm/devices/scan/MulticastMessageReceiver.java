@@ -67,7 +67,6 @@ public class MulticastMessageReceiver extends AbstractMessageReceiver {
     private boolean shallRun = true;
     private final MulticastSocket socket;
     private static final Logger LOGGER = Logger.getLogger(ScanConstants.LOGGER_NAME);
-    private static final int MAX_UDP_SIZE = 65507;
 
     /**
      * Creates a {@link MulticastMessageReceiver} for receiving
@@ -132,19 +131,26 @@ public class MulticastMessageReceiver extends AbstractMessageReceiver {
      * This method starts the listening socket.
      *
      * In an infinite loop this method waits for incoming
-     * messages, converts them into strings and forwards them to all observers.
+     * messages, converts them into strings (or {@link Datagram}s if
+     * {@link #setDatagramDelivery(boolean) datagram delivery} is enabled)
+     * and forwards them to all observers.
      */
     @Override
     public void run() {
         final byte[] buffer = new byte[MAX_UDP_SIZE];
         final Charset charset = Charset.forName("UTF-8");
         final DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        final Datagram datagram = new Datagram(buffer, 0);
         while (shallRun) {
             try {
                 socket.receive(packet);
-                final String message = new String(buffer, 0, packet.getLength(), charset);
                 setChanged();
-                notifyObservers(message);
+                if (isDatagramDelivery()) {
+                    datagram.set(buffer, packet.getLength(), packet.getSocketAddress());
+                    notifyObservers(datagram);
+                } else {
+                    notifyObservers(new String(buffer, 0, packet.getLength(), charset));
+                }
             } catch (IOException e) {
                 /*
                  * No error handling by intention. Receiving announce datagrams is a best effort
@@ -0,0 +1,283 @@
+/*
+ * Java Scan, a library for scanning and configuring HBM devices.
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) Hottinger Baldwin Messtechnik GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.hbm.devices.scan;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.MembershipKey;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Observable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+
+/**
+ * This class receives multicast messages of several multicast groups
+ * with a single {@link Selector} driven thread.
+ * <p>
+ * Each multicast group is joined on all network interfaces eligible to
+ * receive IPv4 multicast messages (see {@link com.hbm.devices.scan.ScanInterfaces}).
+ * The announce group and the configuration group (see {@link ScanConstants})
+ * are joined during construction, further groups might be added via
+ * {@link #addGroup(InetAddress, int) addGroup()}.
+ * <p>
+ * For every group an {@link Observable} is provided which notifies the
+ * received messages as {@link java.lang.String}. So an {@link
+ * com.hbm.devices.scan.announce.AnnounceDeserializer} might be attached to
+ * {@link #getAnnounceObservable()} and a {@link
+ * com.hbm.devices.scan.configure.ResponseDeserializer} to {@link
+ * #getConfigurationObservable()}, both served by the same thread.
+ * <p>
+ * Receiving messages is done infinitely when calling {@link #run() run()}. After calling
+ * {@link #close() close()}, {@link #run() run()} returns.
+ *
+ * @since 2.3
+ */
+public final class MulticastReceiverHub implements Runnable, Closeable {
+
+    private final Predicate<NetworkInterface> ifacePredicate;
+    private final Selector selector;
+    private final Object registrationLock;
+    private final List<GroupChannel> groups;
+    private final ByteBuffer buffer;
+    private final MulticastChannels.Decoder decoder;
+    private final Observable announceObservable;
+    private final Observable configurationObservable;
+    private volatile boolean shallRun = true;
+    private static final Logger LOGGER = Logger.getLogger(ScanConstants.LOGGER_NAME);
+
+    /**
+     * Creates a {@link MulticastReceiverHub} joining the announce and
+     * the configuration multicast groups.
+     *
+     * @throws IOException if creating the selector or the underlying channels fails.
+     */
+    public MulticastReceiverHub() throws IOException {
+        this(Predicates.<NetworkInterface>alwaysTrue());
+    }
+
+    /**
+     * Creates a {@link MulticastReceiverHub} joining the announce and
+     * the configuration multicast groups.
+     *
+     * @param ifacePredicate custom filter to be applied to each available network interface
+     *        before checking its multicast capability.
+     *
+     * @throws IOException if creating the selector or the underlying channels fails.
+     */
+    public MulticastReceiverHub(Predicate<NetworkInterface> ifacePredicate) throws IOException {
+        this.ifacePredicate = ifacePredicate;
+        this.selector = Selector.open();
+        this.registrationLock = new Object();
+        this.groups = new CopyOnWriteArrayList<>();
+        this.buffer = ByteBuffer.allocateDirect(AbstractMessageReceiver.MAX_UDP_SIZE);
+        this.decoder = new MulticastChannels.Decoder();
+        try {
+            this.announceObservable = addGroup(ScanConstants.ANNOUNCE_ADDRESS, ScanConstants.ANNOUNCE_PORT);
+            this.configurationObservable = addGroup(ScanConstants.CONFIGURATION_ADDRESS, ScanConstants.CONFIGURATION_PORT);
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the {@link Observable} notifying all messages received
+     * on the announce multicast group.
+     */
+    public Observable getAnnounceObservable() {
+        return announceObservable;
+    }
+
+    /**
+     * @return the {@link Observable} notifying all messages received
+     * on the configuration multicast group.
+     */
+    public Observable getConfigurationObservable() {
+        return configurationObservable;
+    }
+
+    /**
+     * Joins an additional multicast group.
+     *
+     * @param multicastIP The multicast IP to listen to.
+     * @param port The port for listening to multicast packets.
+     *
+     * @return an {@link Observable} notifying all messages received on
+     * the group.
+     *
+     * @throws IOException if creating or registering the underlying channel fails.
+     */
+    public Observable addGroup(String multicastIP, int port) throws IOException {
+        return addGroup(InetAddress.getByName(multicastIP), port);
+    }
+
+    /**
+     * Joins an additional multicast group.
+     * <p>
+     * This method might be called while {@link #run() run()} is
+     * executed by another thread.
+     *
+     * @param multicastIP The multicast IP to listen to.
+     * @param port The port for listening to multicast packets.
+     *
+     * @return an {@link Observable} notifying all messages received on
+     * the group.
+     *
+     * @throws IOException if creating or registering the underlying channel fails.
+     */
+    public Observable addGroup(InetAddress multicastIP, int port) throws IOException {
+        final DatagramChannel channel = MulticastChannels.open(port);
+        final List<MembershipKey> memberships =
+            MulticastChannels.joinOnAllInterfaces(channel, multicastIP, ifacePredicate);
+        final GroupChannel group = new GroupChannel(channel, memberships);
+        try {
+            channel.configureBlocking(false);
+            synchronized (registrationLock) {
+                selector.wakeup();
+                channel.register(selector, SelectionKey.OP_READ, group);
+            }
+        } catch (IOException e) {
+            group.close();
+            throw e;
+        }
+        groups.add(group);
+        return group;
+    }
+
+    /**
+     * This method starts the event loop.
+     *
+     * In an infinite loop this method waits for incoming
+     * messages on all joined groups, converts them into strings and
+     * forwards them to the observers of the respective group.
+     */
+    @Override
+    public void run() {
+        while (shallRun) {
+            try {
+                selector.select();
+                synchronized (registrationLock) {
+                    /*
+                     * Just wait until a concurrent addGroup() has
+                     * registered its channel.
+                     */
+                }
+                final Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                while (iterator.hasNext()) {
+                    final SelectionKey key = iterator.next();
+                    iterator.remove();
+                    if (key.isValid() && key.isReadable()) {
+                        receive((GroupChannel) key.attachment());
+                    }
+                }
+            } catch (ClosedSelectorException e) {
+                break;
+            } catch (IOException e) {
+                /*
+                 * No error handling by intention. Receiving datagrams is a best effort
+                 * service. so don't bother users of the class with error handling.
+                 */
+                if (shallRun) {
+                    LOGGER.log(Level.INFO, "Error receiving Multicast messages!", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * This method closes all channels and the selector and cancels the
+     * event loop.
+     */
+    @Override
+    public void close() {
+        shallRun = false;
+        for (final GroupChannel group : groups) {
+            group.close();
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            /*
+             * No error handling by intention. Stopping to receive datagrams is best effort.
+             */
+            LOGGER.log(Level.INFO, "Can't close selector!", e);
+        }
+    }
+
+    private void receive(GroupChannel group) {
+        try {
+            buffer.clear();
+            if (group.channel.receive(buffer) != null) {
+                buffer.flip();
+                group.publish(decoder.decode(buffer));
+            }
+        } catch (IOException e) {
+            if (shallRun) {
+                LOGGER.log(Level.INFO, "Error receiving Multicast messages!", e);
+            }
+        }
+    }
+
+    private static final class GroupChannel extends Observable {
+        private final DatagramChannel channel;
+        private final List<MembershipKey> memberships;
+
+        GroupChannel(DatagramChannel channel, List<MembershipKey> memberships) {
+            super();
+            this.channel = channel;
+            this.memberships = memberships;
+        }
+
+        void publish(String message) {
+            setChanged();
+            notifyObservers(message);
+        }
+
+        void close() {
+            MulticastChannels.leave(memberships);
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.INFO, "Can't close multicast channel!", e);
+            }
+        }
+    }
+}
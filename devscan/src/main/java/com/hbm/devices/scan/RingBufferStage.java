@@ -0,0 +1,275 @@
+/*
+ * Java Scan, a library for scanning and configuring HBM devices.
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) Hottinger Baldwin Messtechnik GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.hbm.devices.scan;
+
+import java.io.Closeable;
+import java.net.SocketAddress;
+import java.util.List;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A bounded hand-off between a message receiver and the stages
+ * processing the received messages.
+ * <p>
+ * Without this stage, all observers of a receiver run on the thread
+ * reading from the socket. A slow observer then stalls the receive
+ * loop and the kernel starts dropping packets. A {@code
+ * RingBufferStage} observes a receiver, stores each message into a
+ * preallocated slot of a ring buffer and returns immediately. One or
+ * more consumer threads take the messages out of the ring buffer and
+ * notify the observers of this stage.
+ * <p>
+ * The ring buffer never blocks the receive thread. If all slots are
+ * occupied, the message is dropped and counted, see {@link
+ * #getOverflowCount()}.
+ * <p>
+ * {@link Datagram}s are copied into the byte array owned by the slot,
+ * so the receiver can reuse its buffer immediately. Consumers notify a
+ * {@link Datagram} view on that slot which is valid during the call of
+ * {@link Observer#update(Observable, Object) update()} only, exactly
+ * like the {@link Datagram}s notified by the receivers. All other
+ * objects are passed on by reference.
+ * <p>
+ * The stage expects to be fed by a single receiver thread. If more
+ * than one consumer is configured, observers are called concurrently
+ * from different consumer threads and must be thread safe. With a
+ * single consumer, the message order is preserved.
+ *
+ * @since 2.3
+ */
+public final class RingBufferStage extends Observable implements Observer, Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(ScanConstants.LOGGER_NAME);
+    private static final int INITIAL_SLOT_SIZE = 2048;
+
+    private final List<Observer> observers;
+    private final int mask;
+    private final Object[] messages;
+    private final byte[][] buffers;
+    private final int[] lengths;
+    private final SocketAddress[] sources;
+    private final AtomicLongArray sequences;
+    private final Semaphore published;
+    private final AtomicLong head;
+    private final AtomicLong completed;
+    private final AtomicLong overflows;
+    private final ExecutorService executor;
+    private volatile long tail;
+    private volatile boolean closed;
+
+    /**
+     * Constructs a new {@code RingBufferStage} and starts its consumer threads.
+     *
+     * @param capacity the number of slots in the ring buffer. It is
+     * rounded up to the next power of two.
+     * @param consumers the number of threads notifying the observers.
+     *
+     * @throws IllegalArgumentException if {@code capacity} or {@code
+     * consumers} are smaller than 1 or {@code capacity} is too large.
+     */
+    public RingBufferStage(int capacity, int consumers) {
+        super();
+        if (capacity < 1 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("capacity out of range");
+        }
+        if (consumers < 1) {
+            throw new IllegalArgumentException("consumers must be at least 1");
+        }
+        final int size = Integer.highestOneBit(capacity) == capacity ? capacity : Integer.highestOneBit(capacity) << 1;
+        mask = size - 1;
+        observers = new CopyOnWriteArrayList<>();
+        messages = new Object[size];
+        buffers = new byte[size][INITIAL_SLOT_SIZE];
+        lengths = new int[size];
+        sources = new SocketAddress[size];
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        published = new Semaphore(0);
+        head = new AtomicLong();
+        completed = new AtomicLong();
+        overflows = new AtomicLong();
+        executor = Executors.newFixedThreadPool(consumers);
+        for (int i = 0; i < consumers; i++) {
+            executor.execute(new Consumer());
+        }
+    }
+
+    /**
+     * @return the number of slots of the ring buffer.
+     */
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    /**
+     * @return the number of messages currently stored in the ring
+     * buffer, including those being notified right now.
+     */
+    public int getOccupancy() {
+        return (int)(tail - completed.get());
+    }
+
+    /**
+     * @return the number of messages dropped because the ring buffer was full.
+     */
+    public long getOverflowCount() {
+        return overflows.get();
+    }
+
+    /**
+     * Stores a message into the next free slot.
+     * <p>
+     * This method must not be called concurrently.
+     */
+    @Override
+    public void update(Observable observable, Object arg) {
+        if (closed || arg == null) {
+            return;
+        }
+        final long position = tail;
+        final int index = (int)position & mask;
+        if (sequences.get(index) != position) {
+            overflows.incrementAndGet();
+            return;
+        }
+        if (arg instanceof Datagram) {
+            final Datagram datagram = (Datagram)arg;
+            final int length = datagram.getLength();
+            if (buffers[index].length < length) {
+                buffers[index] = new byte[length];
+            }
+            System.arraycopy(datagram.getData(), 0, buffers[index], 0, length);
+            lengths[index] = length;
+            sources[index] = datagram.getSource();
+            messages[index] = null;
+        } else {
+            messages[index] = arg;
+        }
+        sequences.set(index, position + 1);
+        tail = position + 1;
+        published.release();
+    }
+
+    /**
+     * Stops the consumer threads. Messages still stored in the ring
+     * buffer are discarded.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        executor.shutdownNow();
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                LOGGER.log(Level.SEVERE, "Consumer threads of ring buffer did not terminate!\n");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void addObserver(Observer observer) {
+        if (observer == null) {
+            throw new IllegalArgumentException("observer must not be null");
+        }
+        if (!observers.contains(observer)) {
+            observers.add(observer);
+        }
+    }
+
+    @Override
+    public void deleteObserver(Observer observer) {
+        observers.remove(observer);
+    }
+
+    @Override
+    public void deleteObservers() {
+        observers.clear();
+    }
+
+    @Override
+    public int countObservers() {
+        return observers.size();
+    }
+
+    /*
+     * Observers are managed in a copy-on-write list and called directly,
+     * because the changed flag of java.util.Observable would lose
+     * notifications if several consumer threads notified concurrently.
+     */
+    private void deliver(Object message) {
+        for (final Observer observer : observers) {
+            observer.update(this, message);
+        }
+    }
+
+    private final class Consumer implements Runnable {
+
+        private final Datagram datagram = new Datagram(new byte[0], 0);
+
+        @Override
+        public void run() {
+            try {
+                while (!closed) {
+                    published.acquire();
+                    final long position = head.getAndIncrement();
+                    final int index = (int)position & mask;
+                    try {
+                        if (messages[index] == null) {
+                            datagram.set(buffers[index], lengths[index], sources[index]);
+                            deliver(datagram);
+                        } else {
+                            deliver(messages[index]);
+                        }
+                    } catch (RuntimeException e) {
+                        LOGGER.log(Level.SEVERE, "Observer of ring buffer failed!", e);
+                    } finally {
+                        messages[index] = null;
+                        completed.incrementAndGet();
+                        sequences.set(index, position + mask + 1);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
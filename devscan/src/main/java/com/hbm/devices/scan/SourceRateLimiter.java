@@ -0,0 +1,267 @@
+/*
+ * Java Scan, a library for scanning and configuring HBM devices.
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) Hottinger Baldwin Messtechnik GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.hbm.devices.scan;
+
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the rate of messages per sender before they are decoded.
+ * <p>
+ * A misbehaving device sending hundreds of announces per second would
+ * otherwise force every single message through JSON parsing. This
+ * stage observes a receiver and assigns a token bucket to each {@link
+ * SocketAddress} messages are received from. Each message consumes a
+ * token, tokens are refilled with the configured rate up to the burst
+ * size. Messages arriving while the bucket of their sender is empty
+ * are either dropped or sampled, see {@link Policy}.
+ * <p>
+ * The sender is only known for {@link Datagram}s, so {@link
+ * AbstractMessageReceiver#setDatagramDelivery(boolean) datagram
+ * delivery} has to be enabled on the receiver. All other messages, and
+ * {@link Datagram}s without a source, are notified unchanged. A {@link
+ * java.util.List} of messages is filtered element by element and the
+ * remaining messages are notified as an unmodifiable {@link
+ * java.util.List}.
+ * <p>
+ * At most {@link #MAX_SOURCES} senders are tracked, the least recently
+ * seen sender is forgotten first.
+ *
+ * @since 2.3
+ */
+public final class SourceRateLimiter extends Observable implements Observer {
+
+    /**
+     * The maximum number of senders with an own token bucket.
+     */
+    public static final int MAX_SOURCES = 1024;
+
+    /**
+     * Describes what happens with messages exceeding the rate of their sender.
+     */
+    public enum Policy {
+        /**
+         * All excess messages are dropped.
+         */
+        DROP,
+        /**
+         * Every n-th excess message is notified, all others are dropped.
+         *
+         * @see SourceRateLimiter#setSampleInterval(int)
+         */
+        SAMPLE
+    }
+
+    private static final int DEFAULT_SAMPLE_INTERVAL = 10;
+
+    private final double tokensPerNano;
+    private final int burst;
+    private final Policy policy;
+    private final Map<SocketAddress, Bucket> buckets;
+    private volatile int sampleInterval;
+    private long droppedMessages;
+
+    /**
+     * Constructs a new {@code SourceRateLimiter}.
+     *
+     * @param messagesPerSecond the sustained number of messages per
+     * second allowed for each sender.
+     * @param burst the number of messages a sender might send at once.
+     * @param policy what to do with messages exceeding the rate.
+     *
+     * @throws IllegalArgumentException if {@code messagesPerSecond}
+     * is not positive, {@code burst} is smaller than 1 or {@code policy}
+     * is {@code null}.
+     */
+    public SourceRateLimiter(double messagesPerSecond, int burst, Policy policy) {
+        super();
+        if (!(messagesPerSecond > 0.0)) {
+            throw new IllegalArgumentException("messagesPerSecond must be positive");
+        }
+        if (burst < 1) {
+            throw new IllegalArgumentException("burst must be at least 1");
+        }
+        if (policy == null) {
+            throw new IllegalArgumentException("policy must not be null");
+        }
+        this.tokensPerNano = messagesPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.burst = burst;
+        this.policy = policy;
+        this.sampleInterval = DEFAULT_SAMPLE_INTERVAL;
+        this.buckets = new LinkedHashMap<SocketAddress, Bucket>(16, 0.75f, true) {
+            private static final long serialVersionUID = -1406389562838165478L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<SocketAddress, Bucket> eldest) {
+                return size() > MAX_SOURCES;
+            }
+        };
+    }
+
+    /**
+     * Sets which excess messages are notified if the policy is {@link Policy#SAMPLE}.
+     *
+     * @param sampleInterval every {@code sampleInterval}-th excess
+     * message of a sender is notified.
+     *
+     * @throws IllegalArgumentException if {@code sampleInterval} is smaller than 1.
+     */
+    public void setSampleInterval(int sampleInterval) {
+        if (sampleInterval < 1) {
+            throw new IllegalArgumentException("sampleInterval must be at least 1");
+        }
+        this.sampleInterval = sampleInterval;
+    }
+
+    /**
+     * @return the sample interval used with {@link Policy#SAMPLE}.
+     */
+    public int getSampleInterval() {
+        return sampleInterval;
+    }
+
+    /**
+     * @param source the address of a sender.
+     *
+     * @return the number of messages dropped from {@code source}
+     * since it was seen first, {@code 0} if {@code source} is not
+     * tracked.
+     */
+    public long getDropCount(SocketAddress source) {
+        synchronized (buckets) {
+            final Bucket bucket = buckets.get(source);
+            return bucket == null ? 0 : bucket.dropped;
+        }
+    }
+
+    /**
+     * @return a snapshot of the number of dropped messages of all
+     * tracked senders that dropped at least one message.
+     */
+    public Map<SocketAddress, Long> getDropCounts() {
+        synchronized (buckets) {
+            final Map<SocketAddress, Long> counts = new HashMap<>();
+            for (final Map.Entry<SocketAddress, Bucket> entry : buckets.entrySet()) {
+                if (entry.getValue().dropped > 0) {
+                    counts.put(entry.getKey(), entry.getValue().dropped);
+                }
+            }
+            return counts;
+        }
+    }
+
+    /**
+     * @return the number of messages dropped in total, including those
+     * of senders which are no longer tracked.
+     */
+    public long getTotalDropCount() {
+        synchronized (buckets) {
+            return droppedMessages;
+        }
+    }
+
+    @Override
+    public void update(Observable observable, Object arg) {
+        if (arg instanceof List) {
+            final List<?> messages = (List<?>)arg;
+            final List<Object> accepted = new ArrayList<>(messages.size());
+            for (final Object message : messages) {
+                if (accept(message)) {
+                    accepted.add(message);
+                }
+            }
+            if (!accepted.isEmpty()) {
+                setChanged();
+                notifyObservers(Collections.unmodifiableList(accepted));
+            }
+        } else if (accept(arg)) {
+            setChanged();
+            notifyObservers(arg);
+        }
+    }
+
+    private boolean accept(Object message) {
+        if (!(message instanceof Datagram)) {
+            return true;
+        }
+        final SocketAddress source = ((Datagram)message).getSource();
+        if (source == null) {
+            return true;
+        }
+
+        final long now = System.nanoTime();
+        synchronized (buckets) {
+            Bucket bucket = buckets.get(source);
+            if (bucket == null) {
+                bucket = new Bucket(burst, now);
+                buckets.put(source, bucket);
+            }
+            if (bucket.take(now)) {
+                return true;
+            }
+            bucket.excess++;
+            if (policy == Policy.SAMPLE && bucket.excess % sampleInterval == 0) {
+                return true;
+            }
+            bucket.dropped++;
+            droppedMessages++;
+            return false;
+        }
+    }
+
+    private final class Bucket {
+        private double tokens;
+        private long lastRefill;
+        private long excess;
+        private long dropped;
+
+        Bucket(double tokens, long now) {
+            this.tokens = tokens;
+            this.lastRefill = now;
+        }
+
+        boolean take(long now) {
+            tokens = Math.min(burst, tokens + (now - lastRefill) * tokensPerNano);
+            lastRefill = now;
+            if (tokens >= 1.0) {
+                tokens -= 1.0;
+                return true;
+            }
+            return false;
+        }
+    }
+}
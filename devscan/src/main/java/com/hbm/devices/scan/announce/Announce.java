@@ -29,6 +29,8 @@
 package com.hbm.devices.scan.announce;
 
 import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.util.Arrays;
 
 import com.hbm.devices.scan.JsonRpc;
 
@@ -38,11 +40,13 @@ import com.hbm.devices.scan.JsonRpc;
  */
 public final class Announce extends JsonRpc implements Serializable {
 
-    private AnnounceParams params;
+    AnnounceParams params;
     private String path;
     private transient Object cookie;
+    private transient byte[] jsonBytes;
 
     private static final long serialVersionUID = 3398751494808132238L;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
 
     private static final int INITIAL_HASHCODE_BUFFER_SIZE = 100;
 
@@ -115,18 +119,61 @@ public final class Announce extends JsonRpc implements Serializable {
             return false;
         }
         final Announce rhs = (Announce)obj;
+        if (jsonBytes != null && rhs.jsonBytes != null) {
+            return Arrays.equals(jsonBytes, rhs.jsonBytes);
+        }
         return this.getJSONString().equals(rhs.getJSONString());
     }
 
     @Override
     public int hashCode() {
-        return getJSONString().hashCode();
+        return Arrays.hashCode(getJSONBytes());
+    }
+
+    /**
+     * Announces received by an {@link AnnounceDeserializer} only keep
+     * the bytes of the message, so the message is not held twice. The
+     * bytes are decoded on every call.
+     */
+    @Override
+    public String getJSONString() {
+        final String json = super.getJSONString();
+        if (json == null && jsonBytes != null) {
+            return new String(jsonBytes, UTF8);
+        }
+        return json;
+    }
+
+    void setJSONBytes(byte[] bytes) {
+        this.jsonBytes = bytes;
+    }
+
+    byte[] getJSONBytes() {
+        if (jsonBytes != null) {
+            return jsonBytes;
+        }
+        return getJSONString().getBytes(UTF8);
     }
 
     String getPath() {
         return path;
     }
 
+    /*
+     * The bytes of the message are transient, so an announce holding
+     * only these is serialized as a copy with the decoded message.
+     */
+    private Object writeReplace() {
+        if (jsonBytes == null || super.getJSONString() != null) {
+            return this;
+        }
+        final Announce copy = new Announce();
+        copy.params = params;
+        copy.path = path;
+        copy.setJSONString(getJSONString());
+        return copy;
+    }
+
     private static String getDeviceUUID(AnnounceParams parameters) throws MissingDataException {
         final Device device = parameters.getDevice();
         if (device == null) {
@@ -148,7 +195,8 @@ public final class Announce extends JsonRpc implements Serializable {
     }
 
     private static String getInterfaceName(AnnounceParams parameters) throws MissingDataException {
-        final NetSettings settings = parameters.getNetSettings();
+        // The field is used on purpose, the getter would materialize lazy announces.
+        final NetSettings settings = parameters.netSettings;
         if (settings == null) {
             throw new MissingDataException("No network settings in announce!");
         }
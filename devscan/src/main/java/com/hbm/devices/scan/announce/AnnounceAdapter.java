@@ -0,0 +1,539 @@
+/*
+ * Java Scan, a library for scanning and configuring HBM devices.
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) Hottinger Baldwin Messtechnik GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.hbm.devices.scan.announce;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Streaming Gson {@link TypeAdapter} constructing {@link Announce} objects.
+ * <p>
+ * The announce and all of its sub-objects are created in a single pass
+ * over the {@link JsonReader}, no intermediate tree of {@link
+ * com.google.gson.JsonElement}s is built. The adapter accepts exactly the
+ * messages the former tree based deserializers accepted:
+ * <ul>
+ * <li>Unknown members are skipped.</li>
+ * <li>The {@code apiVersion} is checked by {@link AnnounceDeserializer}.</li>
+ * <li>An interface without a string {@code name}, or with a {@code
+ * description} or {@code type} that is not a string, is dropped.</li>
+ * <li>IP entries are only created if both the address and the netmask
+ * (or prefix) are present. Addresses that can't be resolved reject the
+ * whole announce.</li>
+ * <li>{@code services} that are not an array are ignored, {@code null}
+ * entries in the array are skipped.</li>
+ * </ul>
+ * The original message text is not known here, it is attached by {@link
+ * AnnounceDeserializer}. Writing an announce emits that text.
+ * <p>
+ * A lazy adapter only parses the fields required to accept an announce
+ * and to identify its communication path. The IP entries, the default
+ * gateway and the services are skipped and parsed later on demand by
+ * {@link AnnounceParams}.
+ * <p>
+ * While reading, the adapter enforces the {@link ParseLimits} and throws
+ * a {@link ParseLimitException} as soon as a limit is exceeded.
+ */
+final class AnnounceAdapter extends TypeAdapter<Announce> {
+
+    private final boolean lazy;
+    private volatile ParseLimits limits;
+
+    AnnounceAdapter(boolean lazy) {
+        super();
+        this.lazy = lazy;
+        this.limits = ParseLimits.DEFAULT;
+    }
+
+    void setLimits(ParseLimits limits) {
+        this.limits = limits;
+    }
+
+    /**
+     * Parses a complete announce without Gson.
+     *
+     * @param json the announce message.
+     *
+     * @return the announce or {@code null} if {@code json} is not an announce.
+     *
+     * @throws IOException if the message is no valid JSON or contains
+     * addresses that can't be resolved.
+     */
+    static Announce parse(String json) throws IOException {
+        final JsonReader reader = new JsonReader(new StringReader(json));
+        reader.setLenient(true);
+        final AnnounceAdapter adapter = new AnnounceAdapter(false);
+        adapter.setLimits(ParseLimits.UNLIMITED);
+        return adapter.read(reader);
+    }
+
+    /*
+     * Parses an announce stored by the DeviceMonitor again. The announce
+     * keeps the bytes as its JSON string.
+     */
+    static Announce parse(byte[] json) throws IOException {
+        final Announce announce = parse(new String(json, StandardCharsets.UTF_8));
+        if (announce == null) {
+            throw new IOException("Stored announce is null");
+        }
+        announce.setJSONBytes(json);
+        try {
+            announce.identifyCommunicationPath();
+        } catch (MissingDataException e) {
+            throw new IOException(e);
+        }
+        return announce;
+    }
+
+    /*
+     * An announce keeps the message it was parsed from, so that message
+     * is written unchanged.
+     */
+    @Override
+    public void write(JsonWriter out, Announce value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+            return;
+        }
+        out.jsonValue(value.getJSONString());
+    }
+
+    @Override
+    public Announce read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+
+        String method = null;
+        AnnounceParams params = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            final String name = nextName(in);
+            if ("method".equals(name)) {
+                method = readString(in);
+            } else if ("params".equals(name)) {
+                params = readParams(in);
+            } else {
+                skipValue(in, 2);
+            }
+        }
+        in.endObject();
+
+        if (!"announce".equals(method)) {
+            return null;
+        }
+        final Announce announce = new Announce();
+        announce.params = params;
+        if (lazy && params != null) {
+            params.lazySource = announce;
+        }
+        return announce;
+    }
+
+    private AnnounceParams readParams(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+
+        final AnnounceParams params = new AnnounceParams();
+        in.beginObject();
+        while (in.hasNext()) {
+            final String name = nextName(in);
+            if ("apiVersion".equals(name)) {
+                params.apiVersion = readString(in);
+            } else if ("device".equals(name)) {
+                params.device = readDevice(in);
+            } else if ("netSettings".equals(name)) {
+                params.netSettings = readNetSettings(in);
+            } else if ("router".equals(name)) {
+                params.router = readRouter(in);
+            } else if ("services".equals(name) && !lazy) {
+                params.services = readServices(in);
+            } else if ("expiration".equals(name)) {
+                params.expiration = readInt(in, 0);
+            } else {
+                skipValue(in, 3);
+            }
+        }
+        in.endObject();
+
+        return params;
+    }
+
+    private Device readDevice(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+
+        final Device device = new Device();
+        in.beginObject();
+        while (in.hasNext()) {
+            final String name = nextName(in);
+            if ("uuid".equals(name)) {
+                device.uuid = readString(in);
+            } else if ("name".equals(name)) {
+                device.name = readString(in);
+            } else if ("type".equals(name)) {
+                device.type = readString(in);
+            } else if ("label".equals(name)) {
+                device.label = readString(in);
+            } else if ("familyType".equals(name)) {
+                device.familyType = readString(in);
+            } else if ("firmwareVersion".equals(name)) {
+                device.firmwareVersion = readString(in);
+            } else if ("hardwareId".equals(name)) {
+                device.hardwareId = readString(in);
+            } else if ("isRouter".equals(name)) {
+                device.router = readBoolean(in, device.router);
+            } else {
+                skipValue(in, 4);
+            }
+        }
+        in.endObject();
+        return device;
+    }
+
+    private NetSettings readNetSettings(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+
+        final NetSettings settings = new NetSettings();
+        in.beginObject();
+        while (in.hasNext()) {
+            final String name = nextName(in);
+            if ("interface".equals(name)) {
+                settings.iface = readInterface(in);
+            } else if ("defaultGateway".equals(name) && !lazy) {
+                settings.defaultGateway = readDefaultGateway(in);
+            } else {
+                skipValue(in, 4);
+            }
+        }
+        in.endObject();
+        return settings;
+    }
+
+    private DefaultGateway readDefaultGateway(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+
+        final DefaultGateway gateway = new DefaultGateway();
+        in.beginObject();
+        while (in.hasNext()) {
+            final String name = nextName(in);
+            if ("ipv4Address".equals(name)) {
+                gateway.ipv4Address = readString(in);
+            } else if ("ipv6Address".equals(name)) {
+                gateway.ipv6Address = readString(in);
+            } else {
+                skipValue(in, 5);
+            }
+        }
+        in.endObject();
+        return gateway;
+    }
+
+    private Interface readInterface(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+
+        final Interface iface = new Interface();
+        final List<IPEntry> ipv4 = new ArrayList<>();
+        final List<IPEntry> ipv6 = new ArrayList<>();
+        boolean valid = true;
+        in.beginObject();
+        while (in.hasNext()) {
+            final String name = nextName(in);
+            if ("name".equals(name)) {
+                iface.name = readStringToken(in, 5);
+            } else if ("description".equals(name)) {
+                iface.description = readStringToken(in, 5);
+                valid &= iface.description != null;
+            } else if ("type".equals(name)) {
+                iface.type = readStringToken(in, 5);
+                valid &= iface.type != null;
+            } else if ("ipv4".equals(name) && !lazy) {
+                readIPv4Entries(in, ipv4);
+            } else if ("ipv6".equals(name) && !lazy) {
+                readIPv6Entries(in, ipv6);
+            } else {
+                skipValue(in, 5);
+            }
+        }
+        in.endObject();
+
+        if (!valid || iface.name == null) {
+            return null;
+        }
+        if (!lazy) {
+            iface.ipList = new LinkedList<>(ipv4);
+            iface.ipList.addAll(ipv6);
+        }
+        return iface;
+    }
+
+    private void readIPv4Entries(JsonReader in, List<IPEntry> entries) throws IOException {
+        in.beginArray();
+        for (int count = 1; in.hasNext(); count++) {
+            checkArrayLength(count);
+            String address = null;
+            String netmask = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                final String name = nextName(in);
+                if ("address".equals(name)) {
+                    address = readAddress(in);
+                } else if ("netmask".equals(name)) {
+                    netmask = readAddress(in);
+                } else {
+                    skipValue(in, 7);
+                }
+            }
+            in.endObject();
+
+            if ((address != null) && (netmask != null)) {
+                entries.add(IPEntry.fromIPv4(address, netmask));
+            }
+        }
+        in.endArray();
+    }
+
+    private void readIPv6Entries(JsonReader in, List<IPEntry> entries) throws IOException {
+        in.beginArray();
+        for (int count = 1; in.hasNext(); count++) {
+            checkArrayLength(count);
+            String address = null;
+            boolean hasPrefix = false;
+            int prefix = 0;
+            in.beginObject();
+            while (in.hasNext()) {
+                final String name = nextName(in);
+                if ("address".equals(name)) {
+                    address = readAddress(in);
+                } else if ("prefix".equals(name) && in.peek() != JsonToken.NULL) {
+                    prefix = readInt(in, 0);
+                    hasPrefix = true;
+                } else {
+                    skipValue(in, 7);
+                }
+            }
+            in.endObject();
+
+            if ((address != null) && hasPrefix) {
+                entries.add(IPEntry.fromIPv6(address, prefix));
+            }
+        }
+        in.endArray();
+    }
+
+    private Router readRouter(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+
+        final Router router = new Router();
+        in.beginObject();
+        while (in.hasNext()) {
+            if ("uuid".equals(nextName(in))) {
+                router.uuid = readString(in);
+            } else {
+                skipValue(in, 4);
+            }
+        }
+        in.endObject();
+        return router;
+    }
+
+    private List<ServiceEntry> readServices(JsonReader in) throws IOException {
+        if (in.peek() != JsonToken.BEGIN_ARRAY) {
+            skipValue(in, 3);
+            return null;
+        }
+
+        final List<ServiceEntry> services = new ArrayList<>();
+        in.beginArray();
+        for (int count = 1; in.hasNext(); count++) {
+            checkArrayLength(count);
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+            } else {
+                services.add(readServiceEntry(in));
+            }
+        }
+        in.endArray();
+        return services;
+    }
+
+    private ServiceEntry readServiceEntry(JsonReader in) throws IOException {
+        final ServiceEntry entry = new ServiceEntry();
+        in.beginObject();
+        while (in.hasNext()) {
+            final String name = nextName(in);
+            if ("type".equals(name)) {
+                entry.type = readString(in);
+            } else if ("port".equals(name)) {
+                entry.port = readInt(in, entry.port);
+            } else {
+                skipValue(in, 5);
+            }
+        }
+        in.endObject();
+        return entry;
+    }
+
+    /*
+     * Skips a value like JsonReader.skipValue(), but checks the parse
+     * limits. depth is the nesting depth of the value if it is an
+     * object or array.
+     */
+    private void skipValue(JsonReader in, int depth) throws IOException {
+        final JsonToken token = in.peek();
+        if (token == JsonToken.BEGIN_ARRAY || token == JsonToken.BEGIN_OBJECT) {
+            if (depth > limits.getMaxDepth()) {
+                throw new ParseLimitException("Nesting depth exceeds " + limits.getMaxDepth());
+            }
+            if (token == JsonToken.BEGIN_ARRAY) {
+                in.beginArray();
+                for (int count = 1; in.hasNext(); count++) {
+                    checkArrayLength(count);
+                    skipValue(in, depth + 1);
+                }
+                in.endArray();
+            } else {
+                in.beginObject();
+                while (in.hasNext()) {
+                    nextName(in);
+                    skipValue(in, depth + 1);
+                }
+                in.endObject();
+            }
+        } else if (token == JsonToken.STRING) {
+            checkLength(in.nextString());
+        } else {
+            in.skipValue();
+        }
+    }
+
+    private String nextName(JsonReader in) throws IOException {
+        return checkLength(in.nextName());
+    }
+
+    private String checkLength(String string) {
+        if (string.length() > limits.getMaxStringLength()) {
+            throw new ParseLimitException("String length exceeds " + limits.getMaxStringLength());
+        }
+        return string;
+    }
+
+    private void checkArrayLength(int length) {
+        if (length > limits.getMaxArrayLength()) {
+            throw new ParseLimitException("Array length exceeds " + limits.getMaxArrayLength());
+        }
+    }
+
+    /*
+     * The following methods mimic the conversions of the Gson adapters
+     * formerly used via reflection, so the accepted messages don't change.
+     */
+    private String readString(JsonReader in) throws IOException {
+        final JsonToken token = in.peek();
+        if (token == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        if (token == JsonToken.BOOLEAN) {
+            return Boolean.toString(in.nextBoolean());
+        }
+        return checkLength(in.nextString());
+    }
+
+    private String readStringToken(JsonReader in, int depth) throws IOException {
+        if (in.peek() == JsonToken.STRING) {
+            return checkLength(in.nextString());
+        }
+        skipValue(in, depth);
+        return null;
+    }
+
+    private String readAddress(JsonReader in) throws IOException {
+        final JsonToken token = in.peek();
+        if (token == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        if (token != JsonToken.STRING && token != JsonToken.NUMBER) {
+            throw new JsonSyntaxException("Expected an IP address but was " + token);
+        }
+        return checkLength(in.nextString());
+    }
+
+    private static boolean readBoolean(JsonReader in, boolean defaultValue) throws IOException {
+        final JsonToken token = in.peek();
+        if (token == JsonToken.NULL) {
+            in.nextNull();
+            return defaultValue;
+        }
+        if (token == JsonToken.STRING) {
+            return Boolean.parseBoolean(in.nextString());
+        }
+        return in.nextBoolean();
+    }
+
+    private static int readInt(JsonReader in, int defaultValue) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return defaultValue;
+        }
+        try {
+            return in.nextInt();
+        } catch (NumberFormatException e) {
+            throw new JsonSyntaxException(e);
+        }
+    }
+}
@@ -28,87 +28,263 @@
 
 package com.hbm.devices.scan.announce;
 
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /*
  * This class caches parsed Announce messages to avoid unnecessary JSON
  * parsing.
  *
- * To avoid infinite growth of the cache, the cache is realized as an
- * LRU (least recently used) cache. So old announce messages will be
- * removed if the capacity of the cache exceeds.
- *
- * Parsed JSON messages are stored in parsedMessages.
+ * Parsed JSON messages are keyed by a compact MessageKey holding the
+ * 128 bit digest of the UTF-8 encoded message, not by the message
+ * itself. So repeated datagrams are found without charset decoding and
+ * String allocation, and an entry does not keep a second copy of the
+ * message besides the bytes kept by the Announce. As digests can be
+ * forged, a lookup compares the message with these bytes and treats a
+ * mismatch as a miss. The colliding entry is
+ * replaced when the message is put into the cache after parsing.
  * 
- * There is a second cache called lastDeviceAnnounce. This cache is used to
+ * There is a second map called lastDeviceAnnounce, mapping each
+ * communication path to the key of its last announce. This map is used to
  * check if a device already announced messages previously. This
  * information is used to remove no longer valid announces as soon as
- * possible from parsedMessages.
+ * possible from the cache. So there is at most one message per
+ * communication path in the cache.
+ *
+ * The cache follows the W-TinyLFU policy. New messages are put into a
+ * small LRU window, which holds about one percent of the capacity. A
+ * message falling out of the window is only admitted into the main LRU
+ * segment if it was seen more often than the least recently used
+ * message of the main segment, otherwise it is evicted. How often a
+ * message was seen is estimated by a FrequencySketch counting all
+ * lookups. So a burst of one-off announces, for instance devices
+ * sending transient states while being reconfigured, does not flush
+ * the announces of the stable devices out of the cache.
+ *
+ * To avoid infinite growth of the cache, messages are evicted if the
+ * capacity of the cache is exceeded. By default the capacity adapts to
+ * the number of live devices: a message is not evicted as long as its
+ * device is alive (the message was seen within its expiration time),
+ * unless the cache holds MAX_CAPACITY messages. Messages of devices no
+ * longer alive are evicted as soon as the cache holds more than
+ * DEFAULT_CACHE_SIZE messages. If a fixed capacity is set, the cache
+ * never holds more messages than this capacity.
+ *
+ * All methods are synchronized, so the cache can be shared by multiple
+ * parsing threads.
  */
 final class AnnounceCache {
 
-    private static final int DEFAULT_CACHE_SIZE = 100;
+    static final int DEFAULT_CACHE_SIZE = 100;
+    static final int MAX_CAPACITY = 1 << 17;
+    static final int ADAPTIVE = 0;
+
+    private static final float LOAD_FACTOR = 0.75F;
+    private static final int WINDOW_PERCENT = 1;
 
-    private final LRUCache<String, Announce> parsedMessages;
-    private final LRUCache<String, String> lastDeviceAnnounce;
+    private final LinkedHashMap<MessageKey, Entry> window;
+    private final LinkedHashMap<MessageKey, Entry> main;
+    private final Map<String, MessageKey> lastDeviceAnnounce;
+    private final FrequencySketch sketch;
+    private int capacity;
+    private long hits;
+    private long misses;
+    private long evictions;
 
     AnnounceCache() {
-        this(DEFAULT_CACHE_SIZE);
+        this(ADAPTIVE);
+    }
+
+    AnnounceCache(int capacity) {
+        window = new LinkedHashMap<>(16, LOAD_FACTOR, true);
+        main = new LinkedHashMap<>(DEFAULT_CACHE_SIZE + 1, LOAD_FACTOR, true);
+        lastDeviceAnnounce = new HashMap<>();
+        sketch = new FrequencySketch(DEFAULT_CACHE_SIZE);
+        setCapacity(capacity);
+    }
+
+    synchronized void setCapacity(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity must not be negative");
+        }
+        this.capacity = capacity;
+        sketch.ensureCapacity(limit());
+        evict(System.nanoTime());
     }
 
-    AnnounceCache(int cacheSize) {
-        parsedMessages = new LRUCache<>(cacheSize);
-        lastDeviceAnnounce = new LRUCache<>(cacheSize);
+    synchronized int getCapacity() {
+        return capacity;
     }
 
     Announce get(String string) {
-        return parsedMessages.get(string);
+        return get(key(string));
     }
 
-    int size() {
-        return parsedMessages.size();
+    synchronized int size() {
+        return window.size() + main.size();
     }
 
-    int lastAnnounceSize() {
+    synchronized int lastAnnounceSize() {
         return lastDeviceAnnounce.size();
     }
 
+    /*
+     * Drops all cached announces. The statistics and the frequency
+     * sketch are kept.
+     */
+    synchronized void clear() {
+        window.clear();
+        main.clear();
+        lastDeviceAnnounce.clear();
+    }
+
+    synchronized CacheStatistics getStatistics() {
+        return new CacheStatistics(hits, misses, evictions, size(),
+            capacity == ADAPTIVE ? Math.max(DEFAULT_CACHE_SIZE, size()) : capacity);
+    }
+
     void put(String announceString, Announce announce) {
+        put(key(announceString), announce);
+    }
+
+    synchronized Announce get(MessageKey key) {
+        sketch.increment(key);
+        Entry entry = window.get(key);
+        if (entry == null) {
+            entry = main.get(key);
+        }
+        if (entry == null || !key.matches(entry.announce.getJSONBytes())) {
+            misses++;
+            return null;
+        }
+        hits++;
+        entry.lastSeen = System.nanoTime();
+        return entry.announce;
+    }
+
+    synchronized void put(MessageKey probe, Announce announce) {
+        final long now = System.nanoTime();
+        final MessageKey key = probe.compact();
         final String path = announce.getPath();
-        if (lastDeviceAnnounce.containsKey(path)) {
+        Entry colliding = window.remove(key);
+        if (colliding == null) {
+            colliding = main.remove(key);
+        }
+        if (colliding != null) {
+            lastDeviceAnnounce.remove(colliding.announce.getPath(), key);
+        }
+        final MessageKey lastKey = lastDeviceAnnounce.put(path, key);
+        if (lastKey != null && window.remove(lastKey) == null) {
             // device has send an announce earlier, but it has changed its announce content (e.g.
             // its running services changed)
-            final String lastAnnounceString = lastDeviceAnnounce.get(path);
-            parsedMessages.remove(lastAnnounceString);
-            parsedMessages.put(announceString, announce);
-            lastDeviceAnnounce.put(path, announceString);
-        } else {
-            // the device has not sent an announce message earlier
-            lastDeviceAnnounce.put(path, announceString);
-            parsedMessages.put(announceString, announce);
+            main.remove(lastKey);
         }
+        window.put(key, new Entry(announce, now));
+        if (capacity == ADAPTIVE) {
+            sketch.ensureCapacity(Math.max(DEFAULT_CACHE_SIZE, size()));
+        }
+        evict(now);
     }
-}
 
-final class LRUCache<K, V> extends LinkedHashMap<K, V> {
+    private static MessageKey key(String string) {
+        final byte[] data = string.getBytes(StandardCharsets.UTF_8);
+        return MessageKey.probe(data, 0, data.length);
+    }
+
+    private int limit() {
+        return capacity == ADAPTIVE ? DEFAULT_CACHE_SIZE : capacity;
+    }
 
-    private static final long serialVersionUID = -8301636009829845575L;
+    private void evict(long now) {
+        final int limit = limit();
+        final int windowLimit = Math.max(1, Math.max(limit, size()) * WINDOW_PERCENT / 100);
+        final Iterator<Map.Entry<MessageKey, Entry>> windowIterator = window.entrySet().iterator();
+        while (window.size() > windowLimit) {
+            final Map.Entry<MessageKey, Entry> candidate = windowIterator.next();
+            windowIterator.remove();
+            if (size() < limit || main.isEmpty()) {
+                main.put(candidate.getKey(), candidate.getValue());
+                continue;
+            }
+            final Map.Entry<MessageKey, Entry> victim = main.entrySet().iterator().next();
+            if (admit(candidate, victim, now)) {
+                main.remove(victim.getKey());
+                remove(victim);
+                main.put(candidate.getKey(), candidate.getValue());
+            } else if (capacity == ADAPTIVE && candidate.getValue().isAlive(now) && size() < MAX_CAPACITY) {
+                /*
+                 * Both messages belong to live devices. Grow instead of
+                 * thrashing.
+                 */
+                main.put(candidate.getKey(), candidate.getValue());
+            } else {
+                remove(candidate);
+            }
+        }
+        evictEldest(main, limit, now);
+        evictEldest(window, limit, now);
+    }
 
-    /**
-     * By default the cache size is 100.
+    /*
+     * Decides if the candidate falling out of the window replaces the
+     * victim of the main segment.
      */
-    private static final float LOAD_FACTOR = 0.75F;
+    private boolean admit(Map.Entry<MessageKey, Entry> candidate, Map.Entry<MessageKey, Entry> victim, long now) {
+        if (capacity == ADAPTIVE) {
+            final boolean candidateAlive = candidate.getValue().isAlive(now);
+            final boolean victimAlive = victim.getValue().isAlive(now);
+            if (candidateAlive != victimAlive) {
+                return candidateAlive;
+            }
+            if (candidateAlive && size() < MAX_CAPACITY) {
+                return false;
+            }
+        }
+        return sketch.frequency(candidate.getKey()) > sketch.frequency(victim.getKey());
+    }
 
-    private final int maxSize;
+    /*
+     * Shrinks the cache after the capacity was lowered or devices
+     * expired.
+     */
+    private void evictEldest(LinkedHashMap<MessageKey, Entry> segment, int limit, long now) {
+        final Iterator<Map.Entry<MessageKey, Entry>> iterator = segment.entrySet().iterator();
+        while (size() > limit && iterator.hasNext()) {
+            final Map.Entry<MessageKey, Entry> eldest = iterator.next();
+            if (capacity == ADAPTIVE && size() <= MAX_CAPACITY && eldest.getValue().isAlive(now)) {
+                /*
+                 * The least recently used message is still alive, so are
+                 * all the others. Grow instead of thrashing.
+                 */
+                return;
+            }
+            iterator.remove();
+            remove(eldest);
+        }
+    }
 
-    LRUCache(int maxSize) {
-        super(maxSize + 1, LOAD_FACTOR, true);
-        this.maxSize = maxSize;
+    private void remove(Map.Entry<MessageKey, Entry> evicted) {
+        lastDeviceAnnounce.remove(evicted.getValue().announce.getPath(), evicted.getKey());
+        evictions++;
     }
 
-    @Override
-    protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
-        return size() > maxSize;
+    private static final class Entry {
+        private final Announce announce;
+        private final long expiration;
+        private long lastSeen;
+
+        Entry(Announce announce, long now) {
+            this.announce = announce;
+            this.expiration = TimeUnit.SECONDS.toNanos(announce.getParams().getExpiration());
+            this.lastSeen = now;
+        }
+
+        boolean isAlive(long now) {
+            return now - lastSeen <= expiration;
+        }
     }
 }
@@ -27,28 +27,20 @@
  */
 package com.hbm.devices.scan.announce;
 
-import java.lang.reflect.Type;
 import java.util.Observable;
 import java.util.Observer;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.google.gson.JsonDeserializationContext;
-import com.google.gson.JsonDeserializer;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParseException;
 import com.google.gson.JsonSyntaxException;
-import com.google.gson.reflect.TypeToken;
 
-import com.hbm.devices.scan.JsonRpc;
-import com.hbm.devices.scan.ScanConstants;
+import com.hbm.devices.scan.Datagram;
 
 import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -59,14 +51,48 @@ import java.util.List;
  * messages, or messages that do not conform to the HBM network discovery and
  * configuration protocol are simply ignored. Users of this class will
  * <em>not</em> get any error messages or exceptions.
+ * <p>
+ * Batches of messages are parsed as a whole and notified as a single
+ * {@link java.util.List} of {@link Announce} objects.
+ * <p>
+ * Messages might be received either as {@link java.lang.String} or as
+ * {@link Datagram}. Parsed messages are cached by a 128 bit digest of their
+ * raw bytes, so repeated announces are resolved without decoding the bytes
+ * at all, see {@link #getCacheStatistics()}.
+ * <p>
+ * New messages are parsed in a single streaming pass, without building
+ * a tree of JSON elements first. The {@link Announce} objects keep the
+ * original message text as their JSON string.
+ * <p>
+ * Equal field values of different announces, like family types,
+ * firmware versions, interface names or whole service lists, are
+ * shared between the parsed {@link Announce} objects. The values are
+ * kept in a bounded pool, see {@link #getSavedHeapBytesPerDevice()}.
+ * <p>
+ * The digests of rejected messages are remembered, so invalid announces
+ * sent repeatedly are rejected without parsing them again. Rejections
+ * are counted per {@link RejectionReason} and logged at most once per
+ * minute and reason.
+ * <p>
+ * The work spent on a single message is bounded by {@link ParseLimits}.
  *
  * @since 1.0
  */
 public final class AnnounceDeserializer extends Observable implements Observer {
 
     private final Gson gson;
+    private final Gson lazyGson;
+    private final AnnounceAdapter adapter;
+    private final AnnounceAdapter lazyAdapter;
     private final AnnounceCache announceCache;
-    private static final Logger LOGGER = Logger.getLogger(ScanConstants.LOGGER_NAME);
+    private final ValuePool valuePool;
+    private final NegativeCache negativeCache;
+    private final ByteAnnounceParser byteParser;
+    private final ByteAnnounceParser lazyByteParser;
+    private volatile boolean byteParsing;
+    private volatile boolean lazyParsing;
+    private volatile ParseLimits parseLimits;
+    private static final String SUPPORTED_API_VERSION = "1.0";
 
     /**
      * Constructs a {@link AnnounceDeserializer} object.
@@ -74,219 +100,372 @@ public final class AnnounceDeserializer extends Observable implements Observer {
     public AnnounceDeserializer() {
         super();
 
-        final GsonBuilder builder = new GsonBuilder();
-        builder.registerTypeAdapter(JsonRpc.class, new JsonRpcDeserializer());
-        builder.registerTypeAdapter(AnnounceParams.class, new AnnounceParamsDeserializer());
-        Type serviceListType = new TypeToken<List<ServiceEntry>>() {
-        }.getType();
-        builder.registerTypeAdapter(serviceListType, new ServiceDeserializer());
-        builder.registerTypeAdapter(Interface.class, new InterfaceDeserializer());
-
-        //  builder.registerTypeAdapter(IPEntry.class, new IPv4Deserializer());
-        gson = builder.create();
+        adapter = new AnnounceAdapter(false);
+        lazyAdapter = new AnnounceAdapter(true);
+        gson = new GsonBuilder().registerTypeAdapter(Announce.class, adapter).create();
+        lazyGson = new GsonBuilder().registerTypeAdapter(Announce.class, lazyAdapter).create();
+        parseLimits = ParseLimits.DEFAULT;
 
         this.announceCache = new AnnounceCache();
+        this.valuePool = new ValuePool(ValuePool.DEFAULT_CAPACITY);
+        this.negativeCache = new NegativeCache();
+        this.byteParser = new ByteAnnounceParser(false);
+        this.lazyByteParser = new ByteAnnounceParser(true);
     }
 
-    AnnounceCache getCache() {
-        return this.announceCache;
+    /**
+     * Enables a dedicated parser working directly on the bytes of
+     * received {@link Datagram}s.
+     * <p>
+     * The parser understands strict JSON announces with {@code
+     * apiVersion} 1.0 only and avoids decoding the whole message into a
+     * {@link java.lang.String}. Every message it can't handle is parsed
+     * with Gson as usual, so the notified {@link Announce} objects don't
+     * change. Messages received as {@link java.lang.String} are always
+     * parsed with Gson.
+     *
+     * @param enable {@code true} to parse {@link Datagram}s directly.
+     *
+     * @since 2.3
+     */
+    public void setDirectByteParsing(boolean enable) {
+        this.byteParsing = enable;
     }
 
-    @Override
-    public void update(Observable observable, Object arg) {
-        final String message = (String) arg;
-        Announce announce = announceCache.get(message);
-        if (announce == null) {
-            try {
-                announce = (Announce) gson.fromJson(message, JsonRpc.class);
-                if (announce != null) {
-                    announce.identifyCommunicationPath();
-                    if (announce.getParams().getExpiration() < 0) {
-                        return;
-                    }
-                    announceCache.put(message, announce);
-                    setChanged();
-                    notifyObservers(announce);
-                }
-            } catch (JsonSyntaxException e) {
-                /*
-                 * There is no error handling necessary in this case. If somebody sends us invalid JSON,
-                 * we just ignore the packet and go ahead.
-                 */
-                LOGGER.log(Level.SEVERE, "Can't parse JSON!", e);
-            } catch (MissingDataException e) {
-                /*
-                 * During the creation of an Announce object it is required that some
-                 * sub-objects are created in the parsed JSON object (i.e. the device's UUID). If these
-                 * sub-objects are not created, the construction of the Announce object fails.
-                 *
-                 * Go ahead with the next packet.
-                 */
-                LOGGER.log(Level.SEVERE, "Some information is missing in JSON!", e);
-            }
-        } else {
-            setChanged();
-            notifyObservers(announce);
+    /**
+     * @return {@code true} if {@link Datagram}s are parsed directly.
+     *
+     * @since 2.3
+     */
+    public boolean isDirectByteParsing() {
+        return byteParsing;
+    }
+
+    /**
+     * Enables the lazy parsing of announces.
+     * <p>
+     * Only the fields required to accept an announce and to identify
+     * its communication path (API version, device, router, interface
+     * name, type and description) and the expiration are parsed
+     * immediately. The IP entries, the default gateway and the services
+     * are parsed when {@link AnnounceParams#getNetSettings()} or {@link
+     * AnnounceParams#getServices()} is called for the first time. Most
+     * announces are dropped by a {@link
+     * com.hbm.devices.scan.announce.filter.Filter} before anybody looks at
+     * these sections.
+     * <p>
+     * As a consequence, announces with invalid IP addresses are no
+     * longer rejected. Their IP entries and services are empty instead.
+     * Changing the mode drops all cached decisions about received
+     * messages, so they are parsed again.
+     *
+     * @param enable {@code true} to parse announces lazily.
+     *
+     * @since 2.3
+     */
+    public void setLazyParsing(boolean enable) {
+        if (lazyParsing != enable) {
+            this.lazyParsing = enable;
+            clearCaches();
         }
     }
 
-    private static final class JsonRpcDeserializer implements JsonDeserializer<JsonRpc> {
+    /**
+     * @return {@code true} if announces are parsed lazily.
+     *
+     * @since 2.3
+     */
+    public boolean isLazyParsing() {
+        return lazyParsing;
+    }
 
-        JsonRpcDeserializer() {
-            // This constructor is only use by the outer class.
+    /**
+     * Sets the limits enforced while parsing a message.
+     * <p>
+     * All cached decisions about received messages are dropped, so
+     * messages rejected or accepted under the former limits are parsed
+     * again.
+     *
+     * @param limits the new limits, {@link ParseLimits#DEFAULT} by default.
+     *
+     * @throws IllegalArgumentException if {@code limits} is {@code null}.
+     *
+     * @since 2.3
+     */
+    public void setParseLimits(ParseLimits limits) {
+        if (limits == null) {
+            throw new IllegalArgumentException("limits must not be null");
         }
+        this.parseLimits = limits;
+        adapter.setLimits(limits);
+        lazyAdapter.setLimits(limits);
+        byteParser.setLimits(limits);
+        lazyByteParser.setLimits(limits);
+        clearCaches();
+    }
 
-        @Override
-        public JsonRpc deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) {
+    /**
+     * @return the limits enforced while parsing a message.
+     *
+     * @since 2.3
+     */
+    public ParseLimits getParseLimits() {
+        return parseLimits;
+    }
 
-            JsonRpc rpcObject = null;
-            final JsonObject jsonObject = json.getAsJsonObject();
+    /**
+     * Estimates the heap each device saves by sharing equal field
+     * values.
+     * <p>
+     * For each parsed announce, the shallow sizes of its field values
+     * which were replaced by an equal value already pooled are summed
+     * up. The result is the average over all parsed announces. So it
+     * does not grow if devices announce changed content again. Repeated
+     * messages taken from the cache of parsed messages are not counted.
+     *
+     * @return the estimated number of bytes saved per device.
+     *
+     * @since 2.3
+     */
+    public long getSavedHeapBytesPerDevice() {
+        return valuePool.getSavedBytesPerAnnounce();
+    }
 
-            if (jsonObject.has("method")) {
-                final String type = jsonObject.get("method").getAsString();
-                if ("announce".compareTo(type) == 0) {
-                    rpcObject = context.deserialize(json, Announce.class);
-                    rpcObject.setJSONString(jsonObject.toString());
-                }
-            }
-            return rpcObject;
-        }
+    /**
+     * @param reason the reason of the rejection.
+     *
+     * @return the number of messages rejected for {@code reason},
+     * including those rejected by their digest without parsing.
+     *
+     * @since 2.3
+     */
+    public long getRejectionCount(RejectionReason reason) {
+        return negativeCache.getCount(reason);
     }
 
-    private static final class InterfaceDeserializer implements JsonDeserializer<Interface> {
+    /**
+     * Sets the number of parsed messages cached to avoid parsing
+     * repeated announces.
+     * <p>
+     * By default, the capacity adapts to the number of live devices.
+     * The announce of a device which was seen within its expiration
+     * time is kept, so the cache never thrashes on large networks.
+     * Announces of devices no longer seen are evicted first.
+     *
+     * @param capacity the maximum number of cached messages, or {@code
+     * 0} to size the cache by the number of live devices.
+     *
+     * @throws IllegalArgumentException if {@code capacity} is negative.
+     *
+     * @since 2.3
+     */
+    public void setCacheCapacity(int capacity) {
+        announceCache.setCapacity(capacity);
+    }
 
-        @Override
-        public Interface deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) throws JsonParseException {
-            final JsonObject jsonObject = json.getAsJsonObject();
+    /**
+     * @return the hit, miss and eviction counters of the cache of
+     * parsed messages.
+     *
+     * @since 2.3
+     */
+    public CacheStatistics getCacheStatistics() {
+        return announceCache.getStatistics();
+    }
 
-            JsonElement name = jsonObject.get("name");
-            if (!isStringElement(name)) {
-                return null;
-            }
+    private void clearCaches() {
+        announceCache.clear();
+        negativeCache.clear();
+    }
 
-            String interfaceName = name.getAsString();
-            Interface iface = new Interface();
-            iface.name = interfaceName;
-            JsonElement description = jsonObject.get("description");
-            if (description != null) {
-                if (isStringElement(description)) {
-                    iface.description = description.getAsString();
-                } else {
-                    return null;
-                }
-            }
+    NegativeCache getNegativeCache() {
+        return this.negativeCache;
+    }
 
-            JsonElement type = jsonObject.get("type");
-            if (type != null) {
-                if (isStringElement(type)) {
-                    iface.type = type.getAsString();
-                } else {
-                    return null;
-                }
-            }
+    AnnounceCache getCache() {
+        return this.announceCache;
+    }
 
-            iface.ipList = new LinkedList<>();
-            JsonElement ipv4 = jsonObject.get("ipv4");
-            if (ipv4 != null) {
-                for (JsonElement e : ipv4.getAsJsonArray()) {
-                    JsonElement address = e.getAsJsonObject().get("address");
-                    JsonElement netMask = e.getAsJsonObject().get("netmask");
-                    if ((address != null) && (netMask != null)) {
-                        InetAddress value = context.deserialize(address, InetAddress.class);
-                        InetAddress mask = context.deserialize(netMask, InetAddress.class);
-                        if ((value != null) && (mask != null)) {
-                            IPEntry entry = new IPEntry();
-                            entry.address = value;
-                            entry.prefix = calculatePrefix(mask);
-                            iface.ipList.add(entry);
-                        }
-                    }
+    /**
+     * Parses a received message.
+     * <p>
+     * {@code arg} is either a single JSON {@link java.lang.String} or
+     * {@link Datagram}, or a {@link java.util.List} of them (see {@link
+     * com.hbm.devices.scan.MulticastChannelReceiver#setBatchSize(int)}). A
+     * single message results in the notification of a single {@link
+     * Announce}, a batch of messages in the notification of an unmodifiable
+     * {@link java.util.List} containing all valid {@link Announce} objects
+     * of the batch.
+     */
+    @Override
+    public void update(Observable observable, Object arg) {
+        if (arg instanceof List) {
+            final List<?> messages = (List<?>) arg;
+            final List<Announce> announces = new ArrayList<>(messages.size());
+            for (final Object message : messages) {
+                final Announce announce = parse(message);
+                if (announce != null) {
+                    announces.add(announce);
                 }
             }
-
-            JsonElement ipv6 = jsonObject.get("ipv6");
-            if (ipv6 != null) {
-                for (JsonElement e : ipv6.getAsJsonArray()) {
-                    JsonElement address = e.getAsJsonObject().get("address");
-                    JsonElement prefix = e.getAsJsonObject().get("prefix");
-                    if ((address != null) && (prefix != null)) {
-                        InetAddress value = context.deserialize(address, InetAddress.class);
-                        if (value != null) {
-                            IPEntry entry = new IPEntry();
-                            entry.address = value;
-                            entry.prefix = prefix.getAsInt();
-                            iface.ipList.add(entry);
-                        }
-                    }
-                }
+            if (!announces.isEmpty()) {
+                setChanged();
+                notifyObservers(Collections.unmodifiableList(announces));
+            }
+        } else {
+            final Announce announce = parse(arg);
+            if (announce != null) {
+                setChanged();
+                notifyObservers(announce);
             }
-
-            return iface;
         }
     }
 
-    private static boolean isStringElement(JsonElement element) {
-        return ((element != null) && element.isJsonPrimitive() && element.getAsJsonPrimitive().isString());
+    private Announce parse(Object message) {
+        if (message instanceof Datagram) {
+            return parse((Datagram) message);
+        }
+        return parse((String) message);
     }
 
-    private static final class ServiceDeserializer implements JsonDeserializer<List<ServiceEntry>> {
-
-        @Override
-        public List<ServiceEntry> deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) throws JsonParseException {
-            List<ServiceEntry> serviceEntries = null;
-            if (json.isJsonArray()) {
-                serviceEntries = new ArrayList<>();
-                for (JsonElement e : json.getAsJsonArray()) {
-                    if (!e.isJsonNull()) {
-                        serviceEntries.add((ServiceEntry) context.deserialize(e, ServiceEntry.class));
-                    }
+    private Announce parse(Datagram datagram) {
+        final byte[] data = datagram.getData();
+        final int length = datagram.getLength();
+        if (exceedsPayloadSize(length)) {
+            return null;
+        }
+        final MessageKey key = MessageKey.probe(data, 0, length);
+        Announce announce = announceCache.get(key);
+        if (announce == null && !negativeCache.isRejected(key)) {
+            try {
+                Announce parsed = null;
+                if (byteParsing) {
+                    parsed = parseBytes(data, length);
+                }
+                if (parsed == null) {
+                    announce = parseJson(datagram.getMessage(), Arrays.copyOf(data, length));
+                } else {
+                    parsed.setJSONBytes(Arrays.copyOf(data, length));
+                    announce = validate(parsed);
                 }
+                announceCache.put(key, announce);
+            } catch (RejectedAnnounceException e) {
+                negativeCache.reject(key, e);
             }
+        }
+        return announce;
+    }
+
+    private Announce parse(String message) {
+        /*
+         * A UTF-8 encoded message has at least as many bytes as chars,
+         * so oversized strings are rejected before they are encoded.
+         */
+        if (message == null || exceedsPayloadSize(message.length())) {
+            return null;
+        }
+        final byte[] data = message.getBytes(StandardCharsets.UTF_8);
+        if (data.length > message.length() && exceedsPayloadSize(data.length)) {
+            return null;
+        }
+        final MessageKey key = MessageKey.probe(data, 0, data.length);
+        Announce announce = announceCache.get(key);
+        if (announce == null && !negativeCache.isRejected(key)) {
+            try {
+                announce = parseJson(message, data);
+                announceCache.put(key, announce);
+            } catch (RejectedAnnounceException e) {
+                negativeCache.reject(key, e);
+            }
+        }
+        return announce;
+    }
 
-            return serviceEntries;
+    /*
+     * Parses and validates an announce restored from a snapshot of a
+     * DeviceMonitor like a received message, but without caching it.
+     * Returns null if the announce is rejected.
+     */
+    Announce restore(byte[] payload) {
+        if (exceedsPayloadSize(payload.length)) {
+            return null;
+        }
+        try {
+            return parseJson(new String(payload, StandardCharsets.UTF_8), payload);
+        } catch (RejectedAnnounceException e) {
+            negativeCache.reject(e);
+            return null;
         }
     }
 
-    private static final class AnnounceParamsDeserializer implements JsonDeserializer<AnnounceParams> {
+    private boolean exceedsPayloadSize(int length) {
+        final int maxPayloadSize = parseLimits.getMaxPayloadSize();
+        if (length > maxPayloadSize) {
+            negativeCache.reject(new RejectedAnnounceException(RejectionReason.LIMIT_EXCEEDED,
+                "Message size " + length + " exceeds " + maxPayloadSize));
+            return true;
+        }
+        return false;
+    }
 
-        private final Type serviceListType;
+    private Announce parseBytes(byte[] data, int length) throws RejectedAnnounceException {
+        try {
+            return (lazyParsing ? lazyByteParser : byteParser).parse(data, 0, length);
+        } catch (ParseLimitException e) {
+            throw new RejectedAnnounceException(RejectionReason.LIMIT_EXCEEDED, e.getMessage());
+        }
+    }
 
-        AnnounceParamsDeserializer() {
-            serviceListType = new TypeToken<List<ServiceEntry>>() {
-            }.getType();
+    /*
+     * The announce keeps the bytes of the message only, not the message.
+     */
+    private Announce parseJson(String message, byte[] bytes) throws RejectedAnnounceException {
+        final Announce announce;
+        try {
+            announce = (lazyParsing ? lazyGson : gson).fromJson(message, Announce.class);
+        } catch (ParseLimitException e) {
+            throw new RejectedAnnounceException(RejectionReason.LIMIT_EXCEEDED, e.getMessage());
+        } catch (JsonSyntaxException e) {
+            /*
+             * There is no error handling necessary in this case. If somebody sends us invalid JSON,
+             * we just ignore the packet and go ahead.
+             */
+            throw new RejectedAnnounceException(RejectionReason.MALFORMED_JSON, "Can't parse JSON!", e);
+        }
+        if (announce == null) {
+            throw new RejectedAnnounceException(RejectionReason.NOT_AN_ANNOUNCE, "Message is no announce!");
         }
+        announce.setJSONBytes(bytes);
+        return validate(announce);
+    }
 
-        @Override
-        public AnnounceParams deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) {
-            AnnounceParams params = null;
-            final JsonObject jsonObject = json.getAsJsonObject();
-            if (jsonObject.has("apiVersion")) {
-                final String version = jsonObject.get("apiVersion").getAsString();
-                if ("1.0".compareTo(version) == 0) {
-                    params = new AnnounceParams();
-                    params.apiVersion = version;
-
-                    Device device = context.deserialize(jsonObject.get("device"), Device.class);
-                    params.device = device;
-                    NetSettings netSettings = context.deserialize(jsonObject.get("netSettings"), NetSettings.class);
-                    params.netSettings = netSettings;
-                    Router router = context.deserialize(jsonObject.get("router"), Router.class);
-                    params.router = router;
-                    JsonElement e = jsonObject.get("services");
-                    List<ServiceEntry> services = context.deserialize(e, serviceListType);
-                    params.services = services;
-                    e = jsonObject.get("expiration");
-                    if (e != null) {
-                        params.expiration = e.getAsInt();
-                    }
-                } else if (LOGGER.isLoggable(Level.INFO)) {
-                    LOGGER.log(Level.INFO, "Can't handle apiVersion: {0}\n{1}", new Object[]{version, jsonObject});
-                }
-            } else if (LOGGER.isLoggable(Level.SEVERE)) {
-                LOGGER.log(Level.SEVERE, "No apiVersion set in announce packet!\n{0}", jsonObject);
-            }
-            return params;
+    private Announce validate(Announce announce) throws RejectedAnnounceException {
+        final AnnounceParams params = announce.getParams();
+        if (params != null && !SUPPORTED_API_VERSION.equals(params.apiVersion)) {
+            throw new RejectedAnnounceException(RejectionReason.UNSUPPORTED_API_VERSION,
+                "Can't handle apiVersion: " + params.apiVersion);
+        }
+        try {
+            announce.identifyCommunicationPath();
+        } catch (MissingDataException e) {
+            /*
+             * During the creation of an Announce object it is required that some
+             * sub-objects are created in the parsed JSON object (i.e. the device's UUID). If these
+             * sub-objects are not created, the construction of the Announce object fails.
+             *
+             * Go ahead with the next packet.
+             */
+            throw new RejectedAnnounceException(RejectionReason.MISSING_DATA, "Some information is missing in JSON!", e);
+        }
+        if (params.getExpiration() < 0) {
+            throw new RejectedAnnounceException(RejectionReason.INVALID_EXPIRATION,
+                "Negative expiration in announce: " + params.getExpiration());
+        }
+        valuePool.canonicalizeParsed(params);
+        if (params.lazySource != null) {
+            params.lazyPool = valuePool;
         }
+        return announce;
     }
 
     static int calculatePrefix(InetAddress announceNetmask) {
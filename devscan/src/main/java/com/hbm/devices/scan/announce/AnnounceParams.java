@@ -28,10 +28,14 @@
 
 package com.hbm.devices.scan.announce;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import com.hbm.devices.scan.ScanConstants;
 
@@ -40,6 +44,11 @@ import com.hbm.devices.scan.ScanConstants;
  * information of the device itself (like uuid, name, type, etc), the
  * NetSettings, router information the device is connected to and running
  * services
+ * <p>
+ * If the {@link AnnounceDeserializer#setLazyParsing(boolean) lazy parsing}
+ * is enabled, the network settings and the services are only parsed when
+ * {@link #getNetSettings()} or {@link #getServices()} is called for the
+ * first time.
  * 
  * @since 1.0
  */
@@ -51,8 +60,11 @@ public final class AnnounceParams implements Serializable {
     Router router;
     List<ServiceEntry> services;
     int expiration;
+    transient volatile Announce lazySource;
+    transient ValuePool lazyPool;
 
     private static final long serialVersionUID = 2532013264163413436L;
+    private static final Logger LOGGER = Logger.getLogger(ScanConstants.LOGGER_NAME);
 
     AnnounceParams() {
     }
@@ -88,6 +100,7 @@ public final class AnnounceParams implements Serializable {
      * returned from this method.
      */
     public NetSettings getNetSettings() {
+        materialize();
         return netSettings;
     }
 
@@ -105,6 +118,7 @@ public final class AnnounceParams implements Serializable {
      * announced, an empty {@link java.util.List} is returned.
      */
     public List<ServiceEntry> getServices() {
+        materialize();
         if (services == null) {
             return new ArrayList<>();
         } else {
@@ -118,4 +132,43 @@ public final class AnnounceParams implements Serializable {
         }
         return expiration;
     }
+
+    /*
+     * Parses the complete announce again and takes over the sections
+     * skipped by the lazy parse. If that fails (i.e. an IP address
+     * can't be resolved), the skipped sections are left empty, the
+     * announce was already accepted.
+     */
+    private void materialize() {
+        if (lazySource == null) {
+            return;
+        }
+        synchronized (this) {
+            final Announce source = lazySource;
+            if (source == null) {
+                return;
+            }
+            try {
+                final Announce full = AnnounceAdapter.parse(source.getJSONString());
+                if (full != null && full.params != null) {
+                    if (full.params.netSettings != null) {
+                        netSettings = full.params.netSettings;
+                    }
+                    services = full.params.services;
+                }
+                if (lazyPool != null) {
+                    lazyPool.canonicalize(this);
+                }
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.SEVERE, "Can't parse skipped sections of lazy announce!", e);
+            }
+            lazyPool = null;
+            lazySource = null;
+        }
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        materialize();
+        out.defaultWriteObject();
+    }
 }
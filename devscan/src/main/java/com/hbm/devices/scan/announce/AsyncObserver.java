@@ -0,0 +1,291 @@
+/*
+ * Java Scan, a library for scanning and configuring HBM devices.
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) Hottinger Baldwin Messtechnik GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.hbm.devices.scan.announce;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.hbm.devices.scan.ScanConstants;
+
+/**
+ * Decouples a single {@link Observer} from the thread notifying it.
+ * <p>
+ * {@link DeviceMonitor}, {@link com.hbm.devices.scan.announce.filter.Filter}
+ * and {@link AnnounceDeserializer} call their observers one after the
+ * other on the notifying thread. So one slow observer, for instance a
+ * GUI or a connection to a remote client, delays all the others and
+ * finally the processing of received announces. An {@code
+ * AsyncObserver} is added to an {@link Observable} instead of the slow
+ * observer. It puts each event into a bounded queue and returns
+ * immediately. A thread owned by the {@code AsyncObserver} takes the
+ * events from the queue and calls the wrapped observer.
+ * <p>
+ * The {@link OverflowPolicy} decides what happens to the events. If
+ * the queue is full, either the notifying thread waits or the oldest
+ * event is dropped. Alternatively, events of the same device are
+ * merged whenever one of them is still queued, so only the latest
+ * state per device is kept. The number of dropped and coalesced events
+ * and the time the events waited in the queue are counted.
+ * <p>
+ * The wrapped observer is always called from the same thread and
+ * never concurrently. The events are passed in the order they were
+ * notified, unless they were coalesced.
+ *
+ * @since 2.3
+ */
+public final class AsyncObserver implements Observer, Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(ScanConstants.LOGGER_NAME);
+
+    private final Observer observer;
+    private final int capacity;
+    private final OverflowPolicy policy;
+    private final LinkedHashMap<Object, Entry> queue;
+    private final ExecutorService executor;
+    private long dropped;
+    private long coalesced;
+    private long lastLagNanos;
+    private long maxLagNanos;
+    private boolean closed;
+
+    /**
+     * Constructs a new {@code AsyncObserver} and starts its thread.
+     *
+     * @param observer the observer called asynchronously.
+     * @param capacity the maximum number of queued events.
+     * @param policy what to do with events that don't fit into the
+     * queue.
+     *
+     * @throws IllegalArgumentException if {@code observer} or {@code
+     * policy} is {@code null} or {@code capacity} is smaller than 1.
+     */
+    public AsyncObserver(Observer observer, int capacity, OverflowPolicy policy) {
+        if (observer == null) {
+            throw new IllegalArgumentException("observer must not be null");
+        }
+        if (policy == null) {
+            throw new IllegalArgumentException("policy must not be null");
+        }
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1");
+        }
+        this.observer = observer;
+        this.capacity = capacity;
+        this.policy = policy;
+        queue = new LinkedHashMap<>();
+        executor = Executors.newSingleThreadExecutor();
+        executor.execute(new Dispatcher());
+    }
+
+    /**
+     * Queues an event for the wrapped observer.
+     */
+    @Override
+    public void update(Observable observable, Object arg) {
+        if (arg == null) {
+            return;
+        }
+        final long now = System.nanoTime();
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            final String path = policy == OverflowPolicy.COALESCE ? DeviceEvents.getPath(arg) : null;
+            if (path != null && coalesce(path, observable, arg)) {
+                return;
+            }
+            while (queue.size() >= capacity && policy == OverflowPolicy.BLOCK) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    dropped++;
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                if (closed) {
+                    return;
+                }
+            }
+            if (queue.size() >= capacity) {
+                final Iterator<Entry> iterator = queue.values().iterator();
+                iterator.next();
+                iterator.remove();
+                dropped++;
+            }
+            queue.put(path == null ? new Object() : path, new Entry(observable, arg, now));
+            notifyAll();
+        }
+    }
+
+    /**
+     * Stops the thread of the {@code AsyncObserver}. Queued events are
+     * discarded.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            queue.clear();
+            notifyAll();
+        }
+        executor.shutdownNow();
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                LOGGER.log(Level.SEVERE, "Thread of asynchronous observer did not terminate!\n");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return the overflow policy of the queue.
+     */
+    public OverflowPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * @return the number of events currently waiting in the queue.
+     */
+    public synchronized int getQueueSize() {
+        return queue.size();
+    }
+
+    /**
+     * @return the number of events dropped because the queue was full,
+     * or because the notifying thread was interrupted while waiting for
+     * space in the queue.
+     */
+    public synchronized long getDroppedCount() {
+        return dropped;
+    }
+
+    /**
+     * @return the number of events merged into an event of the same
+     * device already queued, see {@link OverflowPolicy#COALESCE}.
+     */
+    public synchronized long getCoalescedCount() {
+        return coalesced;
+    }
+
+    /**
+     * @return the time in milliseconds the event passed last to the
+     * wrapped observer waited in the queue. For coalesced events, the
+     * time is measured from the first event merged.
+     */
+    public synchronized long getLastLagMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(lastLagNanos);
+    }
+
+    /**
+     * @return the longest time in milliseconds an event waited in the
+     * queue.
+     */
+    public synchronized long getMaxLagMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxLagNanos);
+    }
+
+    /*
+     * Merges arg into a queued event of the same path. Returns false if
+     * there is no such event.
+     */
+    private boolean coalesce(String path, Observable observable, Object arg) {
+        final Entry queued = queue.get(path);
+        if (queued == null) {
+            return false;
+        }
+        final Object merged = DeviceEvents.merge(queued.event, arg);
+        if (merged == null) {
+            queue.remove(path);
+            coalesced += 2;
+        } else {
+            queued.observable = observable;
+            queued.event = merged;
+            coalesced++;
+        }
+        return true;
+    }
+
+    private synchronized Entry take() throws InterruptedException {
+        while (queue.isEmpty()) {
+            if (closed) {
+                return null;
+            }
+            wait();
+        }
+        final Iterator<Entry> iterator = queue.values().iterator();
+        final Entry entry = iterator.next();
+        iterator.remove();
+        lastLagNanos = System.nanoTime() - entry.enqueued;
+        maxLagNanos = Math.max(maxLagNanos, lastLagNanos);
+        notifyAll();
+        return entry;
+    }
+
+    private static final class Entry {
+        private Observable observable;
+        private Object event;
+        private final long enqueued;
+
+        Entry(Observable observable, Object event, long enqueued) {
+            this.observable = observable;
+            this.event = event;
+            this.enqueued = enqueued;
+        }
+    }
+
+    private final class Dispatcher implements Runnable {
+
+        @Override
+        public void run() {
+            try {
+                Entry entry;
+                while ((entry = take()) != null) {
+                    try {
+                        observer.update(entry.observable, entry.event);
+                    } catch (RuntimeException e) {
+                        LOGGER.log(Level.SEVERE, "Asynchronous observer failed!", e);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
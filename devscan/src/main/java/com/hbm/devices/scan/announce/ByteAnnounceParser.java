@@ -0,0 +1,720 @@
+/*
+ * Java Scan, a library for scanning and configuring HBM devices.
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) Hottinger Baldwin Messtechnik GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.hbm.devices.scan.announce;
+
+import java.net.UnknownHostException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * A parser for announce messages working directly on the received bytes.
+ * <p>
+ * The parser only understands the fixed schema of announces with {@code
+ * apiVersion} 1.0 in strict JSON. Member names are compared byte by
+ * byte and only the values stored in the model classes are decoded into
+ * {@link java.lang.String}s, the message itself is never decoded.
+ * <p>
+ * Whenever the parser encounters something unexpected (escaped strings,
+ * floating point numbers, values of an unexpected type, lenient JSON
+ * syntax or messages the {@link AnnounceAdapter} would reject), it gives
+ * up and returns {@code null}. The caller then has to parse the message
+ * with Gson, so the set of accepted messages does not change.
+ * <p>
+ * Like the {@link AnnounceAdapter}, the parser might be lazy and skip
+ * the IP entries, the default gateway and the services.
+ * <p>
+ * Messages exceeding the {@link ParseLimits} are not passed on to Gson,
+ * a {@link ParseLimitException} is thrown instead. String lengths are
+ * counted in bytes.
+ * <p>
+ * Objects of this class are not thread safe.
+ */
+final class ByteAnnounceParser {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private static final byte[] METHOD = ascii("method");
+    private static final byte[] ANNOUNCE = ascii("announce");
+    private static final byte[] PARAMS = ascii("params");
+    private static final byte[] API_VERSION = ascii("apiVersion");
+    private static final byte[] SUPPORTED_API_VERSION = ascii("1.0");
+    private static final byte[] DEVICE = ascii("device");
+    private static final byte[] NET_SETTINGS = ascii("netSettings");
+    private static final byte[] ROUTER = ascii("router");
+    private static final byte[] SERVICES = ascii("services");
+    private static final byte[] EXPIRATION = ascii("expiration");
+    private static final byte[] UUID = ascii("uuid");
+    private static final byte[] NAME = ascii("name");
+    private static final byte[] TYPE = ascii("type");
+    private static final byte[] LABEL = ascii("label");
+    private static final byte[] FAMILY_TYPE = ascii("familyType");
+    private static final byte[] FIRMWARE_VERSION = ascii("firmwareVersion");
+    private static final byte[] HARDWARE_ID = ascii("hardwareId");
+    private static final byte[] IS_ROUTER = ascii("isRouter");
+    private static final byte[] INTERFACE = ascii("interface");
+    private static final byte[] DEFAULT_GATEWAY = ascii("defaultGateway");
+    private static final byte[] IPV4_ADDRESS = ascii("ipv4Address");
+    private static final byte[] IPV6_ADDRESS = ascii("ipv6Address");
+    private static final byte[] DESCRIPTION = ascii("description");
+    private static final byte[] IPV4 = ascii("ipv4");
+    private static final byte[] IPV6 = ascii("ipv6");
+    private static final byte[] ADDRESS = ascii("address");
+    private static final byte[] NETMASK = ascii("netmask");
+    private static final byte[] PREFIX = ascii("prefix");
+    private static final byte[] PORT = ascii("port");
+    private static final byte[] TRUE = ascii("true");
+    private static final byte[] FALSE = ascii("false");
+    private static final byte[] NULL = ascii("null");
+
+    private static final FallbackException FALLBACK = new FallbackException();
+
+    private final boolean lazy;
+    private byte[] data;
+    private int pos;
+    private int end;
+    private int keyStart;
+    private int keyLength;
+    private volatile ParseLimits limits;
+    private ParseLimits current;
+
+    ByteAnnounceParser(boolean lazy) {
+        this.lazy = lazy;
+        this.limits = ParseLimits.DEFAULT;
+    }
+
+    void setLimits(ParseLimits limits) {
+        this.limits = limits;
+    }
+
+    /**
+     * Parses an announce message.
+     *
+     * @param message the array containing the message.
+     * @param offset the index of the first byte of the message.
+     * @param length the length of the message.
+     *
+     * @return the {@link Announce} without JSON string and communication
+     * path, or {@code null} if the message has to be parsed by Gson.
+     */
+    Announce parse(byte[] message, int offset, int length) {
+        data = message;
+        pos = offset;
+        end = offset + length;
+        current = limits;
+        try {
+            final Announce announce = readAnnounce();
+            skipWhitespace();
+            if (pos != end) {
+                return null;
+            }
+            return announce;
+        } catch (FallbackException | UnknownHostException e) {
+            return null;
+        } finally {
+            data = null;
+            current = null;
+        }
+    }
+
+    private Announce readAnnounce() throws FallbackException, UnknownHostException {
+        boolean isAnnounce = false;
+        AnnounceParams params = null;
+        expect('{');
+        if (!consume('}')) {
+            do {
+                readKey();
+                if (isKey(METHOD)) {
+                    isAnnounce = readStringEquals(ANNOUNCE);
+                } else if (isKey(PARAMS)) {
+                    params = readParams();
+                } else {
+                    skipValue(2);
+                }
+            } while (consume(','));
+            expect('}');
+        }
+        if (!isAnnounce) {
+            throw FALLBACK;
+        }
+        final Announce announce = new Announce();
+        announce.params = params;
+        if (lazy && params != null) {
+            params.lazySource = announce;
+        }
+        return announce;
+    }
+
+    private AnnounceParams readParams() throws FallbackException, UnknownHostException {
+        final AnnounceParams params = new AnnounceParams();
+        boolean hasVersion = false;
+        expect('{');
+        if (!consume('}')) {
+            do {
+                readKey();
+                if (isKey(API_VERSION)) {
+                    hasVersion = readStringEquals(SUPPORTED_API_VERSION);
+                    if (!hasVersion) {
+                        throw FALLBACK;
+                    }
+                } else if (isKey(DEVICE)) {
+                    params.device = readDevice();
+                } else if (isKey(NET_SETTINGS)) {
+                    params.netSettings = readNetSettings();
+                } else if (isKey(ROUTER)) {
+                    params.router = readRouter();
+                } else if (isKey(SERVICES) && !lazy) {
+                    params.services = readServices();
+                } else if (isKey(EXPIRATION)) {
+                    params.expiration = readInt(0);
+                } else {
+                    skipValue(3);
+                }
+            } while (consume(','));
+            expect('}');
+        }
+        if (!hasVersion) {
+            throw FALLBACK;
+        }
+        params.apiVersion = "1.0";
+        return params;
+    }
+
+    private Device readDevice() throws FallbackException {
+        if (consumeNull()) {
+            return null;
+        }
+        final Device device = new Device();
+        expect('{');
+        if (!consume('}')) {
+            do {
+                readKey();
+                if (isKey(UUID)) {
+                    device.uuid = readString();
+                } else if (isKey(NAME)) {
+                    device.name = readString();
+                } else if (isKey(TYPE)) {
+                    device.type = readString();
+                } else if (isKey(LABEL)) {
+                    device.label = readString();
+                } else if (isKey(FAMILY_TYPE)) {
+                    device.familyType = readString();
+                } else if (isKey(FIRMWARE_VERSION)) {
+                    device.firmwareVersion = readString();
+                } else if (isKey(HARDWARE_ID)) {
+                    device.hardwareId = readString();
+                } else if (isKey(IS_ROUTER)) {
+                    device.router = readBoolean(device.router);
+                } else {
+                    skipValue(4);
+                }
+            } while (consume(','));
+            expect('}');
+        }
+        return device;
+    }
+
+    private NetSettings readNetSettings() throws FallbackException, UnknownHostException {
+        if (consumeNull()) {
+            return null;
+        }
+        final NetSettings settings = new NetSettings();
+        expect('{');
+        if (!consume('}')) {
+            do {
+                readKey();
+                if (isKey(INTERFACE)) {
+                    settings.iface = readInterface();
+                } else if (isKey(DEFAULT_GATEWAY) && !lazy) {
+                    settings.defaultGateway = readDefaultGateway();
+                } else {
+                    skipValue(4);
+                }
+            } while (consume(','));
+            expect('}');
+        }
+        return settings;
+    }
+
+    private DefaultGateway readDefaultGateway() throws FallbackException {
+        if (consumeNull()) {
+            return null;
+        }
+        final DefaultGateway gateway = new DefaultGateway();
+        expect('{');
+        if (!consume('}')) {
+            do {
+                readKey();
+                if (isKey(IPV4_ADDRESS)) {
+                    gateway.ipv4Address = readString();
+                } else if (isKey(IPV6_ADDRESS)) {
+                    gateway.ipv6Address = readString();
+                } else {
+                    skipValue(5);
+                }
+            } while (consume(','));
+            expect('}');
+        }
+        return gateway;
+    }
+
+    private Interface readInterface() throws FallbackException, UnknownHostException {
+        if (consumeNull()) {
+            return null;
+        }
+        final Interface iface = new Interface();
+        final List<IPEntry> ipv4 = new ArrayList<>();
+        final List<IPEntry> ipv6 = new ArrayList<>();
+        expect('{');
+        if (!consume('}')) {
+            do {
+                readKey();
+                if (isKey(NAME)) {
+                    iface.name = readNonNullString();
+                } else if (isKey(DESCRIPTION)) {
+                    iface.description = readNonNullString();
+                } else if (isKey(TYPE)) {
+                    iface.type = readNonNullString();
+                } else if (isKey(IPV4) && !lazy) {
+                    readIPv4Entries(ipv4);
+                } else if (isKey(IPV6) && !lazy) {
+                    readIPv6Entries(ipv6);
+                } else {
+                    skipValue(5);
+                }
+            } while (consume(','));
+            expect('}');
+        }
+        if (iface.name == null) {
+            throw FALLBACK;
+        }
+        if (!lazy) {
+            iface.ipList = new LinkedList<>(ipv4);
+            iface.ipList.addAll(ipv6);
+        }
+        return iface;
+    }
+
+    private void readIPv4Entries(List<IPEntry> entries) throws FallbackException, UnknownHostException {
+        expect('[');
+        if (consume(']')) {
+            return;
+        }
+        int count = 0;
+        do {
+            checkArrayLength(++count);
+            String address = null;
+            String netmask = null;
+            expect('{');
+            if (!consume('}')) {
+                do {
+                    readKey();
+                    if (isKey(ADDRESS)) {
+                        address = readString();
+                    } else if (isKey(NETMASK)) {
+                        netmask = readString();
+                    } else {
+                        skipValue(7);
+                    }
+                } while (consume(','));
+                expect('}');
+            }
+            if ((address != null) && (netmask != null)) {
+                entries.add(IPEntry.fromIPv4(address, netmask));
+            }
+        } while (consume(','));
+        expect(']');
+    }
+
+    private void readIPv6Entries(List<IPEntry> entries) throws FallbackException, UnknownHostException {
+        expect('[');
+        if (consume(']')) {
+            return;
+        }
+        int count = 0;
+        do {
+            checkArrayLength(++count);
+            String address = null;
+            boolean hasPrefix = false;
+            int prefix = 0;
+            expect('{');
+            if (!consume('}')) {
+                do {
+                    readKey();
+                    if (isKey(ADDRESS)) {
+                        address = readString();
+                    } else if (isKey(PREFIX) && !consumeNull()) {
+                        prefix = readInt(0);
+                        hasPrefix = true;
+                    } else {
+                        skipValue(7);
+                    }
+                } while (consume(','));
+                expect('}');
+            }
+            if ((address != null) && hasPrefix) {
+                entries.add(IPEntry.fromIPv6(address, prefix));
+            }
+        } while (consume(','));
+        expect(']');
+    }
+
+    private Router readRouter() throws FallbackException {
+        if (consumeNull()) {
+            return null;
+        }
+        final Router router = new Router();
+        expect('{');
+        if (!consume('}')) {
+            do {
+                readKey();
+                if (isKey(UUID)) {
+                    router.uuid = readString();
+                } else {
+                    skipValue(4);
+                }
+            } while (consume(','));
+            expect('}');
+        }
+        return router;
+    }
+
+    private List<ServiceEntry> readServices() throws FallbackException {
+        skipWhitespace();
+        if (pos >= end || data[pos] != '[') {
+            skipValue(3);
+            return null;
+        }
+        pos++;
+        final List<ServiceEntry> services = new ArrayList<>();
+        if (consume(']')) {
+            return services;
+        }
+        int count = 0;
+        do {
+            checkArrayLength(++count);
+            if (!consumeNull()) {
+                services.add(readServiceEntry());
+            }
+        } while (consume(','));
+        expect(']');
+        return services;
+    }
+
+    private ServiceEntry readServiceEntry() throws FallbackException {
+        final ServiceEntry entry = new ServiceEntry();
+        expect('{');
+        if (!consume('}')) {
+            do {
+                readKey();
+                if (isKey(TYPE)) {
+                    entry.type = readString();
+                } else if (isKey(PORT)) {
+                    entry.port = readInt(entry.port);
+                } else {
+                    skipValue(5);
+                }
+            } while (consume(','));
+            expect('}');
+        }
+        return entry;
+    }
+
+    private void readKey() throws FallbackException {
+        skipWhitespace();
+        if (pos >= end || data[pos] != '"') {
+            throw FALLBACK;
+        }
+        keyStart = pos + 1;
+        keyLength = scanString() - keyStart;
+        expect(':');
+    }
+
+    private boolean isKey(byte[] name) {
+        if (keyLength != name.length) {
+            return false;
+        }
+        for (int i = 0; i < keyLength; i++) {
+            if (data[keyStart + i] != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * Scans an unescaped string starting at the opening quote at pos.
+     * Returns the index of the closing quote and leaves pos behind it.
+     */
+    private int scanString() throws FallbackException {
+        final int start = pos + 1;
+        int index = start;
+        while (index < end) {
+            final byte b = data[index];
+            if (b == '"') {
+                pos = index + 1;
+                return index;
+            }
+            checkStringLength(start, index);
+            if (b == '\\' || (b >= 0 && b < 0x20)) {
+                throw FALLBACK;
+            }
+            index++;
+        }
+        throw FALLBACK;
+    }
+
+    private boolean readStringEquals(byte[] expected) throws FallbackException {
+        skipWhitespace();
+        if (pos >= end || data[pos] != '"') {
+            throw FALLBACK;
+        }
+        final int start = pos + 1;
+        final int length = scanString() - start;
+        if (length != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (data[start + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String readString() throws FallbackException {
+        if (consumeNull()) {
+            return null;
+        }
+        return readNonNullString();
+    }
+
+    private String readNonNullString() throws FallbackException {
+        skipWhitespace();
+        if (pos >= end || data[pos] != '"') {
+            throw FALLBACK;
+        }
+        final int start = pos + 1;
+        final int length = scanString() - start;
+        for (int i = start; i < start + length; i++) {
+            if (data[i] < 0) {
+                return new String(data, start, length, UTF8);
+            }
+        }
+        return new String(data, start, length, ASCII);
+    }
+
+    private boolean readBoolean(boolean defaultValue) throws FallbackException {
+        if (consumeNull()) {
+            return defaultValue;
+        }
+        if (consumeLiteral(TRUE)) {
+            return true;
+        }
+        if (consumeLiteral(FALSE)) {
+            return false;
+        }
+        throw FALLBACK;
+    }
+
+    private int readInt(int defaultValue) throws FallbackException {
+        if (consumeNull()) {
+            return defaultValue;
+        }
+        final boolean negative = consume('-');
+        final int start = pos;
+        long value = 0;
+        while (pos < end && data[pos] >= '0' && data[pos] <= '9') {
+            value = value * 10 + (data[pos] - '0');
+            if (value > Integer.MAX_VALUE + 1L) {
+                throw FALLBACK;
+            }
+            pos++;
+        }
+        final int digits = pos - start;
+        if (digits == 0 || (digits > 1 && data[start] == '0')) {
+            throw FALLBACK;
+        }
+        if (pos < end && (data[pos] == '.' || data[pos] == 'e' || data[pos] == 'E')) {
+            throw FALLBACK;
+        }
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) {
+            throw FALLBACK;
+        }
+        return (int) value;
+    }
+
+    /*
+     * depth is the nesting depth of the value if it is an object or array.
+     */
+    private void skipValue(int depth) throws FallbackException {
+        skipWhitespace();
+        if (pos >= end) {
+            throw FALLBACK;
+        }
+        final byte b = data[pos];
+        if (b == '"') {
+            skipString();
+        } else if (b == '{' || b == '[') {
+            skipContainer(b == '{', depth);
+        } else if (b == '-' || (b >= '0' && b <= '9')) {
+            skipNumber();
+        } else if (!consumeLiteral(TRUE) && !consumeLiteral(FALSE) && !consumeLiteral(NULL)) {
+            throw FALLBACK;
+        }
+    }
+
+    private void skipContainer(boolean object, int depth) throws FallbackException {
+        if (depth > current.getMaxDepth()) {
+            throw new ParseLimitException("Nesting depth exceeds " + current.getMaxDepth());
+        }
+        pos++;
+        final char close = object ? '}' : ']';
+        if (!consume(close)) {
+            int count = 0;
+            do {
+                if (object) {
+                    readKey();
+                } else {
+                    checkArrayLength(++count);
+                }
+                skipValue(depth + 1);
+            } while (consume(','));
+            expect(close);
+        }
+    }
+
+    private void checkArrayLength(int length) {
+        if (length > current.getMaxArrayLength()) {
+            throw new ParseLimitException("Array length exceeds " + current.getMaxArrayLength());
+        }
+    }
+
+    private void checkStringLength(int start, int index) {
+        if (index - start > current.getMaxStringLength()) {
+            throw new ParseLimitException("String length exceeds " + current.getMaxStringLength());
+        }
+    }
+
+    private void skipString() throws FallbackException {
+        final int start = pos + 1;
+        int index = start;
+        while (index < end) {
+            final byte b = data[index];
+            if (b == '"') {
+                pos = index + 1;
+                return;
+            }
+            checkStringLength(start, index);
+            if (b == '\\') {
+                index++;
+            } else if (b >= 0 && b < 0x20) {
+                throw FALLBACK;
+            }
+            index++;
+        }
+        throw FALLBACK;
+    }
+
+    private void skipNumber() {
+        while (pos < end) {
+            final byte b = data[pos];
+            if ((b >= '0' && b <= '9') || b == '-' || b == '+' || b == '.' || b == 'e' || b == 'E') {
+                pos++;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private boolean consumeNull() {
+        return consumeLiteral(NULL);
+    }
+
+    private boolean consumeLiteral(byte[] literal) {
+        skipWhitespace();
+        if (end - pos < literal.length) {
+            return false;
+        }
+        for (int i = 0; i < literal.length; i++) {
+            if (data[pos + i] != literal[i]) {
+                return false;
+            }
+        }
+        pos += literal.length;
+        return true;
+    }
+
+    private boolean consume(char c) {
+        skipWhitespace();
+        if (pos < end && data[pos] == c) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(char c) throws FallbackException {
+        if (!consume(c)) {
+            throw FALLBACK;
+        }
+    }
+
+    private void skipWhitespace() {
+        while (pos < end) {
+            final byte b = data[pos];
+            if (b == ' ' || b == '\n' || b == '\r' || b == '\t') {
+                pos++;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(ASCII);
+    }
+
+    /*
+     * Thrown to abort parsing. A single instance without stack trace is
+     * reused, because falling back is not an error.
+     */
+    private static final class FallbackException extends Exception {
+
+        private static final long serialVersionUID = 4915043725420651316L;
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+}
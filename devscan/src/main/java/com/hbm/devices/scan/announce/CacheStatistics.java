@@ -0,0 +1,112 @@
+/*
+ * Java Scan, a library for scanning and configuring HBM devices.
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) Hottinger Baldwin Messtechnik GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.hbm.devices.scan.announce;
+
+/**
+ * An immutable snapshot of the counters of the cache an {@link
+ * AnnounceDeserializer} uses to avoid parsing repeated messages.
+ *
+ * @see AnnounceDeserializer#getCacheStatistics()
+ * @since 2.3
+ */
+public final class CacheStatistics {
+
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final int size;
+    private final int capacity;
+
+    CacheStatistics(long hits, long misses, long evictions, int size, int capacity) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.size = size;
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return the number of messages found in the cache.
+     */
+    public long getHitCount() {
+        return hits;
+    }
+
+    /**
+     * @return the number of messages not found in the cache.
+     */
+    public long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * @return the fraction of lookups found in the cache, {@code 0.0}
+     * if there was no lookup yet.
+     */
+    public double getHitRate() {
+        final long lookups = hits + misses;
+        return lookups == 0 ? 0.0 : (double)hits / lookups;
+    }
+
+    /**
+     * @return the number of messages removed from the cache to make
+     * room for others. Messages replaced by a newer announce of the
+     * same device are not counted.
+     */
+    public long getEvictionCount() {
+        return evictions;
+    }
+
+    /**
+     * @return the number of messages currently cached.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return the current capacity of the cache. If the cache sizes
+     * itself by the number of live devices, this is the capacity it
+     * has currently grown to.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    CacheStatistics plus(CacheStatistics other) {
+        return new CacheStatistics(hits + other.hits, misses + other.misses,
+            evictions + other.evictions, size + other.size, capacity + other.capacity);
+    }
+
+    @Override
+    public String toString() {
+        return "hits: " + hits + ", misses: " + misses + ", evictions: " + evictions
+            + ", size: " + size + ", capacity: " + capacity;
+    }
+}
@@ -107,24 +107,19 @@ public final class ConnectionFinder {
             .getInterface().getIPList();
         final List<InetAddress> list = new LinkedList<>();
         
-        for (final Object ipEntry : announceAddresses) {
-            IPEntry entry = (IPEntry) ipEntry;
-            final InetAddress announceAddress = entry.getAddress();
+        for (final IPEntry entry : announceAddresses) {
             final int announcePrefix = entry.getPrefix();
-            if ((announceAddress instanceof Inet4Address)) {
+            if (entry.isIPv4()) {
                 for (final NetworkInterfaceAddress iface : this.ipv4AddressList) {
-                    final InetAddress ifaceAddress = iface.getAddress();
-                    final int ifaceAddressPrefix = iface.getPrefix();
-                    if (sameIPv4Net(announceAddress, announcePrefix, ifaceAddress, ifaceAddressPrefix)) {
-                        list.add(announceAddress);
+                    if (sameIPv4Net(entry.getIPv4(), announcePrefix, iface.getIPv4(), iface.getPrefix())) {
+                        list.add(entry.getAddress());
                     } 
                 }
             } else {
                 for (final NetworkInterfaceAddress iface : this.ipv6AddressList) {
-                    final InetAddress ifaceAddress = iface.getAddress();
-                    final int ifaceAddressPrefix = iface.getPrefix();
-                    if (sameIPv6Net(announceAddress, announcePrefix, ifaceAddress, ifaceAddressPrefix)) {
-                        list.add(announceAddress);
+                    if (!iface.isIPv4() && sameIPv6Net(entry.getHigh(), entry.getLow(), announcePrefix,
+                            iface.getHigh(), iface.getLow(), iface.getPrefix())) {
+                        list.add(entry.getAddress());
                     } 
                 }
             }
@@ -137,10 +132,13 @@ public final class ConnectionFinder {
             InetAddress interfaceAddress, int interfacePrefix) {
         final byte[] announceBytes = announceAddress.getAddress();
         final byte[] interfaceBytes = interfaceAddress.getAddress();
-        int announceInteger = convertToInteger(announceBytes);
-        int interfaceInteger = convertToInteger(interfaceBytes);
-        announceInteger = announceInteger >>> (Integer.SIZE - announcePrefix);
-        interfaceInteger = interfaceInteger >>> (Integer.SIZE - interfacePrefix);
+        return sameIPv4Net(convertToInteger(announceBytes), announcePrefix,
+            convertToInteger(interfaceBytes), interfacePrefix);
+    }
+
+    static boolean sameIPv4Net(int announceAddress, int announcePrefix, int interfaceAddress, int interfacePrefix) {
+        final int announceInteger = announceAddress >>> (Integer.SIZE - announcePrefix);
+        final int interfaceInteger = interfaceAddress >>> (Integer.SIZE - interfacePrefix);
         return announceInteger == interfaceInteger;
     }
     
@@ -154,34 +152,57 @@ public final class ConnectionFinder {
     
     static boolean sameIPv6Net(InetAddress announceAddress, int announcePrefixLength,
             InetAddress interfaceAddress, int interfacePrefixLength) {
-        if (announcePrefixLength != interfacePrefixLength) {
-            return false;
-        }
-
         if (!(announceAddress instanceof Inet6Address) || !(interfaceAddress instanceof Inet6Address)) {
             return false;
         }
 
         final byte[] announceAddr = announceAddress.getAddress();
         final byte[] interfaceAddr = interfaceAddress.getAddress();
+        return sameIPv6Net(IPEntry.toLong(announceAddr, 0, Long.BYTES), IPEntry.toLong(announceAddr, Long.BYTES, Long.BYTES),
+            announcePrefixLength, IPEntry.toLong(interfaceAddr, 0, Long.BYTES),
+            IPEntry.toLong(interfaceAddr, Long.BYTES, Long.BYTES), interfacePrefixLength);
+    }
 
-        for (int i = 0; i < (announcePrefixLength / Byte.SIZE); i++) {
-            if (announceAddr[i] != interfaceAddr[i]) {
-                return false;
-            }
+    /*
+     * Only whole bytes of the prefix are compared.
+     */
+    static boolean sameIPv6Net(long announceHigh, long announceLow, int announcePrefixLength,
+            long interfaceHigh, long interfaceLow, int interfacePrefixLength) {
+        if (announcePrefixLength != interfacePrefixLength) {
+            return false;
         }
 
-        return true;
+        final int bits = Math.min(announcePrefixLength / Byte.SIZE * Byte.SIZE, 2 * Long.SIZE);
+        if (bits <= 0) {
+            return true;
+        }
+        if (bits <= Long.SIZE) {
+            return ((announceHigh ^ interfaceHigh) >>> (Long.SIZE - bits)) == 0;
+        }
+        return announceHigh == interfaceHigh
+            && ((announceLow ^ interfaceLow) >>> (2 * Long.SIZE - bits)) == 0;
     }
 }
 
 class NetworkInterfaceAddress {
     private final InetAddress address;
     private final int prefix;
+    private final boolean ipv4;
+    private final long high;
+    private final long low;
 
     NetworkInterfaceAddress(InetAddress address, int prefix) {
         this.address = address;
         this.prefix = prefix;
+        final byte[] bytes = address.getAddress();
+        this.ipv4 = address instanceof Inet4Address;
+        if (ipv4) {
+            this.high = 0;
+            this.low = IPEntry.toLong(bytes, 0, bytes.length);
+        } else {
+            this.high = IPEntry.toLong(bytes, 0, Long.BYTES);
+            this.low = IPEntry.toLong(bytes, Long.BYTES, Long.BYTES);
+        }
     }
 
     InetAddress getAddress() {
@@ -191,4 +212,20 @@ class NetworkInterfaceAddress {
     int getPrefix() {
         return prefix;
     }
+
+    boolean isIPv4() {
+        return ipv4;
+    }
+
+    int getIPv4() {
+        return (int) low;
+    }
+
+    long getHigh() {
+        return high;
+    }
+
+    long getLow() {
+        return low;
+    }
 }
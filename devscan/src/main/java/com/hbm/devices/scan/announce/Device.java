@@ -38,20 +38,20 @@ import java.io.Serializable;
  */
 public final class Device implements Serializable {
 
-    private String uuid;
-    private String name;
-    private String type;
-    private String label;
-    private String familyType;
-    private String firmwareVersion;
-    private String hardwareId;
+    String uuid;
+    String name;
+    String type;
+    String label;
+    String familyType;
+    String firmwareVersion;
+    String hardwareId;
 
     private static final long serialVersionUID = -2099617037615519469L;
 
     @SerializedName("isRouter")
-    private boolean router;
+    boolean router;
 
-    private Device() {
+    Device() {
     }
 
     /**
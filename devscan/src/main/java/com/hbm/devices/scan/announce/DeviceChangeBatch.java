@@ -0,0 +1,109 @@
+/*
+ * Java Scan, a library for scanning and configuring HBM devices.
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) Hottinger Baldwin Messtechnik GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.hbm.devices.scan.announce;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The immutable set of device changes collected by a {@link
+ * DeviceChangeBatcher} during one window, or between two versions of a
+ * {@link DeviceSet}.
+ * <p>
+ * There is at most one event per device. Repeated updates of a device
+ * are collapsed into a single {@link UpdateDeviceEvent} from the state
+ * before the window to the latest state, devices which appeared and
+ * disappeared again within the window are not contained at all. Neither
+ * are devices which were lost and came back with an equal announce.
+ *
+ * @since 2.3
+ */
+public final class DeviceChangeBatch {
+
+    private final List<Object> events;
+    private final List<NewDeviceEvent> newDevices;
+    private final List<UpdateDeviceEvent> updatedDevices;
+    private final List<LostDeviceEvent> lostDevices;
+
+    DeviceChangeBatch(List<Object> events) {
+        final List<NewDeviceEvent> newEvents = new ArrayList<>();
+        final List<UpdateDeviceEvent> updateEvents = new ArrayList<>();
+        final List<LostDeviceEvent> lostEvents = new ArrayList<>();
+        for (final Object event : events) {
+            if (event instanceof NewDeviceEvent) {
+                newEvents.add((NewDeviceEvent)event);
+            } else if (event instanceof UpdateDeviceEvent) {
+                updateEvents.add((UpdateDeviceEvent)event);
+            } else {
+                lostEvents.add((LostDeviceEvent)event);
+            }
+        }
+        this.events = Collections.unmodifiableList(new ArrayList<>(events));
+        this.newDevices = Collections.unmodifiableList(newEvents);
+        this.updatedDevices = Collections.unmodifiableList(updateEvents);
+        this.lostDevices = Collections.unmodifiableList(lostEvents);
+    }
+
+    /**
+     * @return all events of the batch, ordered by the first change of
+     * each device within the window.
+     */
+    public List<Object> getEvents() {
+        return events;
+    }
+
+    /**
+     * @return the devices which appeared within the window.
+     */
+    public List<NewDeviceEvent> getNewDevices() {
+        return newDevices;
+    }
+
+    /**
+     * @return the devices whose announce changed within the window.
+     */
+    public List<UpdateDeviceEvent> getUpdatedDevices() {
+        return updatedDevices;
+    }
+
+    /**
+     * @return the devices which disappeared within the window.
+     */
+    public List<LostDeviceEvent> getLostDevices() {
+        return lostDevices;
+    }
+
+    /**
+     * @return the number of devices changed within the window.
+     */
+    public int size() {
+        return events.size();
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Java Scan, a library for scanning and configuring HBM devices.
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) Hottinger Baldwin Messtechnik GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.hbm.devices.scan.announce;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.hbm.devices.scan.ScanConstants;
+
+/**
+ * Collects the events of a {@link DeviceMonitor} and notifies them as
+ * one {@link DeviceChangeBatch} per window.
+ * <p>
+ * Observers like dashboards need to know what changed recently rather
+ * than every single event. A {@code DeviceChangeBatcher} is added as
+ * observer to a {@link DeviceMonitor}. It keeps the latest change per
+ * device, merged as described for {@link OverflowPolicy#COALESCE}, and
+ * notifies all changes collected during the last window at the end of
+ * the window. Windows without changes are not notified. During storms
+ * of announces or flapping devices, the observers of the batcher see
+ * at most one event per device and window.
+ * <p>
+ * Batches are notified from a thread owned by the batcher, one after
+ * the other.
+ *
+ * @since 2.3
+ */
+public final class DeviceChangeBatcher extends Observable implements Observer, Closeable {
+
+    /**
+     * The window used if none is given, 100 ms.
+     */
+    public static final long DEFAULT_WINDOW_MS = 100;
+
+    private static final Logger LOGGER = Logger.getLogger(ScanConstants.LOGGER_NAME);
+
+    private final Object lock;
+    private final Object flushLock;
+    private final ScheduledThreadPoolExecutor executor;
+    private LinkedHashMap<String, Object> pending;
+    private boolean closed;
+
+    /**
+     * Constructs a {@code DeviceChangeBatcher} with a window of {@link
+     * #DEFAULT_WINDOW_MS}.
+     */
+    public DeviceChangeBatcher() {
+        this(DEFAULT_WINDOW_MS);
+    }
+
+    /**
+     * Constructs a {@code DeviceChangeBatcher} and starts its thread.
+     *
+     * @param windowMillis the length of a window in milliseconds.
+     *
+     * @throws IllegalArgumentException if {@code windowMillis} is smaller
+     * than 1.
+     */
+    public DeviceChangeBatcher(long windowMillis) {
+        super();
+        if (windowMillis < 1) {
+            throw new IllegalArgumentException("window must be at least 1 ms");
+        }
+        lock = new Object();
+        flushLock = new Object();
+        pending = new LinkedHashMap<>();
+        executor = new ScheduledThreadPoolExecutor(1);
+        executor.scheduleAtFixedRate(this::flush, windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void update(Observable observable, Object arg) {
+        final String path = DeviceEvents.getPath(arg);
+        if (path == null || arg instanceof Announce) {
+            return;
+        }
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            final Object queued = pending.get(path);
+            if (queued == null) {
+                pending.put(path, arg);
+                return;
+            }
+            final Object merged = DeviceEvents.merge(queued, arg);
+            if (merged == null) {
+                pending.remove(path);
+            } else {
+                pending.put(path, merged);
+            }
+        }
+    }
+
+    /**
+     * Notifies the changes collected so far as a batch immediately,
+     * without waiting for the end of the current window.
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            final Map<String, Object> changes;
+            synchronized (lock) {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                changes = pending;
+                pending = new LinkedHashMap<>();
+            }
+            try {
+                setChanged();
+                notifyObservers(new DeviceChangeBatch(new ArrayList<>(changes.values())));
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.SEVERE, "Observer of device change batches failed!", e);
+            }
+        }
+    }
+
+    /**
+     * Stops the thread of the batcher. The changes collected so far are
+     * notified before.
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+        }
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                LOGGER.log(Level.SEVERE, "Thread of device change batcher did not terminate!\n");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+}
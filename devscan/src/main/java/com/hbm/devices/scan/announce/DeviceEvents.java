@@ -0,0 +1,88 @@
+/*
+ * Java Scan, a library for scanning and configuring HBM devices.
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) Hottinger Baldwin Messtechnik GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.hbm.devices.scan.announce;
+
+/*
+ * Merges the events of a device, so that only its latest state is kept
+ * while the sequence of events seen by an observer stays consistent: a
+ * new device followed by an update is still new, a new device followed
+ * by a lost one was never there, and a lost device followed by a new
+ * one was updated. If the lost and the new device have an equal
+ * announce, nothing changed and both events vanish.
+ */
+final class DeviceEvents {
+
+    private DeviceEvents() {
+    }
+
+    /*
+     * Returns the event replacing the queued one of the same path, or null
+     * if both events cancel each other out.
+     */
+    static Object merge(Object queued, Object latest) {
+        if (queued instanceof NewDeviceEvent) {
+            if (latest instanceof UpdateDeviceEvent) {
+                return new NewDeviceEvent(((UpdateDeviceEvent)latest).getNewAnnounce());
+            }
+            if (latest instanceof LostDeviceEvent) {
+                return null;
+            }
+        } else if (queued instanceof UpdateDeviceEvent) {
+            final Announce oldAnnounce = ((UpdateDeviceEvent)queued).getOldAnnounce();
+            if (latest instanceof UpdateDeviceEvent) {
+                return new UpdateDeviceEvent(oldAnnounce, ((UpdateDeviceEvent)latest).getNewAnnounce());
+            }
+            if (latest instanceof LostDeviceEvent) {
+                return new LostDeviceEvent(oldAnnounce);
+            }
+        } else if (queued instanceof LostDeviceEvent && latest instanceof NewDeviceEvent) {
+            final Announce lostAnnounce = ((LostDeviceEvent)queued).getAnnounce();
+            final Announce newAnnounce = ((NewDeviceEvent)latest).getAnnounce();
+            return lostAnnounce.equals(newAnnounce) ? null : new UpdateDeviceEvent(lostAnnounce, newAnnounce);
+        }
+        return latest;
+    }
+
+    /*
+     * Returns the communication path an Announce or device event refers
+     * to, or null for all other objects.
+     */
+    static String getPath(Object event) {
+        if (event instanceof Announce) {
+            return ((Announce)event).getPath();
+        } else if (event instanceof NewDeviceEvent) {
+            return ((NewDeviceEvent)event).getAnnounce().getPath();
+        } else if (event instanceof UpdateDeviceEvent) {
+            return ((UpdateDeviceEvent)event).getNewAnnounce().getPath();
+        } else if (event instanceof LostDeviceEvent) {
+            return ((LostDeviceEvent)event).getAnnounce().getPath();
+        }
+        return null;
+    }
+}
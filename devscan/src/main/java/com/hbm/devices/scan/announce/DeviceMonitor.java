@@ -28,16 +28,23 @@
 
 package com.hbm.devices.scan.announce;
 
+import java.io.BufferedOutputStream;
 import java.io.Closeable;
-import java.util.HashMap;
-import java.util.Map;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Observable;
 import java.util.Observer;
-import java.util.concurrent.Callable;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.RejectedExecutionException;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -53,18 +60,52 @@ import com.hbm.devices.scan.ScanConstants;
  * Furthermore, it notifies a {@link LostDeviceEvent} if no new {@link
  * Announce} object was received during the expiration period
  * of the enclosed {@link Announce} object.
+ * <p>
+ * The state of a device is changed while holding one of several locks
+ * selected by the communication path of the device, so announces and
+ * expirations of different devices don't block each other. The
+ * resulting events are queued in the order of the state changes and
+ * notified after the lock is released, so a slow observer does not
+ * block other threads changing the state of devices. Observers are
+ * never called concurrently, and the events of a single device are
+ * notified in the order of its state changes. An event might be
+ * notified by another thread than the one which caused it, if that
+ * thread is notifying events already.
+ * <p>
+ * For installations with a very large number of devices, the announces
+ * of the known devices can be stored outside of the Java heap, see
+ * {@link #DeviceMonitor(boolean)}.
+ * <p>
+ * The known devices can be written to a snapshot and restored after a
+ * restart, see {@link #writeSnapshot(OutputStream)}, so they are shown
+ * before they announce again.
+ * <p>
+ * Observers only interested in the changes of a period, like
+ * dashboards, can receive the events batched by a {@link
+ * DeviceChangeBatcher}. Readers only interested in the current state
+ * can share the immutable {@link DeviceSet} of the monitor, see {@link
+ * #getDeviceSet()}.
  *
  * @since 1.0
  */
 public final class DeviceMonitor extends Observable implements Observer, Closeable {
 
-    private final Map<String, TimerContainer> deviceMap;
-    private final ScheduledThreadPoolExecutor executor;
-    private boolean stopped;
+    private final ConcurrentHashMap<String, TimerContainer> deviceMap;
+    private final Object[] locks;
+    private final Queue<Object> events;
+    private final AtomicBoolean publishing;
+    private final ExpirationTimer timer;
+    private final OffHeapAnnounceStore store;
+    private volatile DeviceSet deviceSet;
+    private volatile boolean stopped;
 
     private static final Logger LOGGER = 
         Logger.getLogger(ScanConstants.LOGGER_NAME);
     private static final int INITIAL_ENTRIES = 100;
+    private static final int LOCK_STRIPES = 64;
+    private static final int SNAPSHOT_MAGIC = 0x48424d44;
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final int MAX_SNAPSHOT_PAYLOAD = 1 << 24;
 
     /**
      * Constructs a new {@code DeviceMonitor} object.
@@ -72,12 +113,120 @@ public final class DeviceMonitor extends Observable implements Observer, Closeab
      * @since 1.0
      */
     public DeviceMonitor() {
+        this(false);
+    }
+
+    /**
+     * Constructs a new {@code DeviceMonitor} object.
+     * <p>
+     * If {@code offHeap} is {@code true}, the {@code DeviceMonitor}
+     * keeps the raw payload and the expiration of the last announce of
+     * each device in direct memory instead of the {@link Announce}
+     * object. The {@link Announce} objects notified with {@link
+     * UpdateDeviceEvent}s and {@link LostDeviceEvent}s as the previous
+     * announce are parsed again from the stored payload on demand, so
+     * they don't carry the cookie (see {@link Announce#setCookie}) of the
+     * original object.
+     * <p>
+     * With very large numbers of devices, the cache of the {@link
+     * AnnounceDeserializer} should be limited, see {@link
+     * AnnounceDeserializer#setCacheCapacity(int)}, otherwise it keeps
+     * the parsed announces of all live devices on the heap.
+     *
+     * @param offHeap {@code true} to store the announces of the known
+     * devices outside of the Java heap.
+     *
+     * @since 2.3
+     */
+    public DeviceMonitor(boolean offHeap) {
+        this(offHeap, ExpirationEngine.EXECUTOR);
+    }
+
+    /**
+     * Constructs a new {@code DeviceMonitor} object.
+     *
+     * @param offHeap {@code true} to store the announces of the known
+     * devices outside of the Java heap, see {@link #DeviceMonitor(boolean)}.
+     * @param engine the engine expiring the devices.
+     *
+     * @throws IllegalArgumentException if {@code engine} is {@code null}.
+     *
+     * @since 2.3
+     */
+    public DeviceMonitor(boolean offHeap, ExpirationEngine engine) {
+        this(offHeap, engine, ExpirationEngine.DEFAULT_RESOLUTION_MS);
+    }
+
+    /**
+     * Constructs a new {@code DeviceMonitor} object.
+     *
+     * @param offHeap {@code true} to store the announces of the known
+     * devices outside of the Java heap, see {@link #DeviceMonitor(boolean)}.
+     * @param engine the engine expiring the devices.
+     * @param resolutionMillis the resolution of the engine in
+     * milliseconds. Devices expire up to this time late. Ignored by
+     * {@link ExpirationEngine#EXECUTOR}.
+     *
+     * @throws IllegalArgumentException if {@code engine} is {@code null}
+     * or {@code resolutionMillis} is smaller than 1.
+     *
+     * @since 2.3
+     */
+    public DeviceMonitor(boolean offHeap, ExpirationEngine engine, long resolutionMillis) {
+        this(createTimer(engine, resolutionMillis), offHeap);
+    }
+
+    DeviceMonitor(ExpirationTimer timer, boolean offHeap) {
         super();
-        deviceMap = new HashMap<>(INITIAL_ENTRIES);
-        executor = new ScheduledThreadPoolExecutor(1);
+        deviceMap = new ConcurrentHashMap<>(INITIAL_ENTRIES);
+        locks = new Object[LOCK_STRIPES];
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+        events = new ConcurrentLinkedQueue<>();
+        publishing = new AtomicBoolean();
+        this.timer = timer;
+        store = offHeap ? new OffHeapAnnounceStore() : null;
+        deviceSet = offHeap ? null : new DeviceSet();
         stopped = false;
     }
 
+    /**
+     * Returns the devices known after the latest notified event without
+     * locking.
+     * <p>
+     * The set is updated right before each event is notified, so an
+     * observer always finds the change it is notified about in the set.
+     * The set is not maintained if the announces are stored outside of
+     * the Java heap, it would keep all of them on the heap.
+     *
+     * @return the current set of known devices.
+     *
+     * @throws IllegalStateException if the {@code DeviceMonitor} stores
+     * the announces outside of the Java heap, see {@link
+     * #DeviceMonitor(boolean)}.
+     *
+     * @since 2.3
+     */
+    public DeviceSet getDeviceSet() {
+        final DeviceSet set = deviceSet;
+        if (set == null) {
+            throw new IllegalStateException("No device set for announces stored outside of the heap");
+        }
+        return set;
+    }
+
+    /**
+     * @return the number of bytes allocated outside of the Java heap
+     * for the announces of the known devices, {@code 0} if announces
+     * are stored on the heap.
+     *
+     * @since 2.3
+     */
+    public long getOffHeapBytes() {
+        return store == null ? 0 : store.getAllocatedBytes();
+    }
+
     /**
      * Stops the {@code DeviceMonitor}.
      *
@@ -89,18 +238,7 @@ public final class DeviceMonitor extends Observable implements Observer, Closeab
     @Override
     public void close() {
         stopped = true;
-        executor.shutdown();
-        try {
-            if (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
-                executor.shutdownNow();
-                if (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
-                    LOGGER.log(Level.SEVERE, "Interrupted while waiting for termination of timer tasks!\n");
-                }
-            }
-        } catch (InterruptedException ie) {
-            executor.shutdownNow();
-            Thread.currentThread().interrupt();
-        }
+        timer.close();
     }
 
     public boolean isClosed() {
@@ -109,35 +247,160 @@ public final class DeviceMonitor extends Observable implements Observer, Closeab
 
     @Override
     public void update(Observable observable, Object arg) {
-        final Announce announce = (Announce)arg;
-        if (!stopped) {
-            armTimer(announce);
+        if (stopped) {
+            return;
+        }
+        if (arg instanceof List) {
+            for (final Object announce : (List<?>)arg) {
+                armTimer((Announce)announce);
+            }
+        } else {
+            armTimer((Announce)arg);
+        }
+        publish();
+    }
+
+    /**
+     * Writes the announces of all known devices and the times they were
+     * seen last to {@code out}.
+     * <p>
+     * The snapshot can be read by {@link #readSnapshot(InputStream)},
+     * for instance after a restart of the application. The stream is
+     * not closed.
+     *
+     * @param out the stream the snapshot is written to.
+     *
+     * @return the number of devices written.
+     *
+     * @throws IOException if writing to {@code out} fails.
+     *
+     * @since 2.3
+     */
+    public int writeSnapshot(OutputStream out) throws IOException {
+        final List<SnapshotRecord> records = new ArrayList<>();
+        for (final TimerContainer container : deviceMap.values()) {
+            synchronized (lockFor(container.task.path)) {
+                if (!container.task.expired) {
+                    records.add(new SnapshotRecord(container.lastSeen, container.expiresAt,
+                        container.task.getPayload()));
+                }
+            }
+        }
+        final DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(SNAPSHOT_MAGIC);
+        data.writeInt(SNAPSHOT_VERSION);
+        data.writeInt(records.size());
+        for (final SnapshotRecord record : records) {
+            data.writeLong(record.lastSeen);
+            data.writeLong(record.expiresAt);
+            data.writeInt(record.payload.length);
+            data.write(record.payload);
+        }
+        data.flush();
+        return records.size();
+    }
+
+    /**
+     * Restores the devices of a snapshot written by {@link
+     * #writeSnapshot(OutputStream)}.
+     * <p>
+     * A {@link NewDeviceEvent} is notified for each device whose
+     * announce has not yet expired. A restored device expires after the
+     * time to live remaining from its original announce, unless it is
+     * confirmed by a fresh announce before. Devices already known are
+     * not restored. The announces are checked like received ones,
+     * announces an {@link AnnounceDeserializer} would reject are
+     * skipped. The stream is neither buffered nor closed, it is read up
+     * to the end of the snapshot only.
+     *
+     * @param in the stream the snapshot is read from.
+     *
+     * @return the number of devices restored.
+     *
+     * @throws IOException if reading from {@code in} fails or {@code in}
+     * contains no valid snapshot.
+     *
+     * @since 2.3
+     */
+    public int readSnapshot(InputStream in) throws IOException {
+        final DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != SNAPSHOT_MAGIC) {
+            throw new IOException("No device snapshot");
+        }
+        final int version = data.readInt();
+        if (version != SNAPSHOT_VERSION) {
+            throw new IOException("Unsupported device snapshot version " + version);
+        }
+        final int count = data.readInt();
+        if (count < 0) {
+            throw new IOException("Invalid number of devices in snapshot");
+        }
+        final AnnounceDeserializer deserializer = new AnnounceDeserializer();
+        final List<RestoredDevice> devices = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            final long lastSeen = data.readLong();
+            final long expiresAt = data.readLong();
+            final int length = data.readInt();
+            if (length < 0 || length > MAX_SNAPSHOT_PAYLOAD) {
+                throw new IOException("Invalid announce length in snapshot");
+            }
+            final byte[] payload = new byte[length];
+            data.readFully(payload);
+            final Announce announce = deserializer.restore(payload);
+            if (announce != null) {
+                devices.add(new RestoredDevice(lastSeen, expiresAt, announce));
+            }
+        }
+
+        int restored = 0;
+        try {
+            for (final RestoredDevice device : devices) {
+                final long now = System.currentTimeMillis();
+                if (stopped || device.expiresAt <= now) {
+                    continue;
+                }
+                if (armTimer(device.announce, device.expiresAt - now, device.lastSeen, true)) {
+                    restored++;
+                }
+            }
+        } finally {
+            publish();
         }
+        return restored;
     }
 
     private void armTimer(Announce announce) {
-        synchronized (deviceMap) {
-            final String path = announce.getPath();
+        armTimer(announce, getExpiration(announce), System.currentTimeMillis(), false);
+    }
+
+    /*
+     * Queues the resulting event and returns true if the device was not
+     * known before. Known devices are left untouched if onlyNew is set.
+     */
+    private boolean armTimer(Announce announce, long expiration, long lastSeen, boolean onlyNew) {
+        final String path = announce.getPath();
+        synchronized (lockFor(path)) {
             TimerContainer container = deviceMap.get(path);
+            if (container != null && onlyNew) {
+                return false;
+            }
             try {
                 if (container == null) {
-                    final AnnounceTimerTask task = new AnnounceTimerTask(announce);
-                    final ScheduledFuture<Void> newFuture = executor.schedule(task, getExpiration(announce),
-                            TimeUnit.MILLISECONDS);
-                    container = new TimerContainer(task, newFuture);
+                    final AnnounceTimerTask task = new AnnounceTimerTask(path);
+                    task.setAnnounce(announce);
+                    container = new TimerContainer(task, timer.schedule(task, expiration));
+                    container.seen(lastSeen, expiration);
                     deviceMap.put(path, container);
-                    setChanged();
-                    notifyObservers(new NewDeviceEvent(announce));
+                    events.add(new NewDeviceEvent(announce));
+                    return true;
                 } else {
-                    container.future.cancel(false);
-                    final Announce oldAnnounce = container.task.getAnnounce();
-                    container.task.setAnnounce(announce);
-                    final ScheduledFuture<Void> future =
-                        executor.schedule(container.task, getExpiration(announce), TimeUnit.MILLISECONDS);
-                    container.future = future;
-                    if (!oldAnnounce.equals(announce)) {
-                        setChanged();
-                        notifyObservers(new UpdateDeviceEvent(oldAnnounce, announce));
+                    final boolean changed = !container.task.holds(announce);
+                    container.timeout.reschedule(expiration);
+                    container.seen(lastSeen, expiration);
+                    if (changed) {
+                        final Announce oldAnnounce = container.task.getAnnounce();
+                        container.task.setAnnounce(announce);
+                        events.add(new UpdateDeviceEvent(oldAnnounce, announce));
                     }
                 }
             } catch (RejectedExecutionException e) {
@@ -148,9 +411,47 @@ public final class DeviceMonitor extends Observable implements Observer, Closeab
                  */
                 LOGGER.log(Level.WARNING, "Task scheduled in shutdown executor!", e);
             }
+            return false;
+        }
+    }
+
+    /*
+     * Notifies the queued events. Only one thread notifies at a time, a
+     * thread finding another one notifying leaves its events to that
+     * thread.
+     */
+    private void publish() {
+        while (!events.isEmpty() && publishing.compareAndSet(false, true)) {
+            try {
+                Object event;
+                while ((event = events.poll()) != null) {
+                    if (deviceSet != null) {
+                        deviceSet = deviceSet.apply(event);
+                    }
+                    setChanged();
+                    notifyObservers(event);
+                }
+            } finally {
+                publishing.set(false);
+            }
         }
     }
 
+    private static ExpirationTimer createTimer(ExpirationEngine engine, long resolutionMillis) {
+        if (engine == null) {
+            throw new IllegalArgumentException("engine must not be null");
+        }
+        if (resolutionMillis < 1) {
+            throw new IllegalArgumentException("resolution must be at least 1 ms");
+        }
+        return engine.createTimer(resolutionMillis);
+    }
+
+    private Object lockFor(String path) {
+        final int hash = path.hashCode() * 0x9e3779b9;
+        return locks[(hash ^ (hash >>> 16)) & (LOCK_STRIPES - 1)];
+    }
+
     private static long getExpiration(Announce announce) {
         int expiration;
         expiration = announce.getParams().getExpiration();
@@ -159,37 +460,117 @@ public final class DeviceMonitor extends Observable implements Observer, Closeab
 
     private class TimerContainer {
         private final AnnounceTimerTask task;
-        private ScheduledFuture<Void> future;
+        private final ExpirationTimer.Timeout timeout;
+        private long lastSeen;
+        private long expiresAt;
+        private long deadline;
 
-        TimerContainer(AnnounceTimerTask task, ScheduledFuture<Void> future) {
+        TimerContainer(AnnounceTimerTask task, ExpirationTimer.Timeout timeout) {
             this.task = task;
-            this.future = future;
+            this.timeout = timeout;
+        }
+
+        void seen(long lastSeen, long expiration) {
+            this.lastSeen = lastSeen;
+            this.expiresAt = System.currentTimeMillis() + expiration;
+            this.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(expiration);
         }
     }
 
-    private class AnnounceTimerTask implements Callable<Void> {
-        private Announce announce;
+    private static final class SnapshotRecord {
+        private final long lastSeen;
+        private final long expiresAt;
+        private final byte[] payload;
+
+        SnapshotRecord(long lastSeen, long expiresAt, byte[] payload) {
+            this.lastSeen = lastSeen;
+            this.expiresAt = expiresAt;
+            this.payload = payload;
+        }
+    }
 
-        AnnounceTimerTask(Announce announce) {
+    private static final class RestoredDevice {
+        private final long lastSeen;
+        private final long expiresAt;
+        private final Announce announce;
+
+        RestoredDevice(long lastSeen, long expiresAt, Announce announce) {
+            this.lastSeen = lastSeen;
+            this.expiresAt = expiresAt;
             this.announce = announce;
         }
+    }
+
+    private class AnnounceTimerTask implements Runnable {
+        private final String path;
+        private Announce announce;
+        private long handle;
+        private boolean stored;
+        private boolean expired;
+
+        AnnounceTimerTask(String path) {
+            this.path = path;
+        }
 
         @Override
-        public Void call() throws Exception {
-            synchronized (deviceMap) {
-                deviceMap.remove(announce.getPath());
-                setChanged();
-                notifyObservers(new LostDeviceEvent(announce));
-                return null;
+        public void run() {
+            synchronized (lockFor(path)) {
+                if (expired) {
+                    // The device was removed by an earlier run.
+                    return;
+                }
+                /*
+                 * All expiration engines decide that a timeout expired
+                 * before the task gets the lock. If the device was seen
+                 * again in between, its deadline has moved. The timeout
+                 * is armed again for the rest of the time, as the
+                 * engine might have decided right before the reschedule
+                 * of the refresh.
+                 */
+                final TimerContainer container = deviceMap.get(path);
+                final long remaining = container.deadline - System.nanoTime();
+                if (remaining > 0) {
+                    try {
+                        container.timeout.reschedule(TimeUnit.NANOSECONDS.toMillis(remaining) + 1);
+                    } catch (RejectedExecutionException e) {
+                        LOGGER.log(Level.WARNING, "Task scheduled in shutdown executor!", e);
+                    }
+                    return;
+                }
+                expired = true;
+                deviceMap.remove(path);
+                final Announce lostAnnounce = getAnnounce();
+                if (stored) {
+                    store.free(handle);
+                    stored = false;
+                }
+                events.add(new LostDeviceEvent(lostAnnounce));
             }
+            publish();
         }
 
         Announce getAnnounce() {
-            return announce;
+            return store == null ? announce : store.get(handle);
+        }
+
+        byte[] getPayload() {
+            return store == null ? announce.getJSONBytes() : store.getPayload(handle);
+        }
+
+        boolean holds(Announce other) {
+            return store == null ? announce.equals(other) : store.matches(handle, other);
         }
 
         void setAnnounce(Announce announce) {
-            this.announce = announce;
+            if (store == null) {
+                this.announce = announce;
+                return;
+            }
+            if (stored) {
+                store.free(handle);
+            }
+            handle = store.put(announce);
+            stored = true;
         }
     }
 }
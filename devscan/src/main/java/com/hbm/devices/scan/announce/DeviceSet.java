@@ -0,0 +1,217 @@
+/*
+ * Java Scan, a library for scanning and configuring HBM devices.
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) Hottinger Baldwin Messtechnik GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.hbm.devices.scan.announce;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable, versioned view of the devices known to a {@link
+ * DeviceMonitor}.
+ * <p>
+ * {@link DeviceMonitor#getDeviceSet()} returns the current set without
+ * locking, so any number of readers can share the state of one
+ * monitor instead of keeping their own copy built from the events.
+ * Each change of the monitor creates a new set with the next version.
+ * The sets share their structure, so creating one only costs a few
+ * small allocations, no matter how many devices are known.
+ * <p>
+ * A reader that has seen the set of a version can ask a later set for
+ * the changes in between, see {@link #getChangesSince(long)}. The last
+ * {@link #RETAINED_CHANGES} changes of the monitor are kept for that
+ * purpose. They are shared by all sets of a monitor, so holding an old
+ * set does not keep any later changes alive.
+ *
+ * @since 2.3
+ */
+public final class DeviceSet {
+
+    /**
+     * The number of changes up to which {@link #getChangesSince(long)}
+     * can look back.
+     */
+    public static final int RETAINED_CHANGES = 4096;
+
+    private final long version;
+    private final PersistentHashMap<String, Announce> announces;
+    private final Change[] changeLog;
+    private volatile List<Announce> announceList;
+
+    DeviceSet() {
+        this(0, PersistentHashMap.<String, Announce>empty(), new Change[RETAINED_CHANGES]);
+    }
+
+    private DeviceSet(long version, PersistentHashMap<String, Announce> announces, Change[] changeLog) {
+        this.version = version;
+        this.announces = announces;
+        this.changeLog = changeLog;
+    }
+
+    /**
+     * @return the version of the set. It starts at {@code 0} for the
+     * empty set of a new {@link DeviceMonitor} and is incremented with
+     * each notified event.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the number of known devices.
+     */
+    public int size() {
+        return announces.size();
+    }
+
+    /**
+     * @param path the communication path of a device, see {@link
+     * Announce#getPath()}.
+     *
+     * @return the latest {@link Announce} of the device or {@code null}
+     * if the device is not known.
+     */
+    public Announce getAnnounce(String path) {
+        return announces.get(path);
+    }
+
+    /**
+     * @param path the communication path of a device, see {@link
+     * Announce#getPath()}.
+     *
+     * @return {@code true} if the device is known.
+     */
+    public boolean contains(String path) {
+        return announces.get(path) != null;
+    }
+
+    /**
+     * @return an unmodifiable list of the latest {@link Announce}s of
+     * all known devices in no particular order.
+     */
+    public List<Announce> getAnnounces() {
+        List<Announce> list = announceList;
+        if (list == null) {
+            final List<Announce> collected = new ArrayList<>(announces.size());
+            announces.forEach((path, announce) -> collected.add(announce));
+            list = Collections.unmodifiableList(collected);
+            announceList = list;
+        }
+        return list;
+    }
+
+    /**
+     * Returns the changes from the set of version {@code since} to this
+     * set, one event per device merged as described for {@link
+     * DeviceChangeBatch}.
+     *
+     * @param since the version of a set seen before.
+     *
+     * @return the changes, or {@code null} if they are not retained any
+     * longer. The reader has to start over with this set then.
+     *
+     * @throws IllegalArgumentException if {@code since} is negative or
+     * greater than the version of this set.
+     */
+    public DeviceChangeBatch getChangesSince(long since) {
+        if (since < 0 || since > version) {
+            throw new IllegalArgumentException("version " + since + " is not in range 0.." + version);
+        }
+        if (since == version) {
+            return new DeviceChangeBatch(Collections.emptyList());
+        }
+        if (version - since > RETAINED_CHANGES) {
+            return null;
+        }
+        final Map<String, Object> changes = new LinkedHashMap<>();
+        for (long next = since + 1; next <= version; next++) {
+            final Change change = changeLog[slot(next)];
+            if (change == null || change.version != next) {
+                // Overwritten by the changes of a later set.
+                return null;
+            }
+            final String path = DeviceEvents.getPath(change.event);
+            final Object queued = changes.get(path);
+            final Object merged = queued == null ? change.event : DeviceEvents.merge(queued, change.event);
+            if (merged == null) {
+                changes.remove(path);
+            } else {
+                changes.put(path, merged);
+            }
+        }
+        return new DeviceChangeBatch(new ArrayList<>(changes.values()));
+    }
+
+    /*
+     * Returns the set with event applied. Must only be called by one
+     * thread at a time and only on the latest set, as the change log is
+     * written in place.
+     */
+    DeviceSet apply(Object event) {
+        final PersistentHashMap<String, Announce> newAnnounces;
+        if (event instanceof NewDeviceEvent) {
+            final Announce announce = ((NewDeviceEvent)event).getAnnounce();
+            newAnnounces = announces.plus(announce.getPath(), announce);
+        } else if (event instanceof UpdateDeviceEvent) {
+            final Announce announce = ((UpdateDeviceEvent)event).getNewAnnounce();
+            newAnnounces = announces.plus(announce.getPath(), announce);
+        } else if (event instanceof LostDeviceEvent) {
+            newAnnounces = announces.minus(((LostDeviceEvent)event).getAnnounce().getPath());
+        } else {
+            return this;
+        }
+        final Change change = new Change(version + 1, event);
+        changeLog[slot(change.version)] = change;
+        return new DeviceSet(change.version, newAnnounces, changeLog);
+    }
+
+    private static int slot(long version) {
+        return (int) (version & (RETAINED_CHANGES - 1));
+    }
+
+    /*
+     * An entry of the change log, a ring buffer of RETAINED_CHANGES
+     * entries shared by all sets of a monitor. An entry is written
+     * before the set of its version is published. Readers check the
+     * version of each entry, as sets of later versions overwrite the
+     * entries of old changes. The fields are final, so an entry read
+     * while it is replaced is either the old or the new one.
+     */
+    private static final class Change {
+        private final long version;
+        private final Object event;
+
+        Change(long version, Object event) {
+            this.version = version;
+            this.event = event;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Java Scan, a library for scanning and configuring HBM devices.
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) Hottinger Baldwin Messtechnik GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.hbm.devices.scan.announce;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.hbm.devices.scan.ScanConstants;
+
+/*
+ * Expires timeouts with a ScheduledThreadPoolExecutor. Every reschedule
+ * cancels the pending future and schedules a new one, which costs
+ * O(log n) in the delay queue of the executor.
+ */
+final class ExecutorExpirationTimer implements ExpirationTimer {
+
+    private static final Logger LOGGER = Logger.getLogger(ScanConstants.LOGGER_NAME);
+
+    private final ScheduledThreadPoolExecutor executor;
+
+    ExecutorExpirationTimer() {
+        executor = new ScheduledThreadPoolExecutor(1);
+    }
+
+    @Override
+    public Timeout schedule(Runnable task, long delayMillis) {
+        final ExecutorTimeout timeout = new ExecutorTimeout(task);
+        timeout.reschedule(delayMillis);
+        return timeout;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+                if (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                    LOGGER.log(Level.SEVERE, "Interrupted while waiting for termination of timer tasks!\n");
+                }
+            }
+        } catch (InterruptedException ie) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    private final class ExecutorTimeout implements Timeout {
+        private final Runnable task;
+        private ScheduledFuture<?> future;
+
+        ExecutorTimeout(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public synchronized void reschedule(long delayMillis) {
+            if (future != null) {
+                future.cancel(false);
+            }
+            future = executor.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public synchronized void cancel() {
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+    }
+}
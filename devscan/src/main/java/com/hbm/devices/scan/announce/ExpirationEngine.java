@@ -0,0 +1,90 @@
+/*
+ * Java Scan, a library for scanning and configuring HBM devices.
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) Hottinger Baldwin Messtechnik GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.hbm.devices.scan.announce;
+
+/**
+ * The engines a {@link DeviceMonitor} can use to expire devices which
+ * did not announce again within their expiration time.
+ *
+ * @see DeviceMonitor#DeviceMonitor(boolean, ExpirationEngine)
+ * @since 2.3
+ */
+public enum ExpirationEngine {
+
+    /**
+     * A {@link java.util.concurrent.ScheduledThreadPoolExecutor}. Every
+     * announce cancels the pending expiration of its device and
+     * schedules a new one. This is the default.
+     */
+    EXECUTOR {
+        @Override
+        ExpirationTimer createTimer(long resolutionMillis) {
+            return new ExecutorExpirationTimer();
+        }
+    },
+
+    /**
+     * A hashed timing wheel turning by one bucket per resolution. Every
+     * announce moves the expiration of its device in constant time
+     * without allocating. Devices expire up to one resolution late.
+     * Recommended for thousands of devices.
+     */
+    TIMING_WHEEL {
+        @Override
+        ExpirationTimer createTimer(long resolutionMillis) {
+            return new TimingWheel(resolutionMillis, TimingWheel.DEFAULT_WHEEL_SIZE);
+        }
+    },
+
+    /**
+     * A single thread sweeping the devices ordered by their expiration
+     * once per resolution. Every announce only records the new
+     * expiration time of its device, the order is updated by the
+     * sweeper once per expiration period of the device. Devices expire
+     * up to one resolution late. Recommended if devices announce much
+     * more often than they appear or disappear.
+     */
+    SWEEPER {
+        @Override
+        ExpirationTimer createTimer(long resolutionMillis) {
+            return new ExpirationSweeper(resolutionMillis);
+        }
+    };
+
+    /**
+     * The resolution used if none is given, 100 ms.
+     */
+    public static final long DEFAULT_RESOLUTION_MS = 100;
+
+    abstract ExpirationTimer createTimer(long resolutionMillis);
+
+    ExpirationTimer createTimer() {
+        return createTimer(DEFAULT_RESOLUTION_MS);
+    }
+}
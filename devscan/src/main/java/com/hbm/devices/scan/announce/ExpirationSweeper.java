@@ -0,0 +1,217 @@
+/*
+ * Java Scan, a library for scanning and configuring HBM devices.
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) Hottinger Baldwin Messtechnik GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.hbm.devices.scan.announce;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.hbm.devices.scan.ScanConstants;
+
+/*
+ * Expires timeouts lazily with a single sweeper thread.
+ *
+ * Rescheduling a pending timeout only writes its new deadline, there is
+ * neither a lock nor a queue operation involved. Every timeout is kept
+ * in a priority queue ordered by the deadline it had when it was
+ * queued. The sweeper wakes up once per resolution and takes all
+ * timeouts from the head of the queue whose queued deadline has
+ * passed. A timeout whose current deadline has passed as well expires,
+ * all others are queued again with their current deadline. So the queue
+ * is touched once per expiration period of a device, no matter how
+ * often the device announces in between.
+ *
+ * Timeouts expire at most one resolution late, never early.
+ */
+final class ExpirationSweeper implements ExpirationTimer {
+
+    private static final Logger LOGGER = Logger.getLogger(ScanConstants.LOGGER_NAME);
+
+    private static final int QUEUED = 0;
+    private static final int EXPIRING = 1;
+    private static final int EXPIRED = 2;
+    private static final int CANCELLED = 3;
+
+    private final long resolutionNanos;
+    private final PriorityQueue<SweeperTimeout> queue;
+    private final Thread sweeper;
+    private volatile boolean closed;
+
+    ExpirationSweeper(long resolutionMillis) {
+        if (resolutionMillis < 1) {
+            throw new IllegalArgumentException("resolution must be at least 1 ms");
+        }
+        resolutionNanos = TimeUnit.MILLISECONDS.toNanos(resolutionMillis);
+        queue = new PriorityQueue<>(16, (lhs, rhs) -> Long.signum(lhs.queuedDeadline - rhs.queuedDeadline));
+        sweeper = new Thread(new Sweeper(), "DeviceMonitor sweeper");
+        sweeper.start();
+    }
+
+    @Override
+    public Timeout schedule(Runnable task, long delayMillis) {
+        final SweeperTimeout timeout = new SweeperTimeout(task);
+        timeout.reschedule(delayMillis);
+        return timeout;
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        sweeper.interrupt();
+        try {
+            sweeper.join(TimeUnit.SECONDS.toMillis(1));
+            if (sweeper.isAlive()) {
+                LOGGER.log(Level.SEVERE, "Sweeper did not terminate!\n");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    synchronized int getQueueSize() {
+        return queue.size();
+    }
+
+    /*
+     * Queues a timeout which is not pending.
+     */
+    private synchronized void enqueue(SweeperTimeout timeout) {
+        if (closed) {
+            throw new RejectedExecutionException("Sweeper closed");
+        }
+        if (timeout.state == QUEUED) {
+            return;
+        }
+        timeout.state = QUEUED;
+        if (!timeout.inQueue) {
+            timeout.inQueue = true;
+            timeout.queuedDeadline = timeout.deadline;
+            queue.add(timeout);
+        }
+    }
+
+    /*
+     * Returns the timeouts which expired, or null if the sweeper was
+     * closed.
+     */
+    private synchronized List<Runnable> sweep() {
+        if (closed) {
+            return null;
+        }
+        final List<Runnable> expired = new ArrayList<>();
+        final long now = System.nanoTime();
+        SweeperTimeout timeout = queue.peek();
+        while (timeout != null && timeout.queuedDeadline - now <= 0) {
+            queue.poll();
+            timeout.inQueue = false;
+            if (timeout.state == QUEUED) {
+                /*
+                 * The state is written before the deadline is read, a
+                 * concurrent reschedule() writes the deadline before it
+                 * reads the state. So either this thread sees the new
+                 * deadline, or reschedule() sees that the timeout is
+                 * no longer pending and queues it again.
+                 */
+                timeout.state = EXPIRING;
+                if (timeout.deadline - now > 0) {
+                    timeout.state = QUEUED;
+                    timeout.inQueue = true;
+                    timeout.queuedDeadline = timeout.deadline;
+                    queue.add(timeout);
+                } else {
+                    timeout.state = EXPIRED;
+                    expired.add(timeout.task);
+                }
+            }
+            timeout = queue.peek();
+        }
+        return expired;
+    }
+
+    private final class Sweeper implements Runnable {
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    final List<Runnable> expired = sweep();
+                    if (expired == null) {
+                        return;
+                    }
+                    for (final Runnable task : expired) {
+                        try {
+                            task.run();
+                        } catch (RuntimeException e) {
+                            LOGGER.log(Level.SEVERE, "Expiration task failed!", e);
+                        }
+                    }
+                    TimeUnit.NANOSECONDS.sleep(resolutionNanos);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private final class SweeperTimeout implements Timeout {
+        private final Runnable task;
+        private volatile long deadline;
+        private volatile int state = EXPIRED;
+        private long queuedDeadline;
+        private boolean inQueue;
+
+        SweeperTimeout(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void reschedule(long delayMillis) {
+            if (closed) {
+                throw new RejectedExecutionException("Sweeper closed");
+            }
+            deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMillis));
+            if (state != QUEUED) {
+                enqueue(this);
+            }
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (ExpirationSweeper.this) {
+                state = CANCELLED;
+            }
+        }
+    }
+}
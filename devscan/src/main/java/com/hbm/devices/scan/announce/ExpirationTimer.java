@@ -0,0 +1,63 @@
+/*
+ * Java Scan, a library for scanning and configuring HBM devices.
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) Hottinger Baldwin Messtechnik GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.hbm.devices.scan.announce;
+
+/*
+ * The engine a DeviceMonitor uses to expire the devices not announced
+ * again in time.
+ *
+ * Timeouts are re-armed on every announce, so reschedule() is by far
+ * the most frequent operation. Tasks are run by a thread of the engine
+ * without any lock of the engine held, so they might take locks which
+ * are held while calling the engine.
+ */
+interface ExpirationTimer {
+
+    /*
+     * Throws RejectedExecutionException if the timer was closed.
+     */
+    Timeout schedule(Runnable task, long delayMillis);
+
+    /*
+     * Stops the engine. Pending timeouts are discarded.
+     */
+    void close();
+
+    interface Timeout {
+
+        /*
+         * Re-arms the timeout, even if it has already expired or was
+         * cancelled. Throws RejectedExecutionException if the timer was
+         * closed.
+         */
+        void reschedule(long delayMillis);
+
+        void cancel();
+    }
+}
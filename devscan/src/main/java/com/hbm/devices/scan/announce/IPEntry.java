@@ -28,37 +28,147 @@
 
 package com.hbm.devices.scan.announce;
 
-
 import java.io.Serializable;
 import java.net.InetAddress;
+import java.net.UnknownHostException;
 
 /**
- * A class holding an IPv4 address and IPv4 network mask.
+ * A class holding an IP address and the prefix length of its network.
+ * <p>
+ * The address is stored in its numerical form. An {@link InetAddress}
+ * is only created when {@link #getAddress()} is called.
  */
 public final class IPEntry implements Serializable {
 
     private static final long serialVersionUID = 9130510981751066678L;
-    
-    InetAddress address;
-    int prefix;
 
+    private static final int IPV4_LENGTH = 4;
+    private static final int IPV6_LENGTH = 16;
+    private static final long IPV4_MAPPED = 0xffffL;
+
+    private boolean ipv4;
+    private long high;
+    private long low;
+    private final int prefix;
+    private volatile InetAddress address;
+
+    private IPEntry(int prefix) {
+        this.prefix = prefix;
+    }
+
+    /*
+     * Only literal addresses are accepted, they are decoded without any
+     * InetAddress. Everything else is rejected with an
+     * UnknownHostException instead of being resolved, so a crafted
+     * announce can't block the parsing thread with a name lookup. The
+     * zone id of a scoped IPv6 address is dropped.
+     */
+    static IPEntry fromIPv4(String address, String netmask) throws UnknownHostException {
+        final long mask = IPLiterals.parseIPv4(netmask, 0, netmask.length());
+        if (mask >= 0) {
+            return create(address, Long.bitCount(mask));
+        }
+        final IPEntry mask6 = create(netmask, 0);
+        final int prefix = mask6.ipv4 ? Long.bitCount(mask6.low)
+            : Long.bitCount(mask6.high) + Long.bitCount(mask6.low);
+        return create(address, prefix);
+    }
+
+    static IPEntry fromIPv6(String address, int prefix) throws UnknownHostException {
+        return create(address, prefix);
+    }
+
+    private static IPEntry create(String address, int prefix) throws UnknownHostException {
+        final IPEntry entry = new IPEntry(prefix);
+        final long ipv4 = IPLiterals.parseIPv4(address, 0, address.length());
+        if (ipv4 >= 0) {
+            entry.setIPv4(ipv4);
+        } else if (IPLiterals.parseIPv6(withoutZone(address), entry)) {
+            if (entry.high == 0 && (entry.low >>> Integer.SIZE) == IPV4_MAPPED) {
+                entry.setIPv4(entry.low & 0xffffffffL);
+            }
+        } else {
+            throw new UnknownHostException("Address is no IP literal: " + address);
+        }
+        return entry;
+    }
 
-    IPEntry() {
+    private static String withoutZone(String address) {
+        final int zone = address.indexOf('%');
+        return zone < 0 ? address : address.substring(0, zone);
+    }
+
+    void setIPv4(long value) {
+        ipv4 = true;
+        high = 0;
+        low = value;
+    }
+
+    void setIPv6(long highBits, long lowBits) {
+        ipv4 = false;
+        high = highBits;
+        low = lowBits;
+    }
+
+    static long toLong(byte[] bytes, int offset, int length) {
+        long value = 0;
+        for (int i = offset; i < offset + length; i++) {
+            value = (value << Byte.SIZE) | (bytes[i] & 0xff);
+        }
+        return value;
     }
 
     /**
-     * @return the IPv4 address of an interface or {@code null} if not
-     * announced.
+     * @return the IP address of an interface.
      */
     public InetAddress getAddress() {
-        return address;
+        InetAddress inetAddress = address;
+        if (inetAddress == null) {
+            final byte[] bytes;
+            if (ipv4) {
+                bytes = new byte[IPV4_LENGTH];
+                putLong(bytes, 0, IPV4_LENGTH, low);
+            } else {
+                bytes = new byte[IPV6_LENGTH];
+                putLong(bytes, 0, Long.BYTES, high);
+                putLong(bytes, Long.BYTES, Long.BYTES, low);
+            }
+            try {
+                inetAddress = InetAddress.getByAddress(bytes);
+            } catch (UnknownHostException e) {
+                throw new IllegalStateException("Illegal address length", e);
+            }
+            address = inetAddress;
+        }
+        return inetAddress;
     }
 
     /**
-     * @return the IPv4 netmask of an interface or {@code null} if not
-     * announced.
+     * @return the prefix length of the network the address belongs to.
      */
     public int getPrefix() {
         return prefix;
     }
+
+    boolean isIPv4() {
+        return ipv4;
+    }
+
+    int getIPv4() {
+        return (int) low;
+    }
+
+    long getHigh() {
+        return high;
+    }
+
+    long getLow() {
+        return low;
+    }
+
+    private static void putLong(byte[] bytes, int offset, int length, long value) {
+        for (int i = offset + length - 1; i >= offset; i--) {
+            bytes[i] = (byte) (value >>> ((offset + length - 1 - i) * Byte.SIZE));
+        }
+    }
 }
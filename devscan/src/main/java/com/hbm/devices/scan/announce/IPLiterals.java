@@ -0,0 +1,179 @@
+/*
+ * Java Scan, a library for scanning and configuring HBM devices.
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) Hottinger Baldwin Messtechnik GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.hbm.devices.scan.announce;
+
+/*
+ * Decodes the textual representation of IP addresses into their
+ * numerical form without creating any objects.
+ *
+ * Only plain literals are understood: dotted quads for IPv4 and the
+ * forms of RFC 4291, section 2.2 for IPv6, including an embedded
+ * dotted quad. Everything else (host names, zone ids, brackets) is
+ * reported as not parsable, IPEntry rejects those addresses.
+ */
+final class IPLiterals {
+
+    private static final int IPV4_PARTS = 4;
+    private static final int IPV6_GROUPS = 8;
+    private static final int GROUP_BITS = 16;
+    private static final int MAX_GROUP_DIGITS = 4;
+    private static final int MAX_OCTET = 255;
+    private static final int MAX_OCTET_DIGITS = 3;
+    private static final int DECIMAL_DIGITS = 10;
+
+    private IPLiterals() {
+    }
+
+    /*
+     * Returns the address as an unsigned 32 bit value or -1 if
+     * text[start, end) is not a dotted quad.
+     */
+    static long parseIPv4(String text, int start, int end) {
+        long value = 0;
+        int parts = 0;
+        int octet = 0;
+        int digits = 0;
+        for (int i = start; i < end; i++) {
+            final char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                octet = octet * DECIMAL_DIGITS + (c - '0');
+                digits++;
+                if (digits > MAX_OCTET_DIGITS || octet > MAX_OCTET) {
+                    return -1;
+                }
+            } else if (c == '.' && digits > 0 && parts < IPV4_PARTS - 1) {
+                value = (value << Byte.SIZE) | octet;
+                parts++;
+                octet = 0;
+                digits = 0;
+            } else {
+                return -1;
+            }
+        }
+        if (digits == 0 || parts != IPV4_PARTS - 1) {
+            return -1;
+        }
+        return (value << Byte.SIZE) | octet;
+    }
+
+    /*
+     * Stores the address into entry and returns true if text is an
+     * IPv6 literal.
+     */
+    static boolean parseIPv6(String text, IPEntry entry) {
+        final int length = text.length();
+        long headHigh = 0;
+        long headLow = 0;
+        long tailHigh = 0;
+        long tailLow = 0;
+        int headGroups = 0;
+        int tailGroups = 0;
+        boolean compressed = false;
+        int i = 0;
+        if (text.startsWith("::")) {
+            compressed = true;
+            i = 2;
+        } else if (length == 0 || text.charAt(0) == ':') {
+            return false;
+        }
+        while (i < length) {
+            final int start = i;
+            int group = 0;
+            while (i < length && i - start < MAX_GROUP_DIGITS && hexDigit(text.charAt(i)) >= 0) {
+                group = (group << 4) | hexDigit(text.charAt(i));
+                i++;
+            }
+
+            int groups = 1;
+            long value = group;
+            if (i < length && text.charAt(i) == '.') {
+                value = parseIPv4(text, start, length);
+                if (value < 0) {
+                    return false;
+                }
+                groups = 2;
+                i = length;
+            } else if (i == start) {
+                return false;
+            }
+
+            for (int g = groups - 1; g >= 0; g--) {
+                final long bits = (value >>> (g * GROUP_BITS)) & 0xffff;
+                if (compressed) {
+                    tailHigh = (tailHigh << GROUP_BITS) | (tailLow >>> (Long.SIZE - GROUP_BITS));
+                    tailLow = (tailLow << GROUP_BITS) | bits;
+                    tailGroups++;
+                } else if (headGroups < IPV6_GROUPS / 2) {
+                    headHigh |= bits << ((IPV6_GROUPS / 2 - 1 - headGroups) * GROUP_BITS);
+                    headGroups++;
+                } else if (headGroups < IPV6_GROUPS) {
+                    headLow |= bits << ((IPV6_GROUPS - 1 - headGroups) * GROUP_BITS);
+                    headGroups++;
+                } else {
+                    return false;
+                }
+            }
+
+            if (i == length) {
+                break;
+            }
+            if (text.charAt(i) != ':') {
+                return false;
+            }
+            i++;
+            if (i < length && text.charAt(i) == ':') {
+                if (compressed) {
+                    return false;
+                }
+                compressed = true;
+                i++;
+            } else if (i == length) {
+                return false;
+            }
+        }
+        if (compressed ? headGroups + tailGroups >= IPV6_GROUPS : headGroups != IPV6_GROUPS) {
+            return false;
+        }
+        entry.setIPv6(headHigh | tailHigh, headLow | tailLow);
+        return true;
+    }
+
+    private static int hexDigit(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + DECIMAL_DIGITS;
+        }
+        if (c >= 'A' && c <= 'F') {
+            return c - 'A' + DECIMAL_DIGITS;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Java Scan, a library for scanning and configuring HBM devices.
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) Hottinger Baldwin Messtechnik GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.hbm.devices.scan.announce;
+
+import java.util.Arrays;
+
+/*
+ * Cache key for announce messages in their received, undecoded form.
+ *
+ * The key is a 128 bit MurmurHash3 digest of the message bytes. A key
+ * used only for lookups wraps the bytes of the message, which might be
+ * the receive buffer of a message receiver (see probe()). A key stored
+ * in a cache keeps the digest and the length only (see compact()), so
+ * a cache entry costs a few dozen bytes instead of a copy of the
+ * message.
+ *
+ * Two keys with equal digests and lengths are equal. The bytes are
+ * compared only if both keys still wrap them. MurmurHash3 is no
+ * cryptographic hash, collisions can be crafted. So a cache finding an
+ * entry for a probe must check the bytes of the message stored in the
+ * entry with matches() and treat a mismatch as a miss.
+ */
+final class MessageKey {
+
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private final byte[] data;
+    private final int offset;
+    private final int length;
+    private final long digest;
+    private final long digestHigh;
+
+    private MessageKey(byte[] data, int offset, int length, long digest, long digestHigh) {
+        this.data = data;
+        this.offset = offset;
+        this.length = length;
+        this.digest = digest;
+        this.digestHigh = digestHigh;
+    }
+
+    static MessageKey probe(byte[] data, int offset, int length) {
+        final long[] digest128 = new long[2];
+        digest(data, offset, length, digest128);
+        return new MessageKey(data, offset, length, digest128[0], digest128[1]);
+    }
+
+    MessageKey compact() {
+        return data == null ? this : new MessageKey(null, 0, length, digest, digestHigh);
+    }
+
+    /*
+     * Returns true if the key wraps exactly the given bytes. A compact key
+     * matches nothing.
+     */
+    boolean matches(byte[] bytes) {
+        if (data == null || bytes.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (data[offset + i] != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * Returns the lower 64 bits of the digest.
+     */
+    long getDigest() {
+        return digest;
+    }
+
+    int getLength() {
+        return length;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (digest ^ (digest >>> Integer.SIZE));
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof MessageKey)) {
+            return false;
+        }
+        final MessageKey rhs = (MessageKey) obj;
+        if (digest != rhs.digest || digestHigh != rhs.digestHigh || length != rhs.length) {
+            return false;
+        }
+        if (data == null || rhs.data == null) {
+            return true;
+        }
+        for (int i = 0; i < length; i++) {
+            if (data[offset + i] != rhs.data[rhs.offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * MurmurHash3 (x64, 128 bit variant) over data[offset, offset + length),
+     * returning the lower 64 bit.
+     */
+    static long digest(byte[] data, int offset, int length) {
+        final long[] digest128 = new long[2];
+        digest(data, offset, length, digest128);
+        return digest128[0];
+    }
+
+    /*
+     * MurmurHash3 (x64, 128 bit variant) over data[offset, offset + length),
+     * stored into digest128[0] (lower 64 bit) and digest128[1] (upper 64 bit).
+     */
+    private static void digest(byte[] data, int offset, int length, long[] digest128) {
+        long h1 = 0;
+        long h2 = 0;
+        final int blocks = length / 16;
+        int index = offset;
+        for (int i = 0; i < blocks; i++) {
+            long k1 = getLong(data, index);
+            long k2 = getLong(data, index + 8);
+            index += 16;
+
+            k1 *= C1;
+            k1 = Long.rotateLeft(k1, 31);
+            k1 *= C2;
+            h1 ^= k1;
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+
+            k2 *= C2;
+            k2 = Long.rotateLeft(k2, 33);
+            k2 *= C1;
+            h2 ^= k2;
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+
+        long k1 = 0;
+        long k2 = 0;
+        final int tail = length & 15;
+        for (int i = tail - 1; i >= 8; i--) {
+            k2 ^= (data[index + i] & 0xffL) << ((i - 8) * 8);
+        }
+        if (tail > 8) {
+            k2 *= C2;
+            k2 = Long.rotateLeft(k2, 33);
+            k2 *= C1;
+            h2 ^= k2;
+        }
+        for (int i = Math.min(tail, 8) - 1; i >= 0; i--) {
+            k1 ^= (data[index + i] & 0xffL) << (i * 8);
+        }
+        if (tail > 0) {
+            k1 *= C1;
+            k1 = Long.rotateLeft(k1, 31);
+            k1 *= C2;
+            h1 ^= k1;
+        }
+
+        h1 ^= length;
+        h2 ^= length;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix(h1);
+        h2 = fmix(h2);
+        h1 += h2;
+        h2 += h1;
+        digest128[0] = h1;
+        digest128[1] = h2;
+    }
+
+    private static long getLong(byte[] data, int index) {
+        return (data[index] & 0xffL)
+            | ((data[index + 1] & 0xffL) << 8)
+            | ((data[index + 2] & 0xffL) << 16)
+            | ((data[index + 3] & 0xffL) << 24)
+            | ((data[index + 4] & 0xffL) << 32)
+            | ((data[index + 5] & 0xffL) << 40)
+            | ((data[index + 6] & 0xffL) << 48)
+            | ((data[index + 7] & 0xffL) << 56);
+    }
+
+    private static long fmix(long value) {
+        long k = value;
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Java Scan, a library for scanning and configuring HBM devices.
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) Hottinger Baldwin Messtechnik GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.hbm.devices.scan.announce;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.hbm.devices.scan.ScanConstants;
+
+/*
+ * Remembers the keys of rejected messages.
+ *
+ * Devices sending invalid announces send them again and again. A
+ * message found in this cache is rejected without parsing it again.
+ * The cache is an LRU cache like the AnnounceCache, so it can't grow
+ * infinitely if lots of different invalid messages are received.
+ *
+ * Messages are keyed by their full 128 bit compact MessageKey. The
+ * bytes of rejected messages are not kept, so a crafted message with
+ * the same digest would still be rejected. But that requires a
+ * collision on all 128 bits and the length.
+ *
+ * Every rejection is counted by its reason. Rejections are logged at
+ * most once per LOG_INTERVAL and reason. The number of rejections not
+ * logged is added to the next log message.
+ */
+final class NegativeCache {
+
+    static final int DEFAULT_CACHE_SIZE = 100;
+    static final long LOG_INTERVAL = TimeUnit.MINUTES.toNanos(1);
+
+    private static final Logger LOGGER = Logger.getLogger(ScanConstants.LOGGER_NAME);
+    private static final RejectionReason[] REASONS = RejectionReason.values();
+
+    private final LRUCache<MessageKey, RejectionReason> rejected;
+    private final long[] counts;
+    private final long[] suppressed;
+    private final long[] lastLog;
+    private final boolean[] logged;
+    private final long logInterval;
+
+    NegativeCache() {
+        this(DEFAULT_CACHE_SIZE, LOG_INTERVAL);
+    }
+
+    NegativeCache(int cacheSize, long logInterval) {
+        this.rejected = new LRUCache<>(cacheSize);
+        this.counts = new long[REASONS.length];
+        this.suppressed = new long[REASONS.length];
+        this.lastLog = new long[REASONS.length];
+        this.logged = new boolean[REASONS.length];
+        this.logInterval = logInterval;
+    }
+
+    synchronized boolean isRejected(MessageKey key) {
+        final RejectionReason reason = rejected.get(key);
+        if (reason == null) {
+            return false;
+        }
+        count(reason, "Rejected known invalid message: " + reason, null);
+        return true;
+    }
+
+    synchronized void reject(MessageKey key, RejectedAnnounceException exception) {
+        rejected.put(key.compact(), exception.getReason());
+        count(exception.getReason(), exception.getMessage(), exception.getCause());
+    }
+
+    /*
+     * Counts and logs a rejection without remembering the message.
+     */
+    synchronized void reject(RejectedAnnounceException exception) {
+        count(exception.getReason(), exception.getMessage(), exception.getCause());
+    }
+
+    /*
+     * Forgets the rejected messages, the counts are kept.
+     */
+    synchronized void clear() {
+        rejected.clear();
+    }
+
+    synchronized long getCount(RejectionReason reason) {
+        return counts[reason.ordinal()];
+    }
+
+    synchronized int size() {
+        return rejected.size();
+    }
+
+    private void count(RejectionReason reason, String message, Throwable cause) {
+        final int index = reason.ordinal();
+        counts[index]++;
+        final long now = System.nanoTime();
+        if (logged[index] && now - lastLog[index] < logInterval) {
+            suppressed[index]++;
+            return;
+        }
+        final Level level = levelOf(reason);
+        if (LOGGER.isLoggable(level)) {
+            final String text = suppressed[index] == 0 ? message
+                : message + " (" + suppressed[index] + " similar rejections not logged)";
+            LOGGER.log(level, text, cause);
+        }
+        logged[index] = true;
+        lastLog[index] = now;
+        suppressed[index] = 0;
+    }
+
+    private static Level levelOf(RejectionReason reason) {
+        switch (reason) {
+        case NOT_AN_ANNOUNCE:
+            return Level.FINE;
+        case UNSUPPORTED_API_VERSION:
+            return Level.INFO;
+        default:
+            return Level.SEVERE;
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Java Scan, a library for scanning and configuring HBM devices.
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) Hottinger Baldwin Messtechnik GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.hbm.devices.scan.announce;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * Stores the raw payloads of announces outside of the Java heap.
+ *
+ * Records are allocated from direct ByteBuffer chunks of CHUNK_SIZE
+ * bytes. Each record has the size of a power of two between MIN_RECORD
+ * and CHUNK_SIZE, freed records are kept in a free list per size and
+ * reused. A record larger than CHUNK_SIZE gets a chunk of its own,
+ * which is released when the record is freed.
+ *
+ * A record consists of the payload length and the UTF-8 bytes of the
+ * announce. A record is identified by a long handle, which combines the
+ * index of the chunk (upper 32 bit) and the offset of the record within
+ * the chunk (lower 32 bit). The payload can be compared without
+ * creating any objects, an Announce is only parsed again if it is
+ * requested by get().
+ *
+ * All methods accessing the chunks are synchronized, DeviceMonitor
+ * calls the store from different threads holding different locks. An
+ * announce is parsed outside of the lock of the store.
+ */
+final class OffHeapAnnounceStore {
+
+    static final int CHUNK_SIZE = 1 << 20;
+    private static final int MIN_RECORD = 1 << 8;
+    private static final int HEADER_SIZE = 4;
+    private static final int LENGTH_OFFSET = 0;
+    private static final int SIZE_CLASSES = Integer.numberOfTrailingZeros(CHUNK_SIZE) + 1;
+
+    private final List<ByteBuffer> chunks;
+    private final long[][] freeLists;
+    private final int[] freeCounts;
+    private final List<Integer> freeChunks;
+    private ByteBuffer current;
+    private int currentIndex;
+    private long allocatedBytes;
+    private long usedBytes;
+
+    OffHeapAnnounceStore() {
+        chunks = new ArrayList<>();
+        freeLists = new long[SIZE_CLASSES][];
+        freeCounts = new int[SIZE_CLASSES];
+        for (int i = 0; i < SIZE_CLASSES; i++) {
+            freeLists[i] = new long[16];
+        }
+        freeChunks = new ArrayList<>();
+        currentIndex = -1;
+    }
+
+    synchronized long put(Announce announce) {
+        final byte[] payload = announce.getJSONBytes();
+        final int recordSize = HEADER_SIZE + payload.length;
+        final long handle = allocate(recordSize);
+        final ByteBuffer chunk = chunks.get(chunkIndex(handle));
+        final int offset = offset(handle);
+        chunk.putInt(offset + LENGTH_OFFSET, payload.length);
+        final ByteBuffer target = chunk.duplicate();
+        target.position(offset + HEADER_SIZE);
+        target.put(payload);
+        usedBytes += payload.length;
+        return handle;
+    }
+
+    Announce get(long handle) {
+        try {
+            return AnnounceAdapter.parse(getPayload(handle));
+        } catch (IOException e) {
+            throw new IllegalStateException("Stored announce can't be parsed", e);
+        }
+    }
+
+    synchronized boolean matches(long handle, Announce announce) {
+        final byte[] payload = announce.getJSONBytes();
+        final ByteBuffer chunk = chunks.get(chunkIndex(handle));
+        final int offset = offset(handle);
+        if (chunk.getInt(offset + LENGTH_OFFSET) != payload.length) {
+            return false;
+        }
+        final int start = offset + HEADER_SIZE;
+        for (int i = 0; i < payload.length; i++) {
+            if (chunk.get(start + i) != payload[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    synchronized void free(long handle) {
+        final int index = chunkIndex(handle);
+        final ByteBuffer chunk = chunks.get(index);
+        final int length = chunk.getInt(offset(handle) + LENGTH_OFFSET);
+        usedBytes -= length;
+        final int sizeClass = sizeClass(HEADER_SIZE + length);
+        if (sizeClass >= SIZE_CLASSES) {
+            allocatedBytes -= chunk.capacity();
+            chunks.set(index, null);
+            freeChunks.add(index);
+            return;
+        }
+        if (freeCounts[sizeClass] == freeLists[sizeClass].length) {
+            freeLists[sizeClass] = Arrays.copyOf(freeLists[sizeClass], freeCounts[sizeClass] * 2);
+        }
+        freeLists[sizeClass][freeCounts[sizeClass]++] = handle;
+    }
+
+    /*
+     * Returns the number of bytes allocated outside of the Java heap.
+     */
+    synchronized long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /*
+     * Returns the number of payload bytes currently stored.
+     */
+    synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    synchronized byte[] getPayload(long handle) {
+        final ByteBuffer chunk = chunks.get(chunkIndex(handle)).duplicate();
+        final int offset = offset(handle);
+        final byte[] payload = new byte[chunk.getInt(offset + LENGTH_OFFSET)];
+        chunk.position(offset + HEADER_SIZE);
+        chunk.get(payload);
+        return payload;
+    }
+
+    private long allocate(int recordSize) {
+        final int sizeClass = sizeClass(recordSize);
+        if (sizeClass >= SIZE_CLASSES) {
+            return handle(addChunk(recordSize), 0);
+        }
+        if (freeCounts[sizeClass] > 0) {
+            return freeLists[sizeClass][--freeCounts[sizeClass]];
+        }
+        final int size = 1 << sizeClass;
+        if (current == null || current.remaining() < size) {
+            currentIndex = addChunk(CHUNK_SIZE);
+            current = chunks.get(currentIndex);
+        }
+        final int offset = current.position();
+        current.position(offset + size);
+        return handle(currentIndex, offset);
+    }
+
+    private int addChunk(int size) {
+        final ByteBuffer chunk = ByteBuffer.allocateDirect(size);
+        allocatedBytes += size;
+        if (freeChunks.isEmpty()) {
+            chunks.add(chunk);
+            return chunks.size() - 1;
+        }
+        final int index = freeChunks.remove(freeChunks.size() - 1);
+        chunks.set(index, chunk);
+        return index;
+    }
+
+    private static int sizeClass(int recordSize) {
+        if (recordSize <= MIN_RECORD) {
+            return Integer.numberOfTrailingZeros(MIN_RECORD);
+        }
+        return Integer.SIZE - Integer.numberOfLeadingZeros(recordSize - 1);
+    }
+
+    private static long handle(int chunkIndex, int offset) {
+        return ((long) chunkIndex << Integer.SIZE) | (offset & 0xffffffffL);
+    }
+
+    private static int chunkIndex(long handle) {
+        return (int) (handle >>> Integer.SIZE);
+    }
+
+    private static int offset(long handle) {
+        return (int) handle;
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Java Scan, a library for scanning and configuring HBM devices.
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) Hottinger Baldwin Messtechnik GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.hbm.devices.scan.announce;
+
+/**
+ * What an {@link AsyncObserver} does with a new event if its queue is
+ * full.
+ *
+ * @since 2.3
+ */
+public enum OverflowPolicy {
+
+    /**
+     * The notifying thread waits until the observer has taken an event
+     * from the queue. Nothing is lost, but a slow observer slows down
+     * the notifying stage and all its other observers.
+     */
+    BLOCK,
+
+    /**
+     * The oldest event in the queue is dropped.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Only the latest state of each device is kept. An {@link Announce}
+     * or device event replaces a queued event of the same communication
+     * path, merged so that the observer still sees a consistent
+     * sequence: a {@link NewDeviceEvent} followed by a {@link
+     * UpdateDeviceEvent} becomes a {@link NewDeviceEvent} of the newest
+     * announce, a {@link NewDeviceEvent} followed by a {@link
+     * LostDeviceEvent} vanishes, and a {@link LostDeviceEvent} followed
+     * by a {@link NewDeviceEvent} becomes a {@link UpdateDeviceEvent},
+     * or vanishes as well if both events carry an equal announce.
+     * Events are coalesced whenever possible, not only if the queue is
+     * full. Events which can't be coalesced, like lists of announces,
+     * are dropped oldest first if the queue is full.
+     */
+    COALESCE
+}
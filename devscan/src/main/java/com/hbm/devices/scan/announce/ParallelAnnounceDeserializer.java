@@ -0,0 +1,383 @@
+/*
+ * Java Scan, a library for scanning and configuring HBM devices.
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) Hottinger Baldwin Messtechnik GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.hbm.devices.scan.announce;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.hbm.devices.scan.Datagram;
+import com.hbm.devices.scan.ScanConstants;
+
+/**
+ * This class parses announce messages on several worker threads.
+ * <p>
+ * It's a drop-in replacement for {@link AnnounceDeserializer} if a
+ * single thread can't keep up with the announces received. Each
+ * message is assigned to one of the workers by the UUIDs it contains
+ * (the device UUID and, if announced, the router UUID). The UUIDs are
+ * picked from the raw message without parsing it. So all messages of
+ * the same communication path are parsed by the same worker in the
+ * order they were received. Each worker owns an {@link
+ * AnnounceDeserializer} with its own cache.
+ * <p>
+ * The parsed {@link Announce} objects are notified while holding a
+ * lock, so the observers of this class are never called concurrently.
+ * Observers like {@link com.hbm.devices.scan.announce.filter.Filter}
+ * and {@link DeviceMonitor} can be connected without any changes.
+ * Announces of different communication paths might be notified in a
+ * different order than they were received.
+ * <p>
+ * The worker queues are bounded. If the queue of a worker is full,
+ * the message is dropped and counted, see {@link #getOverflowCount()}.
+ * {@link Datagram}s are copied before they are queued.
+ *
+ * @since 2.3
+ */
+public final class ParallelAnnounceDeserializer extends Observable implements Observer, Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(ScanConstants.LOGGER_NAME);
+    private static final String UUID_KEY = "\"uuid\"";
+
+    private final List<Worker> workers;
+    private final ExecutorService executor;
+    private final AtomicLong overflows;
+    private volatile boolean closed;
+
+    /**
+     * Constructs a new {@code ParallelAnnounceDeserializer} and starts its worker threads.
+     *
+     * @param workers the number of threads parsing messages.
+     * @param queueCapacity the number of messages (or batches of
+     * messages) queued for each worker.
+     *
+     * @throws IllegalArgumentException if {@code workers} or {@code
+     * queueCapacity} are smaller than 1.
+     */
+    public ParallelAnnounceDeserializer(int workers, int queueCapacity) {
+        super();
+        if (workers < 1) {
+            throw new IllegalArgumentException("workers must be at least 1");
+        }
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("queue capacity must be at least 1");
+        }
+        this.overflows = new AtomicLong();
+        this.workers = new ArrayList<>(workers);
+        this.executor = Executors.newFixedThreadPool(workers);
+        final Observer output = new Output();
+        for (int i = 0; i < workers; i++) {
+            final Worker worker = new Worker(queueCapacity);
+            worker.deserializer.addObserver(output);
+            this.workers.add(worker);
+            executor.execute(worker);
+        }
+    }
+
+    /**
+     * @param enable {@code true} to parse {@link Datagram}s directly.
+     *
+     * @see AnnounceDeserializer#setDirectByteParsing(boolean)
+     */
+    public void setDirectByteParsing(boolean enable) {
+        for (final Worker worker : workers) {
+            worker.deserializer.setDirectByteParsing(enable);
+        }
+    }
+
+    /**
+     * @param enable {@code true} to parse announces lazily.
+     *
+     * @see AnnounceDeserializer#setLazyParsing(boolean)
+     */
+    public void setLazyParsing(boolean enable) {
+        for (final Worker worker : workers) {
+            worker.deserializer.setLazyParsing(enable);
+        }
+    }
+
+    /**
+     * @param limits the limits enforced while parsing a message.
+     *
+     * @see AnnounceDeserializer#setParseLimits(ParseLimits)
+     */
+    public void setParseLimits(ParseLimits limits) {
+        for (final Worker worker : workers) {
+            worker.deserializer.setParseLimits(limits);
+        }
+    }
+
+    /**
+     * Sets the capacity of the cache of each worker.
+     *
+     * @param capacity the maximum number of cached messages per
+     * worker, or {@code 0} to size the caches by the number of live
+     * devices.
+     *
+     * @see AnnounceDeserializer#setCacheCapacity(int)
+     */
+    public void setCacheCapacity(int capacity) {
+        for (final Worker worker : workers) {
+            worker.deserializer.setCacheCapacity(capacity);
+        }
+    }
+
+    /**
+     * @return the cache counters summed up over all workers.
+     *
+     * @see AnnounceDeserializer#getCacheStatistics()
+     */
+    public CacheStatistics getCacheStatistics() {
+        CacheStatistics statistics = new CacheStatistics(0, 0, 0, 0, 0);
+        for (final Worker worker : workers) {
+            statistics = statistics.plus(worker.deserializer.getCacheStatistics());
+        }
+        return statistics;
+    }
+
+    /**
+     * @return the number of worker threads.
+     */
+    public int getWorkerCount() {
+        return workers.size();
+    }
+
+    /**
+     * @return the number of messages dropped because the queue of a worker was full.
+     */
+    public long getOverflowCount() {
+        return overflows.get();
+    }
+
+    /**
+     * Queues a received message for parsing.
+     * <p>
+     * {@code arg} is either a single JSON {@link java.lang.String} or
+     * {@link Datagram}, or a {@link java.util.List} of them. The
+     * messages of a {@link java.util.List} are split up by worker and
+     * each worker notifies its part of the batch as a {@link
+     * java.util.List}.
+     */
+    @Override
+    public void update(Observable observable, Object arg) {
+        if (closed || arg == null) {
+            return;
+        }
+        if (arg instanceof List) {
+            final List<?> messages = (List<?>) arg;
+            final List<List<Object>> shards = new ArrayList<>(Collections.<List<Object>>nCopies(workers.size(), null));
+            for (final Object message : messages) {
+                final int shard = shardOf(message);
+                List<Object> batch = shards.get(shard);
+                if (batch == null) {
+                    batch = new ArrayList<>();
+                    shards.set(shard, batch);
+                }
+                batch.add(retain(message));
+            }
+            for (int i = 0; i < shards.size(); i++) {
+                final List<Object> batch = shards.get(i);
+                if (batch != null) {
+                    enqueue(workers.get(i), Collections.unmodifiableList(batch), batch.size());
+                }
+            }
+        } else {
+            enqueue(workers.get(shardOf(arg)), retain(arg), 1);
+        }
+    }
+
+    /**
+     * Stops the worker threads. Messages still queued are discarded.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        executor.shutdownNow();
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                LOGGER.log(Level.SEVERE, "Parser threads did not terminate!\n");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void enqueue(Worker worker, Object message, int count) {
+        if (!worker.queue.offer(message)) {
+            overflows.addAndGet(count);
+        }
+    }
+
+    private int shardOf(Object message) {
+        final int hash;
+        if (message instanceof Datagram) {
+            final Datagram datagram = (Datagram) message;
+            hash = shardHash(datagram.getData(), datagram.getLength());
+        } else {
+            hash = shardHash((String) message);
+        }
+        return (hash & Integer.MAX_VALUE) % workers.size();
+    }
+
+    private static Object retain(Object message) {
+        if (message instanceof Datagram) {
+            return ((Datagram) message).copy();
+        }
+        return message;
+    }
+
+    /*
+     * Combines the values of all "uuid" keys in the message. The sum
+     * doesn't depend on the order of the keys, so an announce hashes
+     * the same no matter if the router or the device section comes
+     * first.
+     */
+    static int shardHash(byte[] data, int length) {
+        int hash = 0;
+        int i = 0;
+        while (i < length) {
+            i = indexOfUuidKey(data, i, length);
+            if (i < 0) {
+                break;
+            }
+            i = skipSeparator(data, i, length);
+            if (i < length && data[i] == '"') {
+                int value = 0;
+                for (i++; i < length && data[i] != '"'; i++) {
+                    value = 31 * value + data[i];
+                }
+                hash += mix(value);
+            }
+        }
+        return hash;
+    }
+
+    static int shardHash(String message) {
+        int hash = 0;
+        final int length = message.length();
+        int i = 0;
+        while (i < length) {
+            i = message.indexOf(UUID_KEY, i);
+            if (i < 0) {
+                break;
+            }
+            i += UUID_KEY.length();
+            while (i < length && (message.charAt(i) == ':' || isWhitespace(message.charAt(i)))) {
+                i++;
+            }
+            if (i < length && message.charAt(i) == '"') {
+                int value = 0;
+                for (i++; i < length && message.charAt(i) != '"'; i++) {
+                    value = 31 * value + message.charAt(i);
+                }
+                hash += mix(value);
+            }
+        }
+        return hash;
+    }
+
+    private static int indexOfUuidKey(byte[] data, int from, int length) {
+        final int keyLength = UUID_KEY.length();
+        outer:
+        for (int i = from; i <= length - keyLength; i++) {
+            for (int j = 0; j < keyLength; j++) {
+                if (data[i + j] != UUID_KEY.charAt(j)) {
+                    continue outer;
+                }
+            }
+            return i + keyLength;
+        }
+        return -1;
+    }
+
+    private static int skipSeparator(byte[] data, int from, int length) {
+        int i = from;
+        while (i < length && (data[i] == ':' || isWhitespace((char) data[i]))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+
+    private static int mix(int value) {
+        final int h = value * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    private final class Output implements Observer {
+        @Override
+        public void update(Observable observable, Object arg) {
+            synchronized (ParallelAnnounceDeserializer.this) {
+                setChanged();
+                notifyObservers(arg);
+            }
+        }
+    }
+
+    private static final class Worker implements Runnable {
+
+        private final BlockingQueue<Object> queue;
+        private final AnnounceDeserializer deserializer;
+
+        Worker(int queueCapacity) {
+            this.queue = new ArrayBlockingQueue<>(queueCapacity);
+            this.deserializer = new AnnounceDeserializer();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    final Object message = queue.take();
+                    try {
+                        deserializer.update(null, message);
+                    } catch (RuntimeException e) {
+                        LOGGER.log(Level.SEVERE, "Parsing announce failed!", e);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
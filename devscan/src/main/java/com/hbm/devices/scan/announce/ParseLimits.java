@@ -0,0 +1,121 @@
+/*
+ * Java Scan, a library for scanning and configuring HBM devices.
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) Hottinger Baldwin Messtechnik GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.hbm.devices.scan.announce;
+
+/**
+ * Limits the work spent on parsing a single announce message.
+ * <p>
+ * Anybody on the network can send datagrams to the announce port. The
+ * limits make sure that a single crafted message can't cost more than
+ * a bounded amount of time and memory. They are checked while parsing,
+ * so parsing is cut off as soon as a limit is exceeded. Messages
+ * exceeding a limit are rejected with {@link
+ * RejectionReason#LIMIT_EXCEEDED}.
+ * <p>
+ * The default limits are far beyond anything a device announces.
+ *
+ * @see AnnounceDeserializer#setParseLimits(ParseLimits)
+ * @since 2.3
+ */
+public final class ParseLimits {
+
+    /**
+     * The nesting depth of a regular announce (the objects of the IP
+     * addresses). Lower depth limits are not allowed.
+     */
+    public static final int MIN_DEPTH = 6;
+
+    /**
+     * The default limits: 16384 bytes per message, a nesting depth of
+     * 16, 256 elements per array and 1024 characters per string.
+     */
+    public static final ParseLimits DEFAULT = new ParseLimits(16384, 16, 256, 1024);
+
+    static final ParseLimits UNLIMITED = new ParseLimits(Integer.MAX_VALUE, Integer.MAX_VALUE,
+        Integer.MAX_VALUE, Integer.MAX_VALUE);
+
+    private final int maxPayloadSize;
+    private final int maxDepth;
+    private final int maxArrayLength;
+    private final int maxStringLength;
+
+    /**
+     * Constructs new limits.
+     *
+     * @param maxPayloadSize the maximum size of a message in bytes. For
+     * messages received as {@link java.lang.String}, the length of
+     * their UTF-8 encoding is checked.
+     * @param maxDepth the maximum nesting depth of objects and arrays.
+     * @param maxArrayLength the maximum number of elements of an array.
+     * @param maxStringLength the maximum length of a string or member name.
+     *
+     * @throws IllegalArgumentException if a limit is smaller than 1 or
+     * {@code maxDepth} is smaller than {@link #MIN_DEPTH}.
+     */
+    public ParseLimits(int maxPayloadSize, int maxDepth, int maxArrayLength, int maxStringLength) {
+        if (maxPayloadSize < 1 || maxArrayLength < 1 || maxStringLength < 1) {
+            throw new IllegalArgumentException("limits must be at least 1");
+        }
+        if (maxDepth < MIN_DEPTH) {
+            throw new IllegalArgumentException("depth must be at least " + MIN_DEPTH);
+        }
+        this.maxPayloadSize = maxPayloadSize;
+        this.maxDepth = maxDepth;
+        this.maxArrayLength = maxArrayLength;
+        this.maxStringLength = maxStringLength;
+    }
+
+    /**
+     * @return the maximum size of a message.
+     */
+    public int getMaxPayloadSize() {
+        return maxPayloadSize;
+    }
+
+    /**
+     * @return the maximum nesting depth of objects and arrays.
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * @return the maximum number of elements of an array.
+     */
+    public int getMaxArrayLength() {
+        return maxArrayLength;
+    }
+
+    /**
+     * @return the maximum length of a string or member name.
+     */
+    public int getMaxStringLength() {
+        return maxStringLength;
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Java Scan, a library for scanning and configuring HBM devices.
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) Hottinger Baldwin Messtechnik GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.hbm.devices.scan.announce;
+
+/*
+ * An immutable hash array mapped trie.
+ *
+ * plus() and minus() return a new map sharing all untouched nodes with
+ * the old one, so a change costs O(log32 n) instead of a copy of the
+ * whole map. Each node holds a bitmap of the occupied slots of its five
+ * hash bits and a compact array of the slots, either a Leaf or the
+ * Node of the next five bits. Keys with the same full hash are chained
+ * in their Leaf. Values must not be null.
+ */
+final class PersistentHashMap<K, V> {
+
+    interface Visitor<K, V> {
+        void visit(K key, V value);
+    }
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    private static final Node EMPTY_NODE = new Node(0, new Object[0]);
+    private static final PersistentHashMap<?, ?> EMPTY = new PersistentHashMap<>(EMPTY_NODE, 0);
+
+    private final Node root;
+    private final int size;
+
+    private PersistentHashMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K, V> PersistentHashMap<K, V> empty() {
+        return (PersistentHashMap<K, V>) EMPTY;
+    }
+
+    int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(Object key) {
+        final int hash = hash(key);
+        Node node = root;
+        for (int shift = 0;; shift += BITS) {
+            final int bit = bit(hash, shift);
+            if ((node.bitmap & bit) == 0) {
+                return null;
+            }
+            final Object slot = node.slots[node.index(bit)];
+            if (slot instanceof Node) {
+                node = (Node) slot;
+                continue;
+            }
+            for (Leaf leaf = (Leaf) slot; leaf != null; leaf = leaf.next) {
+                if (leaf.hash == hash && leaf.key.equals(key)) {
+                    return (V) leaf.value;
+                }
+            }
+            return null;
+        }
+    }
+
+    PersistentHashMap<K, V> plus(K key, V value) {
+        final boolean present = get(key) != null;
+        final Node newRoot = plus(root, 0, hash(key), key, value);
+        return new PersistentHashMap<>(newRoot, present ? size : size + 1);
+    }
+
+    PersistentHashMap<K, V> minus(Object key) {
+        if (get(key) == null) {
+            return this;
+        }
+        return new PersistentHashMap<>(minus(root, 0, hash(key), key), size - 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    void forEach(Visitor<? super K, ? super V> visitor) {
+        forEach(root, (Visitor<Object, Object>) visitor);
+    }
+
+    private static Node plus(Node node, int shift, int hash, Object key, Object value) {
+        final int bit = bit(hash, shift);
+        final int index = node.index(bit);
+        if ((node.bitmap & bit) == 0) {
+            return node.insert(bit, index, new Leaf(hash, key, value, null));
+        }
+        final Object slot = node.slots[index];
+        if (slot instanceof Node) {
+            return node.replace(index, plus((Node) slot, shift + BITS, hash, key, value));
+        }
+        final Leaf leaf = (Leaf) slot;
+        if (leaf.hash == hash) {
+            return node.replace(index, new Leaf(hash, key, value, Leaf.remove(leaf, key)));
+        }
+        final Node child = plus(new Node(bit(leaf.hash, shift + BITS), new Object[] {leaf}),
+            shift + BITS, hash, key, value);
+        return node.replace(index, child);
+    }
+
+    private static Node minus(Node node, int shift, int hash, Object key) {
+        final int bit = bit(hash, shift);
+        final int index = node.index(bit);
+        final Object slot = node.slots[index];
+        Object newSlot;
+        if (slot instanceof Node) {
+            final Node child = minus((Node) slot, shift + BITS, hash, key);
+            if (child.slots.length == 1 && child.slots[0] instanceof Leaf) {
+                newSlot = child.slots[0];
+            } else {
+                newSlot = child.slots.length == 0 ? null : child;
+            }
+        } else {
+            newSlot = Leaf.remove((Leaf) slot, key);
+        }
+        if (newSlot == null) {
+            return node.delete(bit, index);
+        }
+        return node.replace(index, newSlot);
+    }
+
+    private static void forEach(Node node, Visitor<Object, Object> visitor) {
+        for (final Object slot : node.slots) {
+            if (slot instanceof Node) {
+                forEach((Node) slot, visitor);
+            } else {
+                for (Leaf leaf = (Leaf) slot; leaf != null; leaf = leaf.next) {
+                    visitor.visit(leaf.key, leaf.value);
+                }
+            }
+        }
+    }
+
+    private static int hash(Object key) {
+        final int h = key.hashCode() * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    /*
+     * The top level uses the lowest five bits of the hash. Keys of
+     * different hashes are separated at the latest by the two top bits
+     * at shift 30, so the shift never exceeds 30.
+     */
+    private static int bit(int hash, int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    private static final class Node {
+        private final int bitmap;
+        private final Object[] slots;
+
+        Node(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        Node insert(int bit, int index, Object slot) {
+            final Object[] newSlots = new Object[slots.length + 1];
+            System.arraycopy(slots, 0, newSlots, 0, index);
+            newSlots[index] = slot;
+            System.arraycopy(slots, index, newSlots, index + 1, slots.length - index);
+            return new Node(bitmap | bit, newSlots);
+        }
+
+        Node replace(int index, Object slot) {
+            final Object[] newSlots = slots.clone();
+            newSlots[index] = slot;
+            return new Node(bitmap, newSlots);
+        }
+
+        Node delete(int bit, int index) {
+            final Object[] newSlots = new Object[slots.length - 1];
+            System.arraycopy(slots, 0, newSlots, 0, index);
+            System.arraycopy(slots, index + 1, newSlots, index, newSlots.length - index);
+            return new Node(bitmap & ~bit, newSlots);
+        }
+    }
+
+    private static final class Leaf {
+        private final int hash;
+        private final Object key;
+        private final Object value;
+        private final Leaf next;
+
+        Leaf(int hash, Object key, Object value, Leaf next) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+            this.next = next;
+        }
+
+        /*
+         * Returns the chain without key, copying only the leaves in
+         * front of it.
+         */
+        static Leaf remove(Leaf leaf, Object key) {
+            if (leaf == null) {
+                return null;
+            }
+            if (leaf.key.equals(key)) {
+                return leaf.next;
+            }
+            final Leaf rest = remove(leaf.next, key);
+            return rest == leaf.next ? leaf : new Leaf(leaf.hash, leaf.key, leaf.value, rest);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Java Scan, a library for scanning and configuring HBM devices.
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) Hottinger Baldwin Messtechnik GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.hbm.devices.scan.announce;
+
+/**
+ * The reasons why an {@link AnnounceDeserializer} rejects a message.
+ *
+ * @see AnnounceDeserializer#getRejectionCount(RejectionReason)
+ * @since 2.3
+ */
+public enum RejectionReason {
+
+    /**
+     * The message is no valid JSON or contains an invalid IP address.
+     */
+    MALFORMED_JSON,
+
+    /**
+     * The message is valid JSON, but no announce.
+     */
+    NOT_AN_ANNOUNCE,
+
+    /**
+     * The {@code apiVersion} of the announce is missing or not supported.
+     */
+    UNSUPPORTED_API_VERSION,
+
+    /**
+     * The announce lacks information required to identify the device.
+     */
+    MISSING_DATA,
+
+    /**
+     * The expiration of the announce is negative.
+     */
+    INVALID_EXPIRATION,
+
+    /**
+     * The message exceeds the {@link ParseLimits}.
+     */
+    LIMIT_EXCEEDED
+}
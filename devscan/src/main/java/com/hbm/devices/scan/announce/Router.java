@@ -35,11 +35,11 @@ import java.io.Serializable;
  */
 public final class Router implements Serializable {
 
-    private String uuid;
+    String uuid;
 
     private static final long serialVersionUID = -3904823671758702259L;
 
-    private Router() {
+    Router() {
     }
 
     /**
@@ -50,5 +50,22 @@ public final class Router implements Serializable {
     public String getUuid() {
         return uuid;
     }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof Router)) {
+            return false;
+        }
+        final Router rhs = (Router)obj;
+        return uuid == null ? rhs.uuid == null : uuid.equals(rhs.uuid);
+    }
+
+    @Override
+    public int hashCode() {
+        return uuid == null ? 0 : uuid.hashCode();
+    }
 }
 
@@ -45,12 +45,12 @@ public final class ServiceEntry implements Serializable {
     public static final String SERVICE_SSH = "ssh";
     public static final String SERVICE_DAQ = "daq";
 
-    private String type;
-    private int port;
+    String type;
+    int port;
 
     private static final long serialVersionUID = 8891307656812767172L;
 
-    private ServiceEntry() {
+    ServiceEntry() {
     }
 
     /**
@@ -66,4 +66,21 @@ public final class ServiceEntry implements Serializable {
     public int getPort() {
         return port;
     }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof ServiceEntry)) {
+            return false;
+        }
+        final ServiceEntry rhs = (ServiceEntry)obj;
+        return port == rhs.port && (type == null ? rhs.type == null : type.equals(rhs.type));
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (type == null ? 0 : type.hashCode()) + port;
+    }
 }
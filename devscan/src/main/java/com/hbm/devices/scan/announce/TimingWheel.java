@@ -0,0 +1,223 @@
+/*
+ * Java Scan, a library for scanning and configuring HBM devices.
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) Hottinger Baldwin Messtechnik GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.hbm.devices.scan.announce;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.hbm.devices.scan.ScanConstants;
+
+/*
+ * A hashed timing wheel.
+ *
+ * The wheel is an array of buckets, each bucket a doubly linked list of
+ * timeouts. A worker thread advances the wheel by one bucket every
+ * tick. A timeout due in n ticks is put into the bucket n ticks ahead
+ * of the current one, and counts the number of full rounds the wheel
+ * has to turn before it expires. Scheduling, rescheduling and
+ * cancelling are O(1) and don't allocate, which matters because every
+ * announce re-arms the timeout of its device.
+ *
+ * Timeouts expire at most one tick late, never early.
+ */
+final class TimingWheel implements ExpirationTimer {
+
+    static final int DEFAULT_WHEEL_SIZE = 512;
+
+    private static final Logger LOGGER = Logger.getLogger(ScanConstants.LOGGER_NAME);
+
+    private final long tickNanos;
+    private final WheelTimeout[] buckets;
+    private final int mask;
+    private final long startTime;
+    private final Thread worker;
+    private long tick;
+    private boolean closed;
+
+    TimingWheel(long tickMillis, int wheelSize) {
+        if (tickMillis < 1) {
+            throw new IllegalArgumentException("tick must be at least 1 ms");
+        }
+        if (wheelSize < 1 || Integer.bitCount(wheelSize) != 1) {
+            throw new IllegalArgumentException("wheel size must be a power of two");
+        }
+        tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        buckets = new WheelTimeout[wheelSize];
+        mask = wheelSize - 1;
+        startTime = System.nanoTime();
+        worker = new Thread(new Worker(), "DeviceMonitor timing wheel");
+        worker.start();
+    }
+
+    @Override
+    public Timeout schedule(Runnable task, long delayMillis) {
+        final WheelTimeout timeout = new WheelTimeout(task);
+        timeout.reschedule(delayMillis);
+        return timeout;
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        worker.interrupt();
+        try {
+            worker.join(TimeUnit.SECONDS.toMillis(1));
+            if (worker.isAlive()) {
+                LOGGER.log(Level.SEVERE, "Timing wheel did not terminate!\n");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /*
+     * Must be called with the lock of the wheel held.
+     */
+    private void link(WheelTimeout timeout, long delayMillis) {
+        if (closed) {
+            throw new RejectedExecutionException("Timing wheel closed");
+        }
+        final long deadline = System.nanoTime() - startTime + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMillis));
+        final long target = Math.max(tick, (deadline + tickNanos - 1) / tickNanos);
+        timeout.rounds = (target - tick) / buckets.length;
+        final int index = (int) target & mask;
+        timeout.bucket = index;
+        timeout.prev = null;
+        timeout.next = buckets[index];
+        if (timeout.next != null) {
+            timeout.next.prev = timeout;
+        }
+        buckets[index] = timeout;
+    }
+
+    /*
+     * Must be called with the lock of the wheel held.
+     */
+    private void unlink(WheelTimeout timeout) {
+        if (timeout.bucket < 0) {
+            return;
+        }
+        if (timeout.prev == null) {
+            buckets[timeout.bucket] = timeout.next;
+        } else {
+            timeout.prev.next = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.bucket = -1;
+    }
+
+    /*
+     * Removes the expired timeouts of the current bucket and advances
+     * the wheel. Returns null if the wheel was closed.
+     */
+    private synchronized List<Runnable> advance() {
+        if (closed) {
+            return null;
+        }
+        final List<Runnable> expired = new ArrayList<>();
+        WheelTimeout timeout = buckets[(int) tick & mask];
+        while (timeout != null) {
+            final WheelTimeout next = timeout.next;
+            if (timeout.rounds <= 0) {
+                unlink(timeout);
+                expired.add(timeout.task);
+            } else {
+                timeout.rounds--;
+            }
+            timeout = next;
+        }
+        tick++;
+        return expired;
+    }
+
+    private final class Worker implements Runnable {
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    final long sleepNanos = tick * tickNanos - (System.nanoTime() - startTime);
+                    if (sleepNanos > 0) {
+                        TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                    }
+                    final List<Runnable> expired = advance();
+                    if (expired == null) {
+                        return;
+                    }
+                    for (final Runnable task : expired) {
+                        try {
+                            task.run();
+                        } catch (RuntimeException e) {
+                            LOGGER.log(Level.SEVERE, "Expiration task failed!", e);
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private final class WheelTimeout implements Timeout {
+        private final Runnable task;
+        private WheelTimeout prev;
+        private WheelTimeout next;
+        private int bucket = -1;
+        private long rounds;
+
+        WheelTimeout(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void reschedule(long delayMillis) {
+            synchronized (TimingWheel.this) {
+                unlink(this);
+                link(this, delayMillis);
+            }
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (TimingWheel.this) {
+                unlink(this);
+            }
+        }
+    }
+}
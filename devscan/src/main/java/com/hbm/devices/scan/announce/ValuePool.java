@@ -0,0 +1,163 @@
+/*
+ * Java Scan, a library for scanning and configuring HBM devices.
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) Hottinger Baldwin Messtechnik GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.hbm.devices.scan.announce;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Bounded pool of canonical announce field values.
+ *
+ * Thousands of devices announce the same family types, firmware
+ * versions, interface names and services. Every parse creates new
+ * copies of these values, so the pool maps each value to the first
+ * equal instance seen and the parsed announces share that instance.
+ * Only immutable values are pooled: strings, ServiceEntry and Router
+ * objects and the service lists, which are never modified after
+ * parsing.
+ *
+ * The pool is bounded and evicts the least recently used values, so
+ * values unique to a single device (like UUIDs) can't grow it
+ * without limit. The heap saved is estimated from the shallow sizes
+ * of the duplicates dropped, assuming compressed object pointers, and
+ * averaged over the parsed announces.
+ */
+final class ValuePool {
+
+    static final int DEFAULT_CAPACITY = 4096;
+
+    private static final int OBJECT_HEADER = 16;
+    private static final int ARRAY_HEADER = 16;
+    private static final int REFERENCE = 4;
+    private static final int STRING_SIZE = 24;
+
+    private final Map<Object, Object> values;
+    private long hits;
+    private long savedBytes;
+    private long parsed;
+
+    ValuePool(final int capacity) {
+        values = new LinkedHashMap<Object, Object>(capacity * 4 / 3 + 1, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, Object> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /*
+     * Canonicalizes the params of a newly parsed announce and counts
+     * the announce for getSavedBytesPerAnnounce().
+     */
+    synchronized void canonicalizeParsed(AnnounceParams params) {
+        parsed++;
+        canonicalize(params);
+    }
+
+    synchronized void canonicalize(AnnounceParams params) {
+        if (params == null) {
+            return;
+        }
+        final Device device = params.device;
+        if (device != null) {
+            device.type = string(device.type);
+            device.familyType = string(device.familyType);
+            device.firmwareVersion = string(device.firmwareVersion);
+            device.hardwareId = string(device.hardwareId);
+        }
+        params.apiVersion = string(params.apiVersion);
+        if (params.router != null) {
+            params.router.uuid = string(params.router.uuid);
+            params.router = pooled(params.router, OBJECT_HEADER + REFERENCE);
+        }
+        final NetSettings settings = params.netSettings;
+        if (settings != null && settings.iface != null) {
+            final Interface iface = settings.iface;
+            iface.name = string(iface.name);
+            iface.type = string(iface.type);
+            iface.description = string(iface.description);
+        }
+        if (params.services != null) {
+            params.services = services(params.services);
+        }
+    }
+
+    synchronized int size() {
+        return values.size();
+    }
+
+    synchronized long getHits() {
+        return hits;
+    }
+
+    synchronized long getSavedBytesPerAnnounce() {
+        return parsed == 0 ? 0 : savedBytes / parsed;
+    }
+
+    private List<ServiceEntry> services(List<ServiceEntry> services) {
+        final int size = services.size();
+        for (int i = 0; i < size; i++) {
+            final ServiceEntry entry = services.get(i);
+            if (entry != null) {
+                entry.type = string(entry.type);
+                services.set(i, pooled(entry, OBJECT_HEADER + REFERENCE + Integer.BYTES));
+            }
+        }
+        return pooled(services, OBJECT_HEADER + 2 * Integer.BYTES + REFERENCE
+            + align(ARRAY_HEADER + size * REFERENCE));
+    }
+
+    private String string(String value) {
+        if (value == null) {
+            return null;
+        }
+        return pooled(value, STRING_SIZE + align(ARRAY_HEADER + value.length() * Character.BYTES));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T pooled(T value, int size) {
+        final Object canonical = values.get(value);
+        if (canonical == null) {
+            values.put(value, value);
+            return value;
+        }
+        if (canonical != value) {
+            hits++;
+            savedBytes += align(size);
+        }
+        return (T) canonical;
+    }
+
+    private static int align(int size) {
+        return (size + 7) & ~7;
+    }
+}
@@ -28,6 +28,9 @@
 
 package com.hbm.devices.scan.announce.filter;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Observable;
 import java.util.Observer;
 
@@ -38,6 +41,10 @@ import com.hbm.devices.scan.announce.Announce;
  * <p>
  * The class reads {@link Announce} objects and notifies them if
  * {@link Matcher#match(Announce)} method returns true.
+ * <p>
+ * A {@link java.util.List} of {@link Announce} objects is filtered as a
+ * whole and notified as a single unmodifiable {@link java.util.List} of all
+ * matching {@link Announce} objects.
  * 
  * @since 1.0
  */
@@ -63,10 +70,25 @@ public final class Filter extends Observable implements Observer {
 
     @Override
     public void update(Observable observable, Object arg) {
-        final Announce announce = (Announce)arg;
-        if (matcher.match(announce)) {
-            setChanged();
-            notifyObservers(announce);
+        if (arg instanceof List) {
+            final List<?> announces = (List<?>)arg;
+            final List<Announce> matching = new ArrayList<>(announces.size());
+            for (final Object element : announces) {
+                final Announce announce = (Announce)element;
+                if (matcher.match(announce)) {
+                    matching.add(announce);
+                }
+            }
+            if (!matching.isEmpty()) {
+                setChanged();
+                notifyObservers(Collections.unmodifiableList(matching));
+            }
+        } else {
+            final Announce announce = (Announce)arg;
+            if (matcher.match(announce)) {
+                setChanged();
+                notifyObservers(announce);
+            }
         }
     }
 }
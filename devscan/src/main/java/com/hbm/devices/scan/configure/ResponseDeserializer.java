@@ -29,6 +29,7 @@
 package com.hbm.devices.scan.configure;
 
 import java.lang.reflect.Type;
+import java.util.List;
 import java.util.Observable;
 import java.util.Observer;
 import java.util.logging.Level;
@@ -73,7 +74,16 @@ public final class ResponseDeserializer extends Observable implements Observer {
 
     @Override
     public void update(Observable observable, Object arg) {
-        final String message = (String)arg;
+        if (arg instanceof List) {
+            for (final Object message : (List<?>)arg) {
+                parse((String)message);
+            }
+        } else {
+            parse((String)arg);
+        }
+    }
+
+    private void parse(String message) {
         try {
             final JsonRpc json = gson.fromJson(message, JsonRpc.class);
             if (json != null) {
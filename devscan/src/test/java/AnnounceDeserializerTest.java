@@ -31,6 +31,7 @@ import org.junit.jupiter.api.BeforeEach;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.util.Observable;
@@ -53,17 +54,20 @@ import com.hbm.devices.scan.announce.Router;
 import com.hbm.devices.scan.announce.ServiceEntry;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class AnnounceDeserializerTest {
 
     private Announce announce;
+    private List<?> batch;
     private FakeMessageReceiver fsmmr;
 
     @BeforeEach
     public void setUp() {
         announce = null;
+        batch = null;
         fsmmr = new FakeMessageReceiver();
         AnnounceDeserializer parser = new AnnounceDeserializer();
         fsmmr.addObserver(parser);
@@ -72,6 +76,8 @@ public class AnnounceDeserializerTest {
             public void update(Observable o, Object arg) {
                 if (arg instanceof Announce) {
                     announce = (Announce) arg;
+                } else if (arg instanceof List) {
+                    batch = (List<?>) arg;
                 }
             }
         });
@@ -83,6 +89,27 @@ public class AnnounceDeserializerTest {
         assertNotNull(announce, "No Announce object after correct message");
     }
 
+    @Test
+    public void parseCorrectDatagram() {
+        fsmmr.emitSingleCorrectDatagram();
+        assertNotNull(announce, "No Announce object after correct datagram");
+        final Announce first = announce;
+        announce = null;
+        fsmmr.emitSingleCorrectDatagram();
+        assertSame(first, announce, "Repeated datagram not served from cache");
+    }
+
+    @Test
+    public void parseBatch() {
+        fsmmr.emitCorrectMessageBatch();
+        assertNull(announce, "Got single Announce object for batch");
+        assertNotNull(batch, "No batch after batch of messages");
+        assertEquals(2, batch.size(), "Invalid message not removed from batch");
+        for (Object element : batch) {
+            assertTrue(element instanceof Announce, "Batch contains no Announce object");
+        }
+    }
+
     @Test
     public void parseInvalidJsonMessage() {
         fsmmr.emitInvalidJsonMessage();
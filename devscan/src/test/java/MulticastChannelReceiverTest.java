@@ -0,0 +1,91 @@
+/*
+ * Java Scan, a library for scanning and configuring HBM devices.
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) Hottinger Baldwin Messtechnik GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.IOException;
+import java.net.NetworkInterface;
+
+import com.google.common.base.Predicates;
+import com.hbm.devices.scan.MulticastChannelReceiver;
+import com.hbm.devices.scan.ScanConstants;
+
+public class MulticastChannelReceiverTest {
+
+    @Test
+    public void instantiation() {
+        try (final MulticastChannelReceiver mr = new MulticastChannelReceiver(ScanConstants.ANNOUNCE_ADDRESS, ScanConstants.ANNOUNCE_PORT)) {
+            assertNotNull(mr, "Could not instantiate MulticastChannelReceiver");
+        } catch (IOException e) {
+            fail("Got IOException while instantiating MulticastChannelReceiver");
+        }
+        try (final MulticastChannelReceiver mr = new MulticastChannelReceiver(ScanConstants.ANNOUNCE_ADDRESS,
+                ScanConstants.ANNOUNCE_PORT, Predicates.<NetworkInterface>alwaysFalse())) {
+            assertNotNull(mr, "Could not instantiate MulticastChannelReceiver");
+        } catch (IOException e) {
+            fail("Got IOException while instantiating MulticastChannelReceiver");
+        }
+    }
+
+    @Test
+    public void batchSize() {
+        try (final MulticastChannelReceiver mr = new MulticastChannelReceiver(ScanConstants.ANNOUNCE_ADDRESS, ScanConstants.ANNOUNCE_PORT)) {
+            assertEquals(1, mr.getBatchSize(), "Batching enabled by default");
+            mr.setBatchSize(64);
+            assertEquals(64, mr.getBatchSize(), "Batch size not set");
+            assertThrows(IllegalArgumentException.class, () -> {
+                mr.setBatchSize(0);
+            });
+        } catch (IOException e) {
+            fail("Got IOException while instantiating MulticastChannelReceiver");
+        }
+    }
+
+    @Test
+    public void runAndStop() {
+        try {
+            MulticastChannelReceiver mr = new MulticastChannelReceiver(ScanConstants.ANNOUNCE_ADDRESS, ScanConstants.ANNOUNCE_PORT);
+            assertNotNull(mr, "Could not instantiate MulticastChannelReceiver");
+            Thread mrThread = new Thread(mr);
+            mrThread.start();
+            Thread.sleep(10);
+            mr.close();
+            mrThread.join(1000);
+            assertFalse(mrThread.isAlive(), "Thread still alive after close");
+        } catch (IOException e) {
+            fail("Got IOException while instantiating MulticastChannelReceiver");
+        } catch (InterruptedException e) {
+            fail("Got InterruptedExcpetion while joining MulticastChannelReceiver thread");
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Java Scan, a library for scanning and configuring HBM devices.
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) Hottinger Baldwin Messtechnik GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.IOException;
+import java.net.NetworkInterface;
+import java.util.Observable;
+
+import com.google.common.base.Predicates;
+import com.hbm.devices.scan.MulticastReceiverHub;
+
+public class MulticastReceiverHubTest {
+
+    @Test
+    public void instantiation() {
+        try (final MulticastReceiverHub hub = new MulticastReceiverHub()) {
+            assertNotNull(hub.getAnnounceObservable(), "No announce observable");
+            assertNotNull(hub.getConfigurationObservable(), "No configuration observable");
+            assertNotSame(hub.getAnnounceObservable(), hub.getConfigurationObservable(), "Groups share an observable");
+        } catch (IOException e) {
+            fail("Got IOException while instantiating MulticastReceiverHub");
+        }
+        try (final MulticastReceiverHub hub = new MulticastReceiverHub(Predicates.<NetworkInterface>alwaysFalse())) {
+            assertNotNull(hub, "Could not instantiate MulticastReceiverHub");
+        } catch (IOException e) {
+            fail("Got IOException while instantiating MulticastReceiverHub");
+        }
+    }
+
+    @Test
+    public void addGroupWhileRunning() {
+        try {
+            MulticastReceiverHub hub = new MulticastReceiverHub();
+            Thread hubThread = new Thread(hub);
+            hubThread.start();
+            Thread.sleep(10);
+            Observable group = hub.addGroup("239.255.77.78", 31418);
+            assertNotNull(group, "No observable for added group");
+            hub.close();
+            hubThread.join(1000);
+            assertFalse(hubThread.isAlive(), "Thread still alive after close");
+        } catch (IOException e) {
+            fail("Got IOException while running MulticastReceiverHub");
+        } catch (InterruptedException e) {
+            fail("Got InterruptedExcpetion while joining MulticastReceiverHub thread");
+        }
+    }
+
+    @Test
+    public void runAndStop() {
+        try {
+            MulticastReceiverHub hub = new MulticastReceiverHub();
+            Thread hubThread = new Thread(hub);
+            hubThread.start();
+            Thread.sleep(10);
+            hub.close();
+            hubThread.join(1000);
+            assertFalse(hubThread.isAlive(), "Thread still alive after close");
+        } catch (IOException e) {
+            fail("Got IOException while instantiating MulticastReceiverHub");
+        } catch (InterruptedException e) {
+            fail("Got InterruptedExcpetion while joining MulticastReceiverHub thread");
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Java Scan, a library for scanning and configuring HBM devices.
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) Hottinger Baldwin Messtechnik GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.hbm.devices.scan.Datagram;
+import com.hbm.devices.scan.RingBufferStage;
+
+public class RingBufferStageTest {
+
+    @Test
+    public void parameters() {
+        assertThrows(IllegalArgumentException.class, () -> {
+            new RingBufferStage(0, 1);
+        });
+        assertThrows(IllegalArgumentException.class, () -> {
+            new RingBufferStage(16, 0);
+        });
+        try (final RingBufferStage stage = new RingBufferStage(100, 1)) {
+            assertEquals(128, stage.getCapacity(), "Capacity not rounded to power of two");
+        }
+    }
+
+    @Test
+    public void deliverMessages() throws InterruptedException {
+        final List<String> received = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch latch = new CountDownLatch(3);
+        try (final RingBufferStage stage = new RingBufferStage(4, 1)) {
+            stage.addObserver((observable, arg) -> {
+                if (arg instanceof Datagram) {
+                    received.add(((Datagram)arg).getMessage());
+                } else {
+                    received.add((String)arg);
+                }
+                latch.countDown();
+            });
+            final byte[] buffer = "datagram".getBytes(StandardCharsets.UTF_8);
+            final Datagram datagram = new Datagram(buffer, buffer.length);
+            stage.update(null, "first");
+            stage.update(null, datagram);
+            buffer[0] = 'X';
+            stage.update(null, "last");
+            assertTrue(latch.await(1, TimeUnit.SECONDS), "Messages not delivered");
+            assertEquals("first", received.get(0));
+            assertEquals("datagram", received.get(1), "Datagram not copied into ring buffer");
+            assertEquals("last", received.get(2));
+            assertEquals(0, stage.getOverflowCount());
+        }
+    }
+
+    @Test
+    public void overflow() throws InterruptedException {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        try (final RingBufferStage stage = new RingBufferStage(2, 1)) {
+            stage.addObserver((observable, arg) -> {
+                entered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            for (int i = 0; i < 5; i++) {
+                stage.update(null, "message");
+            }
+            assertTrue(entered.await(1, TimeUnit.SECONDS), "Observer not called");
+            assertEquals(2, stage.getOccupancy(), "Wrong occupancy of full ring buffer");
+            assertEquals(3, stage.getOverflowCount(), "Wrong number of dropped messages");
+            release.countDown();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Java Scan, a library for scanning and configuring HBM devices.
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) Hottinger Baldwin Messtechnik GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.hbm.devices.scan.Datagram;
+import com.hbm.devices.scan.SourceRateLimiter;
+
+public class SourceRateLimiterTest {
+
+    private static final SocketAddress FLOODER = new InetSocketAddress("192.168.1.2", 31416);
+    private static final SocketAddress OTHER = new InetSocketAddress("192.168.1.3", 31416);
+
+    private static Datagram datagram(SocketAddress source) {
+        final byte[] data = "announce".getBytes(StandardCharsets.UTF_8);
+        return new Datagram(data, data.length, source);
+    }
+
+    @Test
+    public void parameters() {
+        assertThrows(IllegalArgumentException.class, () -> {
+            new SourceRateLimiter(0.0, 1, SourceRateLimiter.Policy.DROP);
+        });
+        assertThrows(IllegalArgumentException.class, () -> {
+            new SourceRateLimiter(1.0, 0, SourceRateLimiter.Policy.DROP);
+        });
+        assertThrows(IllegalArgumentException.class, () -> {
+            new SourceRateLimiter(1.0, 1, null);
+        });
+        final SourceRateLimiter limiter = new SourceRateLimiter(1.0, 1, SourceRateLimiter.Policy.SAMPLE);
+        assertThrows(IllegalArgumentException.class, () -> {
+            limiter.setSampleInterval(0);
+        });
+    }
+
+    @Test
+    public void dropPerSource() {
+        final List<Object> passed = new ArrayList<>();
+        final SourceRateLimiter limiter = new SourceRateLimiter(0.001, 2, SourceRateLimiter.Policy.DROP);
+        limiter.addObserver((observable, arg) -> passed.add(arg));
+        for (int i = 0; i < 5; i++) {
+            limiter.update(null, datagram(FLOODER));
+        }
+        limiter.update(null, datagram(OTHER));
+        limiter.update(null, "no source");
+        limiter.update(null, datagram(null));
+
+        assertEquals(5, passed.size(), "Wrong number of passed messages");
+        assertEquals(3, limiter.getDropCount(FLOODER), "Wrong drop count of flooding device");
+        assertEquals(0, limiter.getDropCount(OTHER), "Messages of other device dropped");
+        assertEquals(1, limiter.getDropCounts().size());
+        assertEquals(3, limiter.getTotalDropCount());
+    }
+
+    @Test
+    public void sampleExcessMessages() {
+        final List<Object> passed = new ArrayList<>();
+        final SourceRateLimiter limiter = new SourceRateLimiter(0.001, 1, SourceRateLimiter.Policy.SAMPLE);
+        limiter.setSampleInterval(2);
+        limiter.addObserver((observable, arg) -> passed.add(arg));
+        for (int i = 0; i < 5; i++) {
+            limiter.update(null, datagram(FLOODER));
+        }
+        assertEquals(3, passed.size(), "Wrong number of sampled messages");
+        assertEquals(2, limiter.getDropCount(FLOODER));
+    }
+
+    @Test
+    public void filterBatch() {
+        final List<Object> passed = new ArrayList<>();
+        final SourceRateLimiter limiter = new SourceRateLimiter(0.001, 1, SourceRateLimiter.Policy.DROP);
+        limiter.addObserver((observable, arg) -> passed.add(arg));
+        limiter.update(null, Arrays.asList(datagram(FLOODER), datagram(FLOODER), datagram(OTHER)));
+        limiter.update(null, Arrays.asList(datagram(FLOODER)));
+        assertEquals(1, passed.size(), "Empty batch notified");
+        assertEquals(2, ((List<?>)passed.get(0)).size(), "Wrong number of messages in batch");
+    }
+}
@@ -30,6 +30,9 @@ package com.hbm.devices.scan;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Properties;
 import java.util.logging.Logger;
 
@@ -205,6 +208,18 @@ public class FakeMessageReceiver extends AbstractMessageReceiver {
         notifyObservers(CORRECT_MESSAGE_DIFFERENT_DEVICE);
     }
 
+    public void emitSingleCorrectDatagram() {
+        final byte[] data = CORRECT_MESSAGE.getBytes(StandardCharsets.UTF_8);
+        setChanged();
+        notifyObservers(new Datagram(Arrays.copyOf(data, data.length + 16), data.length));
+    }
+
+    public void emitCorrectMessageBatch() {
+        setChanged();
+        notifyObservers(Collections.unmodifiableList(Arrays.asList(CORRECT_MESSAGE,
+            INVALID_JSON_MESSAGE, CORRECT_MESSAGE_DIFFERENT_DEVICE)));
+    }
+
     public void emitInvalidJsonMessage() {
         setChanged();
         notifyObservers(INVALID_JSON_MESSAGE);
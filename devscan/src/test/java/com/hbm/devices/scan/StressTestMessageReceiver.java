@@ -28,12 +28,16 @@
 
 package com.hbm.devices.scan;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.UUID;
 import java.util.logging.Logger;
 
 import com.hbm.devices.scan.ScanConstants;
+import com.hbm.devices.scan.announce.Announce;
+import com.hbm.devices.scan.announce.AnnounceDeserializer;
 
 public class StressTestMessageReceiver extends AbstractMessageReceiver {
 
@@ -54,12 +58,16 @@ public class StressTestMessageReceiver extends AbstractMessageReceiver {
         }
     }
 
-    private static String getAnnounceString(String uuid) {
+    public static String getAnnounceString(String uuid) {
+        return getAnnounceString(uuid, 15);
+    }
+
+    public static String getAnnounceString(String uuid, int expiration) {
         return "{" + "\"jsonrpc\":\"2.0\",\"method\":\"announce\",\"params\":{"
                 + "\"apiVersion\":\"1.0\",\"device\":{\"familyType\":\"QuantumX\","
                 + "\"firmwareVersion\":\"4.1.1.18610.1\",\"hardwareId\":\"MX410_R0\","
                 + "\"name\":\"MX410 Matthias\",\"type\":\"MX410\",\"uuid\":\"" + uuid + "\"},"
-                + "\"expiration\":15," + "\"netSettings\":{"
+                + "\"expiration\":" + expiration + "," + "\"netSettings\":{"
                 + "\"defaultGateway\":{\"ipv4Address\":\"172.19.169.254\"},"
                 + "\"interface\":{\"description\":\"ethernet backplane side\","
                 + "\"ipv4\":[{\"address\":\"172.19.192.57\",\"netmask\":\"255.255.0.0\"}],"
@@ -72,6 +80,21 @@ public class StressTestMessageReceiver extends AbstractMessageReceiver {
                 + "{\"port\":22,\"type\":\"ssh\"}" + "]" + "}" + "}";
     }
 
+    /*
+     * Returns the announce of getAnnounceString(uuid, expiration) as
+     * delivered by an AnnounceDeserializer.
+     */
+    public static Announce getAnnounce(String uuid, int expiration) {
+        final AnnounceDeserializer deserializer = new AnnounceDeserializer();
+        final List<Announce> announces = new ArrayList<>(1);
+        deserializer.addObserver((observable, arg) -> announces.add((Announce) arg));
+        deserializer.update(null, getAnnounceString(uuid, expiration));
+        if (announces.isEmpty()) {
+            throw new IllegalStateException("Announce of " + uuid + " rejected");
+        }
+        return announces.get(0);
+    }
+
     public long getStartNanoTime() {
         return this.startNanoTime;
     }
@@ -81,10 +104,16 @@ public class StressTestMessageReceiver extends AbstractMessageReceiver {
         LOGGER.info("Starting Test: " + loopAmount + " x " + deviceUuidList.size() + " Announces\n");
         this.startNanoTime = System.nanoTime();
 
+        final boolean raw = isDatagramDelivery();
         for (int i = 0; i < loopAmount; i++) {
             for (final String s : this.deviceUuidList) {
                 setChanged();
-                notifyObservers(s);
+                if (raw) {
+                    final byte[] data = s.getBytes(StandardCharsets.UTF_8);
+                    notifyObservers(new Datagram(data, data.length));
+                } else {
+                    notifyObservers(s);
+                }
             }
         }
 
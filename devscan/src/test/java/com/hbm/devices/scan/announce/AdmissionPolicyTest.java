@@ -0,0 +1,158 @@
+/*
+ * Java Scan, a library for scanning and configuring HBM devices.
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) Hottinger Baldwin Messtechnik GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.hbm.devices.scan.announce;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import com.hbm.devices.scan.ScanConstants;
+import com.hbm.devices.scan.StressTestMessageReceiver;
+
+public class AdmissionPolicyTest {
+
+    private static final Logger LOGGER = Logger.getLogger(ScanConstants.LOGGER_NAME);
+    private static final int CAPACITY = 100;
+    private static final int STABLE_DEVICES = 80;
+    private static final int RECONFIGURED_DEVICES = 10;
+    private static final int TRANSIENT_STATES = 8;
+    private static final int ONE_SHOT_DEVICES = 80;
+    private static final int ROUNDS = 30;
+
+    @Test
+    public void sketchCountsFrequencies() {
+        final FrequencySketch sketch = new FrequencySketch(CAPACITY);
+        final String frequent = "frequent";
+        final String rare = "rare";
+        for (int i = 0; i < 5; i++) {
+            sketch.increment(frequent);
+        }
+        sketch.increment(rare);
+        assertEquals(5, sketch.frequency(frequent), "Wrong frequency");
+        assertEquals(1, sketch.frequency(rare), "Wrong frequency");
+        assertEquals(0, sketch.frequency("unknown"), "Frequency of unknown key");
+
+        for (int i = 0; i < 100; i++) {
+            sketch.increment(frequent);
+        }
+        assertEquals(15, sketch.frequency(frequent), "Counter not saturated");
+    }
+
+    @Test
+    public void sketchAgesFrequencies() {
+        final FrequencySketch sketch = new FrequencySketch(CAPACITY);
+        final String old = "old";
+        for (int i = 0; i < 8; i++) {
+            sketch.increment(old);
+        }
+        for (int i = 0; i < 10 * CAPACITY; i++) {
+            sketch.increment(Integer.valueOf(i));
+        }
+        assertTrue(sketch.frequency(old) <= 4, "Frequencies not halved");
+    }
+
+    /*
+     * Replays a trace of stable devices announcing periodically,
+     * interleaved with devices sending a series of transient states
+     * while being reconfigured and devices seen only once, against
+     * a plain LRU cache and the W-TinyLFU AnnounceCache of the same
+     * capacity.
+     */
+    @Test
+    public void hitRateAgainstLRU() throws IOException, MissingDataException {
+        final List<String> trace = createTrace();
+        final Map<String, Announce> announces = new HashMap<>();
+        for (final String message : trace) {
+            if (!announces.containsKey(message)) {
+                final Announce announce = AnnounceAdapter.parse(message);
+                announce.setJSONString(message);
+                announce.identifyCommunicationPath();
+                announces.put(message, announce);
+            }
+        }
+
+        final LRUCache<String, Announce> lru = new LRUCache<>(CAPACITY);
+        int lruHits = 0;
+        for (final String message : trace) {
+            if (lru.get(message) == null) {
+                lru.put(message, announces.get(message));
+            } else {
+                lruHits++;
+            }
+        }
+        final double lruHitRate = (double)lruHits / trace.size();
+
+        final AnnounceCache cache = new AnnounceCache(CAPACITY);
+        for (final String message : trace) {
+            if (cache.get(message) == null) {
+                cache.put(message, announces.get(message));
+            }
+        }
+        final CacheStatistics statistics = cache.getStatistics();
+        assertEquals(CAPACITY, statistics.getSize(), "Cache not filled up to its capacity");
+
+        LOGGER.info(String.format("Hit rate LRU: %.3f, W-TinyLFU: %.3f", lruHitRate, statistics.getHitRate()));
+        assertTrue(statistics.getHitRate() > lruHitRate + 0.2, "W-TinyLFU does not outperform LRU");
+    }
+
+    private static List<String> createTrace() {
+        final Random random = new Random(4711);
+        final List<String> stable = new ArrayList<>();
+        for (int i = 0; i < STABLE_DEVICES; i++) {
+            stable.add(StressTestMessageReceiver.getAnnounceString(new UUID(0, i).toString()));
+        }
+        final List<String> trace = new ArrayList<>();
+        int device = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            final List<String> messages = new ArrayList<>(stable);
+            for (int i = 0; i < RECONFIGURED_DEVICES; i++) {
+                final String announce = StressTestMessageReceiver.getAnnounceString(new UUID(1, device++).toString());
+                for (int state = 0; state < TRANSIENT_STATES; state++) {
+                    messages.add(announce.replace("4.1.1.18610.1", "4.1.1.18610." + state));
+                }
+            }
+            for (int i = 0; i < ONE_SHOT_DEVICES; i++) {
+                messages.add(StressTestMessageReceiver.getAnnounceString(new UUID(2, device++).toString()));
+            }
+            Collections.shuffle(messages, random);
+            trace.addAll(messages);
+        }
+        return trace;
+    }
+}
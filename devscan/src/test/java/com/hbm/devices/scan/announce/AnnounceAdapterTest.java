@@ -0,0 +1,60 @@
+/*
+ * Java Scan, a library for scanning and configuring HBM devices.
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) Hottinger Baldwin Messtechnik GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.hbm.devices.scan.announce;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+public class AnnounceAdapterTest {
+
+    @Test
+    public void writeOriginalMessage() throws IOException {
+        final Properties messages = new Properties();
+        try (final InputStream is = AnnounceAdapterTest.class.getResourceAsStream("/fakemessages.properties")) {
+            messages.load(is);
+        }
+        final String message = messages.getProperty("scan.announce.correctMessage");
+        final Gson gson = new GsonBuilder().registerTypeAdapter(Announce.class, new AnnounceAdapter(false)).create();
+        final Announce announce = gson.fromJson(message, Announce.class);
+        announce.setJSONString(message);
+
+        final String json = gson.toJson(announce);
+        assertEquals(message, json, "Written message differs");
+        assertEquals("0009E500123A", gson.fromJson(json, Announce.class).getParams().getDevice().getUuid(),
+            "Written message parsed differently");
+        assertEquals("null", gson.toJson(null, Announce.class), "Null announce not written as null");
+    }
+}
@@ -30,15 +30,32 @@ package com.hbm.devices.scan.announce;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.BeforeEach;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import com.hbm.devices.scan.FakeMessageReceiver;
+import com.hbm.devices.scan.StressTestMessageReceiver;
 
 public class AnnounceCacheTest {
 
@@ -95,6 +112,196 @@ public class AnnounceCacheTest {
         assertNotNull(parser.getCache().get(CORRECT_MESSAGE_DIFFERENT_SERVICES), "New message not in cache");
     }
 
+    @Test
+    public void datagramFromCacheTest() {
+        fakeReceiver.emitSingleCorrectDatagram();
+        assertSame(parser.getCache().size(), 1, "Datagram not in cache");
+        final byte[] data = CORRECT_MESSAGE.getBytes(StandardCharsets.UTF_8);
+        final Announce announce = parser.getCache().get(MessageKey.probe(data, 0, data.length));
+        assertNotNull(announce, "Datagram not found by its bytes");
+
+        fakeReceiver.emitSingleCorrectDatagram();
+        assertSame(parser.getCache().size(), 1, "Datagram was added more than once");
+        assertSame(announce, parser.getCache().get(MessageKey.probe(data, 0, data.length)), "Cached announce replaced");
+
+        fakeReceiver.emitSingleCorrectMessageDifferentServices();
+        assertSame(parser.getCache().size(), 1, "Datagram of same path still in cache");
+    }
+
+    @Test
+    public void messageKeyTest() {
+        final byte[] data = CORRECT_MESSAGE.getBytes(StandardCharsets.UTF_8);
+        final byte[] padded = new byte[data.length + 10];
+        System.arraycopy(data, 0, padded, 5, data.length);
+        final MessageKey key = MessageKey.probe(data, 0, data.length);
+        final MessageKey shifted = MessageKey.probe(padded, 5, data.length);
+        assertEquals(key, shifted, "Keys over same bytes differ");
+        assertEquals(key.hashCode(), shifted.hashCode(), "Hash codes over same bytes differ");
+        assertEquals(key, shifted.compact(), "Compacted key differs");
+
+        final byte[] changed = Arrays.copyOf(data, data.length);
+        changed[data.length / 2]++;
+        assertNotEquals(key, MessageKey.probe(changed, 0, changed.length), "Keys over different bytes are equal");
+        assertNotEquals(key.getDigest(), MessageKey.probe(changed, 0, changed.length).getDigest(), "Digest did not change");
+    }
+
+    @Test
+    public void compactKeyTest() {
+        final byte[] data = CORRECT_MESSAGE.getBytes(StandardCharsets.UTF_8);
+        final MessageKey key = MessageKey.probe(data, 0, data.length);
+        final MessageKey compact = key.compact();
+        assertEquals(compact, key, "Compacted key differs from probe");
+        assertEquals(key, compact, "Probe differs from compacted key");
+        assertSame(compact, compact.compact(), "Compacted key compacted again");
+
+        final byte[] truncated = Arrays.copyOf(data, data.length - 1);
+        assertNotEquals(compact, MessageKey.probe(truncated, 0, truncated.length), "Keys of different length are equal");
+    }
+
+    @Test
+    public void forgedDigestIsMissTest() throws IOException, MissingDataException {
+        final Announce forged = AnnounceAdapter.parse(CORRECT_MESSAGE_DIFFERENT_DEVICE);
+        forged.setJSONString(CORRECT_MESSAGE_DIFFERENT_DEVICE);
+        forged.identifyCommunicationPath();
+        final byte[] data = CORRECT_MESSAGE.getBytes(StandardCharsets.UTF_8);
+        parser.getCache().put(MessageKey.probe(data, 0, data.length), forged);
+        assertNull(parser.getCache().get(CORRECT_MESSAGE), "Entry with other bytes returned for digest");
+
+        fakeReceiver.emitSingleCorrectMessage();
+        final Announce announce = parser.getCache().get(CORRECT_MESSAGE);
+        assertNotNull(announce, "Message not cached after collision");
+        assertEquals(CORRECT_MESSAGE, announce.getJSONString(), "Colliding entry not replaced");
+        assertSame(parser.getCache().size(), 1, "Colliding entry kept");
+        assertSame(parser.getCache().lastAnnounceSize(), 1, "Path of colliding entry kept");
+    }
+
+    @Test
+    public void cachedAnnounceKeepsMessageOnceTest() throws IOException, ClassNotFoundException, MissingDataException {
+        fakeReceiver.emitSingleCorrectMessage();
+        final Announce cached = parser.getCache().get(CORRECT_MESSAGE);
+        assertNotSame(cached.getJSONString(), cached.getJSONString(), "Decoded message kept besides the bytes");
+
+        final Announce parsed = AnnounceAdapter.parse(CORRECT_MESSAGE);
+        parsed.setJSONString(CORRECT_MESSAGE);
+        parsed.identifyCommunicationPath();
+        assertEquals(parsed, cached, "Announce with bytes differs from announce with string");
+        assertEquals(cached, parsed, "Announce with string differs from announce with bytes");
+        assertEquals(parsed.hashCode(), cached.hashCode(), "Hash codes of equal announces differ");
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (final ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(cached);
+        }
+        try (final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            final Announce copy = (Announce) in.readObject();
+            assertEquals(CORRECT_MESSAGE, copy.getJSONString(), "Message not serialized");
+            assertEquals(cached, copy, "Serialized announce differs");
+        }
+    }
+
+    @Test
+    public void stringAndDatagramShareEntryTest() {
+        fakeReceiver.emitSingleCorrectMessage();
+        fakeReceiver.emitSingleCorrectDatagram();
+        assertSame(parser.getCache().size(), 1, "String and datagram cached twice");
+        assertEquals(1, parser.getCacheStatistics().getHitCount(), "Datagram not found by digest of string");
+    }
+
+    @Test
+    public void hitAndMissTest() {
+        fakeReceiver.emitSingleCorrectMessage();
+        fakeReceiver.emitSingleCorrectMessage();
+        fakeReceiver.emitSingleCorrectMessage();
+        final CacheStatistics statistics = parser.getCacheStatistics();
+        assertEquals(1, statistics.getMissCount(), "First message not counted as miss");
+        assertEquals(2, statistics.getHitCount(), "Repeated messages not counted as hits");
+        assertEquals(2.0 / 3.0, statistics.getHitRate(), 1e-9, "Wrong hit rate");
+        assertEquals(0, statistics.getEvictionCount(), "Messages evicted");
+    }
+
+    @Test
+    public void adaptiveCapacityTest() {
+        final int devices = AnnounceCache.DEFAULT_CACHE_SIZE * 3;
+        for (int i = 0; i < devices; i++) {
+            parser.update(null, StressTestMessageReceiver.getAnnounceString(UUID.randomUUID().toString()));
+        }
+        final CacheStatistics statistics = parser.getCacheStatistics();
+        assertEquals(devices, statistics.getSize(), "Announces of live devices evicted");
+        assertEquals(devices, statistics.getCapacity(), "Cache did not grow with live devices");
+        assertEquals(0, statistics.getEvictionCount(), "Announces of live devices evicted");
+    }
+
+    @Test
+    public void expiredDevicesEvictedTest() throws InterruptedException {
+        final int devices = AnnounceCache.DEFAULT_CACHE_SIZE * 2;
+        for (int i = 0; i < devices; i++) {
+            parser.update(null, StressTestMessageReceiver.getAnnounceString(UUID.randomUUID().toString())
+                .replace("\"expiration\":15", "\"expiration\":1"));
+        }
+        assertEquals(devices, parser.getCache().size(), "Announces of live devices evicted");
+
+        Thread.sleep(1100);
+        parser.update(null, StressTestMessageReceiver.getAnnounceString(UUID.randomUUID().toString()));
+        final CacheStatistics statistics = parser.getCacheStatistics();
+        assertEquals(AnnounceCache.DEFAULT_CACHE_SIZE, statistics.getSize(), "Expired announces not evicted");
+        assertEquals(devices + 1 - AnnounceCache.DEFAULT_CACHE_SIZE, statistics.getEvictionCount(), "Wrong eviction count");
+        assertEquals(AnnounceCache.DEFAULT_CACHE_SIZE, parser.getCache().lastAnnounceSize(), "Paths of evicted announces still known");
+    }
+
+    @Test
+    public void fixedCapacityTest() {
+        final int capacity = 50;
+        final int devices = 120;
+        parser.setCacheCapacity(capacity);
+        for (int i = 0; i < devices; i++) {
+            parser.update(null, StressTestMessageReceiver.getAnnounceString(UUID.randomUUID().toString()));
+        }
+        final CacheStatistics statistics = parser.getCacheStatistics();
+        assertEquals(capacity, statistics.getSize(), "Fixed capacity exceeded");
+        assertEquals(capacity, statistics.getCapacity(), "Wrong capacity");
+        assertEquals(devices - capacity, statistics.getEvictionCount(), "Wrong eviction count");
+        assertEquals(capacity, parser.getCache().lastAnnounceSize(), "Paths of evicted announces still known");
+
+        parser.setCacheCapacity(10);
+        assertEquals(10, parser.getCache().size(), "Cache not shrunk");
+        assertThrows(IllegalArgumentException.class, () -> parser.setCacheCapacity(-1));
+    }
+
+    @Test
+    public void concurrentParsingTest() throws Exception {
+        final int devices = 200;
+        final int rounds = 10;
+        final int threads = 4;
+        final List<String> messages = new ArrayList<>();
+        for (int i = 0; i < devices; i++) {
+            messages.add(StressTestMessageReceiver.getAnnounceString(UUID.randomUUID().toString()));
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int round = 0; round < rounds; round++) {
+                        for (final String message : messages) {
+                            parser.update(null, message);
+                        }
+                    }
+                }));
+            }
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        final CacheStatistics statistics = parser.getCacheStatistics();
+        assertEquals(devices, statistics.getSize(), "Wrong number of cached announces");
+        assertEquals(devices, parser.getCache().lastAnnounceSize(), "Wrong number of paths");
+        assertEquals((long)devices * rounds * threads, statistics.getHitCount() + statistics.getMissCount(),
+            "Lookups lost");
+        assertEquals(0, statistics.getEvictionCount(), "Announces of live devices evicted");
+    }
+
     static {
         try (final InputStream is = AnnounceCacheTest.class.getResourceAsStream("/fakemessages.properties")) {
             final Properties props = new Properties();
@@ -0,0 +1,213 @@
+/*
+ * Java Scan, a library for scanning and configuring HBM devices.
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) Hottinger Baldwin Messtechnik GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.hbm.devices.scan.announce;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Observer;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.hbm.devices.scan.StressTestMessageReceiver;
+
+public class AsyncObserverTest {
+
+    private static final String BLOCKER = "blocker";
+
+    private List<Object> events;
+    private CountDownLatch entered;
+    private CountDownLatch release;
+    private CountDownLatch delivered;
+    private Observer slowObserver;
+    private AsyncObserver asyncObserver;
+
+    @BeforeEach
+    public void setUp() {
+        events = Collections.synchronizedList(new ArrayList<>());
+        entered = new CountDownLatch(1);
+        release = new CountDownLatch(1);
+        slowObserver = (observable, arg) -> {
+            if (arg == BLOCKER) {
+                entered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return;
+            }
+            events.add(arg);
+            if (delivered != null) {
+                delivered.countDown();
+            }
+        };
+    }
+
+    @AfterEach
+    public void tearDown() {
+        release.countDown();
+        if (asyncObserver != null) {
+            asyncObserver.close();
+        }
+    }
+
+    @Test
+    public void slowObserverDoesNotBlockNotifier() throws InterruptedException {
+        asyncObserver = new AsyncObserver(slowObserver, 10, OverflowPolicy.BLOCK);
+        block();
+        delivered = new CountDownLatch(3);
+        for (int i = 0; i < 3; i++) {
+            asyncObserver.update(null, Integer.valueOf(i));
+        }
+        assertEquals(3, asyncObserver.getQueueSize(), "Events not queued");
+        Thread.sleep(20);
+        release.countDown();
+        assertTrue(delivered.await(2, TimeUnit.SECONDS), "Events not delivered");
+        assertEquals(3, events.size(), "Wrong number of events delivered");
+        for (int i = 0; i < 3; i++) {
+            assertEquals(Integer.valueOf(i), events.get(i), "Events out of order");
+        }
+        assertTrue(asyncObserver.getMaxLagMillis() >= 20, "Lag not measured");
+        assertEquals(0, asyncObserver.getDroppedCount(), "Events dropped");
+    }
+
+    @Test
+    public void dropOldest() throws InterruptedException {
+        asyncObserver = new AsyncObserver(slowObserver, 2, OverflowPolicy.DROP_OLDEST);
+        block();
+        delivered = new CountDownLatch(2);
+        for (int i = 0; i < 5; i++) {
+            asyncObserver.update(null, Integer.valueOf(i));
+        }
+        assertEquals(3, asyncObserver.getDroppedCount(), "Wrong number of dropped events");
+        release.countDown();
+        assertTrue(delivered.await(2, TimeUnit.SECONDS), "Events not delivered");
+        assertEquals(Integer.valueOf(3), events.get(0), "Wrong event dropped");
+        assertEquals(Integer.valueOf(4), events.get(1), "Wrong event dropped");
+    }
+
+    @Test
+    public void blockIfFull() throws Exception {
+        asyncObserver = new AsyncObserver(slowObserver, 1, OverflowPolicy.BLOCK);
+        block();
+        asyncObserver.update(null, Integer.valueOf(0));
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<?> notifier = executor.submit(() -> asyncObserver.update(null, Integer.valueOf(1)));
+            assertThrows(TimeoutException.class, () -> notifier.get(200, TimeUnit.MILLISECONDS));
+            delivered = new CountDownLatch(2);
+            release.countDown();
+            notifier.get(2, TimeUnit.SECONDS);
+            assertTrue(delivered.await(2, TimeUnit.SECONDS), "Events not delivered");
+            assertEquals(0, asyncObserver.getDroppedCount(), "Events dropped");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void countInterruptedWhileBlocked() throws Exception {
+        asyncObserver = new AsyncObserver(slowObserver, 1, OverflowPolicy.BLOCK);
+        block();
+        asyncObserver.update(null, Integer.valueOf(0));
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<?> notifier = executor.submit(() -> asyncObserver.update(null, Integer.valueOf(1)));
+            assertThrows(TimeoutException.class, () -> notifier.get(200, TimeUnit.MILLISECONDS));
+            notifier.cancel(true);
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(2, TimeUnit.SECONDS), "Notifier not interrupted");
+            assertEquals(1, asyncObserver.getDroppedCount(), "Interrupted event not counted");
+            assertEquals(1, asyncObserver.getQueueSize(), "Interrupted event queued");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void coalescePerDevice() throws Exception {
+        asyncObserver = new AsyncObserver(slowObserver, 10, OverflowPolicy.COALESCE);
+        block();
+        final String uuid = UUID.randomUUID().toString();
+        final Announce first = StressTestMessageReceiver.getAnnounce(uuid, 15);
+        final Announce second = StressTestMessageReceiver.getAnnounce(uuid, 16);
+        final Announce third = StressTestMessageReceiver.getAnnounce(uuid, 17);
+        final Announce appearing = StressTestMessageReceiver.getAnnounce(UUID.randomUUID().toString(), 15);
+        final Announce returning = StressTestMessageReceiver.getAnnounce(UUID.randomUUID().toString(), 15);
+        final Announce returned = StressTestMessageReceiver.getAnnounce(returning.getParams().getDevice().getUuid(), 16);
+
+        asyncObserver.update(null, new NewDeviceEvent(first));
+        asyncObserver.update(null, new UpdateDeviceEvent(first, second));
+        asyncObserver.update(null, new UpdateDeviceEvent(second, third));
+        asyncObserver.update(null, new NewDeviceEvent(appearing));
+        asyncObserver.update(null, new LostDeviceEvent(appearing));
+        asyncObserver.update(null, new LostDeviceEvent(returning));
+        asyncObserver.update(null, new NewDeviceEvent(returned));
+        assertEquals(2, asyncObserver.getQueueSize(), "Events not coalesced");
+        assertEquals(5, asyncObserver.getCoalescedCount(), "Wrong number of coalesced events");
+
+        delivered = new CountDownLatch(2);
+        release.countDown();
+        assertTrue(delivered.await(2, TimeUnit.SECONDS), "Events not delivered");
+        assertTrue(events.get(0) instanceof NewDeviceEvent, "New device event not kept");
+        assertSame(third, ((NewDeviceEvent)events.get(0)).getAnnounce(), "Latest announce not delivered");
+        assertTrue(events.get(1) instanceof UpdateDeviceEvent, "Lost and new device not merged to update");
+        assertSame(returning, ((UpdateDeviceEvent)events.get(1)).getOldAnnounce(), "Wrong old announce");
+        assertSame(returned, ((UpdateDeviceEvent)events.get(1)).getNewAnnounce(), "Wrong new announce");
+        assertEquals(0, asyncObserver.getDroppedCount(), "Events dropped");
+    }
+
+    @Test
+    public void invalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new AsyncObserver(null, 1, OverflowPolicy.BLOCK));
+        assertThrows(IllegalArgumentException.class, () -> new AsyncObserver(slowObserver, 0, OverflowPolicy.BLOCK));
+        assertThrows(IllegalArgumentException.class, () -> new AsyncObserver(slowObserver, 1, null));
+    }
+
+    private void block() throws InterruptedException {
+        asyncObserver.update(null, BLOCKER);
+        assertTrue(entered.await(2, TimeUnit.SECONDS), "Observer not called");
+        assertFalse(asyncObserver.getQueueSize() > 0, "Event still queued");
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Java Scan, a library for scanning and configuring HBM devices.
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) Hottinger Baldwin Messtechnik GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.hbm.devices.scan.announce;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.InputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import com.hbm.devices.scan.Datagram;
+
+public class ByteAnnounceParserTest {
+
+    private static final Properties MESSAGES = new Properties();
+
+    @Test
+    public void parseCorrectMessage() {
+        final byte[] data = MESSAGES.getProperty("scan.announce.correctMessage").getBytes(StandardCharsets.UTF_8);
+        final Announce announce = new ByteAnnounceParser(false).parse(data, 0, data.length);
+        assertNotNull(announce, "Correct message not parsed directly");
+        assertEquals("0009E500123A", announce.getParams().getDevice().getUuid());
+        assertEquals(15, announce.getParams().getExpiration());
+        assertEquals("eth0", announce.getParams().getNetSettings().getInterface().getName());
+    }
+
+    @Test
+    public void fallbackOnUnexpectedInput() {
+        final ByteAnnounceParser parser = new ByteAnnounceParser(false);
+        final String escaped = MESSAGES.getProperty("scan.announce.correctMessage").replace("MX410", "MX\\u0034\\u0031\\u0030");
+        assertNull(parse(parser, escaped), "Escaped strings not parsed by Gson");
+        assertNull(parse(parser, MESSAGES.getProperty("scan.announce.version2")), "Unknown version not parsed by Gson");
+        assertNull(parse(parser, MESSAGES.getProperty("scan.announce.invalidJsonMessage")), "Invalid JSON not parsed by Gson");
+        assertNull(parse(parser, MESSAGES.getProperty("scan.announce.interfaceNameIsNumber")), "Wrong type not parsed by Gson");
+        assertNull(parse(parser, "{\"method\":\"announce\"} garbage"), "Trailing bytes not parsed by Gson");
+    }
+
+    @Test
+    public void sameResultAsGson() {
+        final ByteAnnounceParser parser = new ByteAnnounceParser(false);
+        for (final String name : MESSAGES.stringPropertyNames()) {
+            final String message = MESSAGES.getProperty(name);
+            final Announce direct = parse(parser, message);
+            if (direct == null) {
+                continue;
+            }
+            final Announce gson = parseWithGson(message);
+            if (gson == null) {
+                assertNull(validate(direct), "Direct parser accepted " + name);
+            } else {
+                assertEquals(describe(gson), describe(direct), "Different result for " + name);
+            }
+        }
+    }
+
+    @Test
+    public void jsonStringDecodedLazily() {
+        final String message = MESSAGES.getProperty("scan.announce.correctMessage");
+        final byte[] data = message.getBytes(StandardCharsets.UTF_8);
+        final List<Object> announces = new ArrayList<>();
+        final AnnounceDeserializer deserializer = new AnnounceDeserializer();
+        deserializer.setDirectByteParsing(true);
+        deserializer.addObserver((observable, arg) -> announces.add(arg));
+        deserializer.update(null, new Datagram(data, data.length));
+        assertEquals(1, announces.size());
+        assertEquals(message, ((Announce)announces.get(0)).getJSONString(), "JSON string differs from message");
+    }
+
+    private static Announce parse(ByteAnnounceParser parser, String message) {
+        final byte[] data = message.getBytes(StandardCharsets.UTF_8);
+        return parser.parse(data, 0, data.length);
+    }
+
+    private static Announce parseWithGson(String message) {
+        final List<Object> announces = new ArrayList<>();
+        final AnnounceDeserializer deserializer = new AnnounceDeserializer();
+        deserializer.addObserver((observable, arg) -> announces.add(arg));
+        deserializer.update(null, message);
+        return announces.isEmpty() ? null : (Announce)announces.get(0);
+    }
+
+    private static Announce validate(Announce announce) {
+        try {
+            announce.identifyCommunicationPath();
+            return announce.getParams().getExpiration() < 0 ? null : announce;
+        } catch (MissingDataException e) {
+            return null;
+        }
+    }
+
+    private static String describe(Announce announce) {
+        final AnnounceParams params = announce.getParams();
+        final StringBuilder builder = new StringBuilder();
+        builder.append(params.getApiVersion()).append('|').append(params.getExpiration());
+        final Device device = params.getDevice();
+        builder.append('|').append(device.getUuid()).append('|').append(device.getName())
+            .append('|').append(device.getType()).append('|').append(device.getLabel())
+            .append('|').append(device.getFamilyType()).append('|').append(device.getFirmwareVersion())
+            .append('|').append(device.getHardwareId()).append('|').append(device.isRouter());
+        if (params.getRouter() != null) {
+            builder.append("|router ").append(params.getRouter().getUuid());
+        }
+        final NetSettings settings = params.getNetSettings();
+        if (settings.getDefaultGateway() != null) {
+            builder.append("|gateway ").append(settings.getDefaultGateway().getIpv4Address())
+                .append(' ').append(settings.getDefaultGateway().getIpv6Address());
+        }
+        final Interface iface = settings.getInterface();
+        builder.append("|iface ").append(iface.getName()).append(' ').append(iface.getType())
+            .append(' ').append(iface.getDescription());
+        for (final IPEntry entry : iface.getIPList()) {
+            builder.append(' ').append(entry.getAddress()).append('/').append(entry.getPrefix());
+        }
+        for (final ServiceEntry service : params.getServices()) {
+            builder.append("|service ").append(service.getType()).append(':').append(service.getPort());
+        }
+        return builder.toString();
+    }
+
+    static {
+        try (final InputStream is = ByteAnnounceParserTest.class.getResourceAsStream("/fakemessages.properties")) {
+            MESSAGES.load(is);
+        } catch (IOException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+}
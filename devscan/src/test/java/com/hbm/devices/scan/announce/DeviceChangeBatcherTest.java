@@ -0,0 +1,161 @@
+/*
+ * Java Scan, a library for scanning and configuring HBM devices.
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) Hottinger Baldwin Messtechnik GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.hbm.devices.scan.announce;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.hbm.devices.scan.StressTestMessageReceiver;
+
+public class DeviceChangeBatcherTest {
+
+    private BlockingQueue<DeviceChangeBatch> batches;
+    private DeviceChangeBatcher batcher;
+
+    @BeforeEach
+    public void setUp() {
+        batches = new LinkedBlockingQueue<>();
+        batcher = new DeviceChangeBatcher(1000);
+        batcher.addObserver((observable, arg) -> batches.add((DeviceChangeBatch) arg));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        batcher.close();
+    }
+
+    @Test
+    public void updatesCollapseToLatest() throws Exception {
+        final String uuid = UUID.randomUUID().toString();
+        final Announce first = StressTestMessageReceiver.getAnnounce(uuid, 15);
+        final Announce second = StressTestMessageReceiver.getAnnounce(uuid, 16);
+        final Announce third = StressTestMessageReceiver.getAnnounce(uuid, 17);
+        batcher.update(null, new UpdateDeviceEvent(first, second));
+        batcher.update(null, new UpdateDeviceEvent(second, third));
+        batcher.flush();
+
+        final DeviceChangeBatch batch = batches.poll();
+        assertEquals(1, batch.size(), "Updates not collapsed");
+        final UpdateDeviceEvent event = batch.getUpdatedDevices().get(0);
+        assertSame(first, event.getOldAnnounce(), "Wrong old announce");
+        assertSame(third, event.getNewAnnounce(), "Wrong new announce");
+    }
+
+    @Test
+    public void newThenLostCancelsOut() throws Exception {
+        final Announce flapping = StressTestMessageReceiver.getAnnounce(UUID.randomUUID().toString(), 15);
+        final Announce stable = StressTestMessageReceiver.getAnnounce(UUID.randomUUID().toString(), 15);
+        batcher.update(null, new NewDeviceEvent(flapping));
+        batcher.update(null, new NewDeviceEvent(stable));
+        batcher.update(null, new LostDeviceEvent(flapping));
+        batcher.flush();
+
+        final DeviceChangeBatch batch = batches.poll();
+        assertEquals(1, batch.size(), "Flapping device not cancelled out");
+        assertSame(stable, batch.getNewDevices().get(0).getAnnounce(), "Wrong device in batch");
+        assertTrue(batch.getLostDevices().isEmpty(), "Lost device in batch");
+    }
+
+    @Test
+    public void lostThenNewBecomesUpdate() throws Exception {
+        final String uuid = UUID.randomUUID().toString();
+        final Announce before = StressTestMessageReceiver.getAnnounce(uuid, 15);
+        final Announce after = StressTestMessageReceiver.getAnnounce(uuid, 16);
+        batcher.update(null, new LostDeviceEvent(before));
+        batcher.update(null, new NewDeviceEvent(after));
+        batcher.flush();
+
+        final DeviceChangeBatch batch = batches.poll();
+        assertEquals(1, batch.size(), "Wrong number of events");
+        assertSame(after, batch.getUpdatedDevices().get(0).getNewAnnounce(), "Not notified as update");
+    }
+
+    @Test
+    public void eventsOrderedByFirstChange() throws Exception {
+        final String uuid = UUID.randomUUID().toString();
+        final Announce first = StressTestMessageReceiver.getAnnounce(uuid, 15);
+        final Announce second = StressTestMessageReceiver.getAnnounce(uuid, 16);
+        final Announce other = StressTestMessageReceiver.getAnnounce(UUID.randomUUID().toString(), 15);
+        batcher.update(null, new NewDeviceEvent(first));
+        batcher.update(null, new NewDeviceEvent(other));
+        batcher.update(null, new UpdateDeviceEvent(first, second));
+        batcher.flush();
+
+        final List<Object> events = batches.poll().getEvents();
+        assertEquals(2, events.size(), "Wrong number of events");
+        assertSame(second, ((NewDeviceEvent) events.get(0)).getAnnounce(), "Update not merged into new device");
+        assertSame(other, ((NewDeviceEvent) events.get(1)).getAnnounce(), "Events out of order");
+        assertThrows(UnsupportedOperationException.class, () -> events.clear(), "Batch not immutable");
+    }
+
+    @Test
+    public void emptyWindowNotNotified() {
+        batcher.flush();
+        batcher.update(null, "no device event");
+        batcher.flush();
+        assertTrue(batches.isEmpty(), "Empty batch notified");
+    }
+
+    @Test
+    public void batchNotifiedAtEndOfWindow() throws Exception {
+        batcher.close();
+        batcher = new DeviceChangeBatcher(50);
+        batcher.addObserver((observable, arg) -> batches.add((DeviceChangeBatch) arg));
+        final Announce announce = StressTestMessageReceiver.getAnnounce(UUID.randomUUID().toString(), 15);
+        batcher.update(null, new NewDeviceEvent(announce));
+
+        final DeviceChangeBatch batch = batches.poll(2, TimeUnit.SECONDS);
+        assertEquals(1, batch.size(), "Batch not notified by window");
+        Thread.sleep(150);
+        assertTrue(batches.isEmpty(), "Empty window notified");
+    }
+
+    @Test
+    public void pendingChangesNotifiedOnClose() throws Exception {
+        batcher.update(null, new NewDeviceEvent(StressTestMessageReceiver.getAnnounce(UUID.randomUUID().toString(), 15)));
+        batcher.close();
+        assertEquals(1, batches.size(), "Pending changes not notified on close");
+    }
+
+    @Test
+    public void illegalWindow() {
+        assertThrows(IllegalArgumentException.class, () -> new DeviceChangeBatcher(0), "Window of 0 ms accepted");
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Java Scan, a library for scanning and configuring HBM devices.
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) Hottinger Baldwin Messtechnik GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.hbm.devices.scan.announce;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.hbm.devices.scan.StressTestMessageReceiver;
+
+public class DeviceMonitorConcurrencyTest {
+
+    @Test
+    public void slowObserverDoesNotBlockOtherThreads() throws Exception {
+        final DeviceMonitor monitor = new DeviceMonitor();
+        final CountDownLatch observerEntered = new CountDownLatch(1);
+        final CountDownLatch releaseObserver = new CountDownLatch(1);
+        final List<Object> events = Collections.synchronizedList(new ArrayList<>());
+        monitor.addObserver((observable, arg) -> {
+            events.add(arg);
+            observerEntered.countDown();
+            try {
+                releaseObserver.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Announce slow = StressTestMessageReceiver.getAnnounce(UUID.randomUUID().toString(), 15);
+            final Future<?> blocked = executor.submit(() -> monitor.update(null, slow));
+            assertTrue(observerEntered.await(2, TimeUnit.SECONDS), "Observer not called");
+
+            final Announce fast = StressTestMessageReceiver.getAnnounce(UUID.randomUUID().toString(), 15);
+            final Future<?> other = executor.submit(() -> monitor.update(null, fast));
+            other.get(2, TimeUnit.SECONDS);
+            assertEquals(1, events.size(), "Event notified while observer still busy");
+
+            releaseObserver.countDown();
+            blocked.get(2, TimeUnit.SECONDS);
+            assertEquals(2, events.size(), "Queued event not notified");
+            assertTrue(events.get(1) instanceof NewDeviceEvent, "Wrong event notified");
+        } finally {
+            executor.shutdownNow();
+            monitor.close();
+        }
+    }
+
+    @Test
+    public void eventsOrderedPerDevice() throws Exception {
+        final int devices = 50;
+        final int threads = 4;
+        final int rounds = 50;
+        final List<Announce> first = new ArrayList<>();
+        final List<Announce> second = new ArrayList<>();
+        for (int i = 0; i < devices; i++) {
+            final String uuid = UUID.randomUUID().toString();
+            first.add(StressTestMessageReceiver.getAnnounce(uuid, 15));
+            second.add(StressTestMessageReceiver.getAnnounce(uuid, 16));
+        }
+
+        final DeviceMonitor monitor = new DeviceMonitor();
+        final AtomicInteger concurrentCalls = new AtomicInteger();
+        final AtomicInteger maxConcurrentCalls = new AtomicInteger();
+        final Map<String, List<Object>> eventsPerDevice = new HashMap<>();
+        monitor.addObserver((observable, arg) -> {
+            maxConcurrentCalls.accumulateAndGet(concurrentCalls.incrementAndGet(), Math::max);
+            final Announce announce = arg instanceof UpdateDeviceEvent
+                ? ((UpdateDeviceEvent)arg).getNewAnnounce() : ((NewDeviceEvent)arg).getAnnounce();
+            synchronized (eventsPerDevice) {
+                eventsPerDevice.computeIfAbsent(announce.getPath(), path -> new ArrayList<>()).add(arg);
+            }
+            concurrentCalls.decrementAndGet();
+        });
+
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                final int offset = t;
+                futures.add(executor.submit(() -> {
+                    for (int round = 0; round < rounds; round++) {
+                        monitor.update(null, ((round + offset) % 2 == 0 ? first : second));
+                    }
+                }));
+            }
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+            monitor.close();
+        }
+
+        assertEquals(1, maxConcurrentCalls.get(), "Observer called concurrently");
+        assertEquals(devices, eventsPerDevice.size(), "Events of devices missing");
+        for (final List<Object> events : eventsPerDevice.values()) {
+            assertTrue(events.get(0) instanceof NewDeviceEvent, "First event is no new device event");
+            Announce previous = ((NewDeviceEvent)events.get(0)).getAnnounce();
+            for (final Object event : events.subList(1, events.size())) {
+                assertTrue(event instanceof UpdateDeviceEvent, "Device announced as new twice");
+                final UpdateDeviceEvent update = (UpdateDeviceEvent)event;
+                assertEquals(previous, update.getOldAnnounce(), "Update events out of order");
+                previous = update.getNewAnnounce();
+            }
+        }
+    }
+
+    /*
+     * The engines decide that a timeout expired before the task takes
+     * the lock of the device. A refresh in between must keep the device.
+     */
+    @Test
+    public void refreshAfterExpiryDecisionKeepsDevice() throws InterruptedException {
+        final ManualTimer timer = new ManualTimer();
+        final DeviceMonitor monitor = new DeviceMonitor(timer, false);
+        final List<Object> events = Collections.synchronizedList(new ArrayList<>());
+        monitor.addObserver((observable, arg) -> events.add(arg));
+        try {
+            final Announce announce = StressTestMessageReceiver.getAnnounce(UUID.randomUUID().toString(), 15);
+            monitor.update(null, announce);
+            monitor.update(null, announce);
+            final int reschedules = timer.reschedules;
+            timer.task.run();
+            assertEquals(1, events.size(), "Refreshed device expired");
+            assertTrue(events.get(0) instanceof NewDeviceEvent, "No new device event");
+            assertEquals(reschedules + 1, timer.reschedules, "Timeout not armed again");
+            assertTrue(timer.delayMillis > 0 && timer.delayMillis <= TimeUnit.SECONDS.toMillis(15) + 1,
+                "Timeout not armed for the rest of the expiration");
+
+            monitor.update(null, StressTestMessageReceiver.getAnnounce(announce.getParams().getDevice().getUuid(), 1));
+            Thread.sleep(1100);
+            timer.task.run();
+            assertEquals(3, events.size(), "Device not expired");
+            assertTrue(events.get(2) instanceof LostDeviceEvent, "No lost device event");
+        } finally {
+            monitor.close();
+        }
+    }
+
+    private static final class ManualTimer implements ExpirationTimer {
+        private Runnable task;
+        private int reschedules;
+        private long delayMillis;
+
+        @Override
+        public Timeout schedule(Runnable task, long delayMillis) {
+            this.task = task;
+            this.delayMillis = delayMillis;
+            return new Timeout() {
+                @Override
+                public void reschedule(long delayMillis) {
+                    reschedules++;
+                    ManualTimer.this.delayMillis = delayMillis;
+                }
+
+                @Override
+                public void cancel() {
+                }
+            };
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -30,6 +30,7 @@ package com.hbm.devices.scan.announce;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.BeforeEach;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -46,6 +47,7 @@ public class DeviceMonitorTest {
     private boolean updateDevice;
     private boolean lostDevice;
     private Object event;
+    private int newDeviceCount;
     private DeviceMonitor monitor;
 
     @BeforeEach
@@ -53,6 +55,7 @@ public class DeviceMonitorTest {
         this.newDevice = false;
         this.updateDevice = false;
         this.lostDevice = false;
+        this.newDeviceCount = 0;
         fsmmr = new FakeMessageReceiver();
         AnnounceDeserializer parser = new AnnounceDeserializer();
         fsmmr.addObserver(parser);
@@ -62,6 +65,7 @@ public class DeviceMonitorTest {
             public void update(Observable o, Object arg) {
                 if (arg instanceof NewDeviceEvent) {
                     newDevice = true;
+                    newDeviceCount++;
                 } else if (arg instanceof UpdateDeviceEvent) {
                     updateDevice = true;
                 } else if (arg instanceof LostDeviceEvent) {
@@ -99,6 +103,13 @@ public class DeviceMonitorTest {
         assertFalse(updateDevice || newDevice || lostDevice, "Update device event fired twice");
     }
 
+    @Test
+    public void newDeviceEventsFromBatch() {
+        fsmmr.emitCorrectMessageBatch();
+        assertEquals(2, newDeviceCount, "Not all new device events fired for batch");
+        assertFalse(updateDevice || lostDevice, "Unexpected event fired for batch");
+    }
+
     @Test
     public void testLostDevice() {
         fsmmr.emitSingleCorrectMessageShortExpire();
@@ -0,0 +1,223 @@
+/*
+ * Java Scan, a library for scanning and configuring HBM devices.
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) Hottinger Baldwin Messtechnik GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.hbm.devices.scan.announce;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import com.hbm.devices.scan.StressTestMessageReceiver;
+
+public class DeviceSetTest {
+
+    @Test
+    public void monitorUpdatesSetBeforeNotifying() throws Exception {
+        final DeviceMonitor monitor = new DeviceMonitor();
+        final List<String> failures = new ArrayList<>();
+        monitor.addObserver((observable, arg) -> {
+            final Announce announce = arg instanceof NewDeviceEvent
+                ? ((NewDeviceEvent) arg).getAnnounce() : ((UpdateDeviceEvent) arg).getNewAnnounce();
+            if (monitor.getDeviceSet().getAnnounce(announce.getPath()) != announce) {
+                failures.add(announce.getPath());
+            }
+        });
+        try {
+            final DeviceSet empty = monitor.getDeviceSet();
+            final String uuid = UUID.randomUUID().toString();
+            final Announce first = StressTestMessageReceiver.getAnnounce(uuid, 15);
+            final Announce second = StressTestMessageReceiver.getAnnounce(uuid, 16);
+            monitor.update(null, first);
+            monitor.update(null, StressTestMessageReceiver.getAnnounce(UUID.randomUUID().toString(), 15));
+            monitor.update(null, first);
+            monitor.update(null, second);
+
+            final DeviceSet set = monitor.getDeviceSet();
+            assertTrue(failures.isEmpty(), "Set not updated before notification");
+            assertEquals(0, empty.getVersion(), "Wrong version of empty set");
+            assertEquals(0, empty.size(), "Empty set changed");
+            assertEquals(3, set.getVersion(), "Wrong version");
+            assertEquals(2, set.size(), "Wrong number of devices");
+            assertEquals(2, set.getAnnounces().size(), "Wrong number of announces");
+            assertSame(second, set.getAnnounce(first.getPath()), "Update not applied");
+            assertTrue(set.contains(first.getPath()), "Device not contained");
+            assertFalse(set.contains("unknown"), "Unknown device contained");
+            assertSame(set, monitor.getDeviceSet(), "New set without change");
+        } finally {
+            monitor.close();
+        }
+    }
+
+    @Test
+    public void offHeapMonitorHasNoSet() {
+        final DeviceMonitor monitor = new DeviceMonitor(true);
+        try {
+            assertThrows(IllegalStateException.class, () -> monitor.getDeviceSet(), "Set for off-heap monitor");
+        } finally {
+            monitor.close();
+        }
+    }
+
+    @Test
+    public void changesSinceVersion() throws Exception {
+        final String uuid = UUID.randomUUID().toString();
+        final Announce first = StressTestMessageReceiver.getAnnounce(uuid, 15);
+        final Announce second = StressTestMessageReceiver.getAnnounce(uuid, 16);
+        final Announce flapping = StressTestMessageReceiver.getAnnounce(UUID.randomUUID().toString(), 15);
+        final Announce lost = StressTestMessageReceiver.getAnnounce(UUID.randomUUID().toString(), 15);
+
+        final DeviceSet start = new DeviceSet().apply(new NewDeviceEvent(lost));
+        final DeviceSet set = start.apply(new NewDeviceEvent(first))
+            .apply(new NewDeviceEvent(flapping))
+            .apply(new UpdateDeviceEvent(first, second))
+            .apply(new LostDeviceEvent(flapping))
+            .apply(new LostDeviceEvent(lost));
+
+        assertEquals(6, set.getVersion(), "Wrong version");
+        assertEquals(1, set.size(), "Wrong number of devices");
+        assertEquals(1, start.size(), "Older set changed");
+        final DeviceChangeBatch changes = set.getChangesSince(start.getVersion());
+        assertEquals(2, changes.size(), "Changes not merged");
+        assertSame(second, changes.getNewDevices().get(0).getAnnounce(), "Update not merged into new device");
+        assertSame(lost, changes.getLostDevices().get(0).getAnnounce(), "Lost device missing");
+        assertEquals(1, set.getChangesSince(0).size(), "Wrong changes since empty set");
+        assertTrue(set.getChangesSince(set.getVersion()).getEvents().isEmpty(), "Changes for current version");
+        assertThrows(IllegalArgumentException.class, () -> set.getChangesSince(7), "Future version accepted");
+        assertThrows(IllegalArgumentException.class, () -> set.getChangesSince(-1), "Negative version accepted");
+    }
+
+    @Test
+    public void oldChangesNotRetained() throws Exception {
+        final String uuid = UUID.randomUUID().toString();
+        final Announce first = StressTestMessageReceiver.getAnnounce(uuid, 15);
+        final Announce second = StressTestMessageReceiver.getAnnounce(uuid, 16);
+        DeviceSet set = new DeviceSet().apply(new NewDeviceEvent(first));
+        for (int i = 0; i < DeviceSet.RETAINED_CHANGES; i++) {
+            set = set.apply(i % 2 == 0 ? new UpdateDeviceEvent(first, second) : new UpdateDeviceEvent(second, first));
+        }
+        final long version = set.getVersion();
+        assertNull(set.getChangesSince(0), "Dropped changes returned");
+        assertEquals(1, set.getChangesSince(version - DeviceSet.RETAINED_CHANGES).size(),
+            "Oldest retained change not returned");
+        assertNull(set.getChangesSince(version - DeviceSet.RETAINED_CHANGES - 1), "Dropped change returned");
+    }
+
+    @Test
+    public void oldSetSharesBoundedLog() throws Exception {
+        final String uuid = UUID.randomUUID().toString();
+        final Announce first = StressTestMessageReceiver.getAnnounce(uuid, 15);
+        final Announce second = StressTestMessageReceiver.getAnnounce(uuid, 16);
+        final DeviceSet old = new DeviceSet().apply(new NewDeviceEvent(first));
+        assertEquals(1, old.getChangesSince(0).size(), "Change of old set not returned");
+        DeviceSet set = old;
+        for (int i = 0; i < DeviceSet.RETAINED_CHANGES; i++) {
+            set = set.apply(i % 2 == 0 ? new UpdateDeviceEvent(first, second) : new UpdateDeviceEvent(second, first));
+        }
+        assertNull(old.getChangesSince(0), "Overwritten change returned by old set");
+        assertEquals(1, old.size(), "Devices of old set changed");
+        assertSame(first, old.getAnnounce(first.getPath()), "Announce of old set changed");
+    }
+
+    @Test
+    public void persistentMapMatchesHashMap() {
+        final Random random = new Random(4711);
+        final Map<CollidingKey, Integer> expected = new HashMap<>();
+        PersistentHashMap<CollidingKey, Integer> map = PersistentHashMap.empty();
+        final List<PersistentHashMap<CollidingKey, Integer>> versions = new ArrayList<>();
+        final List<Map<CollidingKey, Integer>> expectedVersions = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            final CollidingKey key = new CollidingKey(random.nextInt(2000), random.nextInt(8));
+            if (random.nextInt(3) == 0) {
+                expected.remove(key);
+                map = map.minus(key);
+            } else {
+                expected.put(key, i);
+                map = map.plus(key, i);
+            }
+            if (i % 1000 == 0) {
+                versions.add(map);
+                expectedVersions.add(new HashMap<>(expected));
+            }
+        }
+        versions.add(map);
+        expectedVersions.add(expected);
+
+        for (int v = 0; v < versions.size(); v++) {
+            final PersistentHashMap<CollidingKey, Integer> version = versions.get(v);
+            final Map<CollidingKey, Integer> reference = expectedVersions.get(v);
+            assertEquals(reference.size(), version.size(), "Wrong size");
+            final Map<CollidingKey, Integer> visited = new HashMap<>();
+            version.forEach(visited::put);
+            assertEquals(reference, visited, "Wrong entries");
+            for (int key = 0; key < 2000; key++) {
+                for (int variant = 0; variant < 8; variant++) {
+                    final CollidingKey probe = new CollidingKey(key, variant);
+                    assertEquals(reference.get(probe), version.get(probe), "Wrong value");
+                }
+            }
+        }
+    }
+
+    /*
+     * Keys of the same hash but different variants collide completely.
+     */
+    private static final class CollidingKey {
+        private final int hash;
+        private final int variant;
+
+        CollidingKey(int hash, int variant) {
+            this.hash = hash;
+            this.variant = variant;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof CollidingKey)) {
+                return false;
+            }
+            final CollidingKey key = (CollidingKey) other;
+            return key.hash == hash && key.variant == variant;
+        }
+    }
+}
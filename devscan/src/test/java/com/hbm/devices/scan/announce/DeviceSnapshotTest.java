@@ -0,0 +1,181 @@
+/*
+ * Java Scan, a library for scanning and configuring HBM devices.
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) Hottinger Baldwin Messtechnik GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.hbm.devices.scan.announce;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.BeforeEach;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import com.hbm.devices.scan.FakeMessageReceiver;
+
+public class DeviceSnapshotTest {
+
+    private FakeMessageReceiver receiver;
+    private AnnounceDeserializer parser;
+    private DeviceMonitor monitor;
+    private DeviceMonitor restarted;
+    private List<Object> events;
+
+    @BeforeEach
+    public void setUp() {
+        receiver = new FakeMessageReceiver();
+        parser = new AnnounceDeserializer();
+        receiver.addObserver(parser);
+        monitor = new DeviceMonitor();
+        parser.addObserver(monitor);
+        events = Collections.synchronizedList(new ArrayList<>());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        monitor.close();
+        if (restarted != null) {
+            restarted.close();
+        }
+    }
+
+    @Test
+    public void restoreDevices() throws IOException {
+        receiver.emitSingleCorrectMessage();
+        receiver.emitSingleCorrectMessageDifferentDevice();
+        final byte[] snapshot = snapshot(monitor);
+
+        final List<Announce> restoredAnnounces = new ArrayList<>();
+        assertEquals(2, restart(false, snapshot), "Not all devices restored");
+        for (final Object event : events) {
+            restoredAnnounces.add(((NewDeviceEvent)event).getAnnounce());
+        }
+        assertEquals(2, restoredAnnounces.size(), "No new device events for restored devices");
+
+        parser.deleteObservers();
+        parser.addObserver(restarted);
+        receiver.emitSingleCorrectMessage();
+        assertEquals(2, events.size(), "Event fired for confirmed device");
+        receiver.emitSingleCorrentMessageDifferentIP();
+        assertEquals(3, events.size(), "No update event for restored device");
+        assertTrue(restoredAnnounces.contains(((UpdateDeviceEvent)events.get(2)).getOldAnnounce()),
+            "Old announce is not the restored one");
+    }
+
+    @Test
+    public void restoreRemainingTimeToLive() throws IOException, InterruptedException {
+        receiver.emitSingleCorrectMessageShortExpire();
+        final byte[] snapshot = snapshot(monitor);
+
+        assertEquals(1, restart(false, snapshot), "Device not restored");
+        Thread.sleep(1500);
+        assertEquals(2, events.size(), "Restored device did not expire");
+        assertTrue(events.get(1) instanceof LostDeviceEvent, "No lost device event");
+
+        restarted.close();
+        assertEquals(0, restart(false, snapshot), "Expired device restored");
+        assertTrue(events.isEmpty(), "Event fired for expired device");
+    }
+
+    @Test
+    public void restoreOffHeap() throws IOException {
+        monitor.close();
+        monitor = new DeviceMonitor(true);
+        parser.deleteObservers();
+        parser.addObserver(monitor);
+        monitor.addObserver((observable, arg) -> events.add(arg));
+        receiver.emitSingleCorrectMessage();
+        final Announce announce = ((NewDeviceEvent)events.get(0)).getAnnounce();
+
+        assertEquals(1, restart(true, snapshot(monitor)), "Device not restored");
+        assertEquals(announce, ((NewDeviceEvent)events.get(0)).getAnnounce(), "Restored announce differs");
+    }
+
+    @Test
+    public void rejectInvalidSnapshot() throws IOException {
+        restarted = new DeviceMonitor();
+        assertThrows(IOException.class, () -> restarted.readSnapshot(new ByteArrayInputStream(new byte[] {1, 2, 3, 4})));
+
+        receiver.emitSingleCorrectMessage();
+        final byte[] snapshot = snapshot(monitor);
+        final byte[] truncated = new byte[snapshot.length - 10];
+        System.arraycopy(snapshot, 0, truncated, 0, truncated.length);
+        assertThrows(IOException.class, () -> restarted.readSnapshot(new ByteArrayInputStream(truncated)));
+    }
+
+    @Test
+    public void skipRejectedAnnounces() throws IOException {
+        final Properties messages = new Properties();
+        try (final InputStream is = DeviceSnapshotTest.class.getResourceAsStream("/fakemessages.properties")) {
+            messages.load(is);
+        }
+        final String valid = messages.getProperty("scan.announce.correctMessage");
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(0x48424d44);
+        data.writeInt(1);
+        data.writeInt(3);
+        final long now = System.currentTimeMillis();
+        for (final String message : new String[] {
+            "{\"jsonrpc\":", messages.getProperty("scan.announce.version2"), valid}) {
+            final byte[] payload = message.getBytes(StandardCharsets.UTF_8);
+            data.writeLong(now);
+            data.writeLong(now + 10000);
+            data.writeInt(payload.length);
+            data.write(payload);
+        }
+        data.flush();
+
+        assertEquals(1, restart(false, out.toByteArray()), "Rejected announces restored");
+        assertEquals(1, events.size(), "Restored device not notified");
+        assertEquals(valid, ((NewDeviceEvent)events.get(0)).getAnnounce().getJSONString(), "Wrong device restored");
+    }
+
+    private static byte[] snapshot(DeviceMonitor monitor) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        monitor.writeSnapshot(out);
+        return out.toByteArray();
+    }
+
+    private int restart(boolean offHeap, byte[] snapshot) throws IOException {
+        events.clear();
+        restarted = new DeviceMonitor(offHeap);
+        restarted.addObserver((observable, arg) -> events.add(arg));
+        return restarted.readSnapshot(new ByteArrayInputStream(snapshot));
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Java Scan, a library for scanning and configuring HBM devices.
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) Hottinger Baldwin Messtechnik GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.hbm.devices.scan.announce;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.hbm.devices.scan.FakeMessageReceiver;
+
+public class ExpirationEngineTest {
+
+    private static final int DEVICES = 1000;
+    private static final int ROUNDS = 20;
+
+    @Test
+    public void timeoutExpires() throws InterruptedException {
+        for (final ExpirationEngine engine : ExpirationEngine.values()) {
+            final ExpirationTimer timer = engine.createTimer();
+            final CountDownLatch latch = new CountDownLatch(1);
+            final AtomicLong expired = new AtomicLong();
+            final long start = System.nanoTime();
+            timer.schedule(() -> {
+                expired.set(System.nanoTime());
+                latch.countDown();
+            }, 200);
+            assertTrue(latch.await(2, TimeUnit.SECONDS), engine + ": timeout did not expire");
+            assertTrue(expired.get() - start >= TimeUnit.MILLISECONDS.toNanos(200), engine + ": timeout expired early");
+            timer.close();
+        }
+    }
+
+    @Test
+    public void rescheduleAndCancel() throws InterruptedException {
+        for (final ExpirationEngine engine : ExpirationEngine.values()) {
+            final ExpirationTimer timer = engine.createTimer();
+            final CountDownLatch rescheduled = new CountDownLatch(1);
+            final CountDownLatch cancelled = new CountDownLatch(1);
+            final ExpirationTimer.Timeout timeout = timer.schedule(rescheduled::countDown, 200);
+            timer.schedule(cancelled::countDown, 200).cancel();
+            Thread.sleep(100);
+            timeout.reschedule(600);
+
+            assertFalse(rescheduled.await(400, TimeUnit.MILLISECONDS), engine + ": rescheduled timeout expired early");
+            assertTrue(rescheduled.await(2, TimeUnit.SECONDS), engine + ": rescheduled timeout did not expire");
+            assertEquals(1, cancelled.getCount(), engine + ": cancelled timeout expired");
+            timer.close();
+            assertThrows(RejectedExecutionException.class, () -> timeout.reschedule(100),
+                engine + ": timeout rescheduled after close");
+        }
+    }
+
+    @Test
+    public void wheelTurnsSeveralRounds() throws InterruptedException {
+        final TimingWheel wheel = new TimingWheel(10, 4);
+        final CountDownLatch latch = new CountDownLatch(1);
+        final long start = System.nanoTime();
+        wheel.schedule(latch::countDown, 150);
+        assertTrue(latch.await(2, TimeUnit.SECONDS), "Timeout did not expire");
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(150), "Timeout expired early");
+        wheel.close();
+    }
+
+    @Test
+    public void sweeperOnlyRecordsRefreshes() throws InterruptedException {
+        final ExpirationSweeper sweeper = new ExpirationSweeper(10);
+        final CountDownLatch latch = new CountDownLatch(1);
+        final ExpirationTimer.Timeout timeout = sweeper.schedule(latch::countDown, 100);
+        for (int i = 0; i < 10; i++) {
+            Thread.sleep(50);
+            timeout.reschedule(100);
+            assertEquals(1, sweeper.getQueueSize(), "Refresh queued timeout again");
+        }
+        assertEquals(1, latch.getCount(), "Refreshed timeout expired");
+        assertTrue(latch.await(2, TimeUnit.SECONDS), "Timeout did not expire");
+        assertEquals(0, sweeper.getQueueSize(), "Expired timeout still queued");
+        sweeper.close();
+    }
+
+    @Test
+    public void lostDevice() throws InterruptedException {
+        for (final ExpirationEngine engine : ExpirationEngine.values()) {
+            final FakeMessageReceiver receiver = new FakeMessageReceiver();
+            final AnnounceDeserializer parser = new AnnounceDeserializer();
+            receiver.addObserver(parser);
+            final DeviceMonitor monitor = new DeviceMonitor(false, engine, 20);
+            parser.addObserver(monitor);
+            final CountDownLatch lost = new CountDownLatch(1);
+            monitor.addObserver((observable, arg) -> {
+                if (arg instanceof LostDeviceEvent) {
+                    lost.countDown();
+                }
+            });
+            receiver.emitSingleCorrectMessageShortExpire();
+            assertTrue(lost.await(3, TimeUnit.SECONDS), engine + ": no lost device event fired");
+            monitor.close();
+        }
+        assertThrows(IllegalArgumentException.class, () -> new DeviceMonitor(false, null));
+        assertThrows(IllegalArgumentException.class, () -> new DeviceMonitor(false, ExpirationEngine.SWEEPER, 0));
+    }
+
+    /*
+     * Re-arms the timeouts of many devices several times, like a network
+     * of devices announcing every few seconds. No timeout must expire,
+     * and the sweeper must keep a single queue entry per device.
+     */
+    @Test
+    public void rearmKeepsTimeoutsPending() {
+        for (final ExpirationEngine engine : ExpirationEngine.values()) {
+            final ExpirationTimer timer = engine.createTimer();
+            final AtomicLong expired = new AtomicLong();
+            final List<ExpirationTimer.Timeout> timeouts = new ArrayList<>();
+            for (int i = 0; i < DEVICES; i++) {
+                timeouts.add(timer.schedule(expired::incrementAndGet, 60000));
+            }
+            rearm(timeouts);
+            if (timer instanceof ExpirationSweeper) {
+                assertEquals(DEVICES, ((ExpirationSweeper)timer).getQueueSize(), "Re-arms queued timeouts again");
+            }
+            assertEquals(0, expired.get(), engine + ": re-armed timeout expired");
+            timer.close();
+        }
+    }
+
+    private static void rearm(List<ExpirationTimer.Timeout> timeouts) {
+        for (int round = 0; round < ROUNDS; round++) {
+            for (final ExpirationTimer.Timeout timeout : timeouts) {
+                timeout.reschedule(60000 + round);
+            }
+        }
+    }
+}
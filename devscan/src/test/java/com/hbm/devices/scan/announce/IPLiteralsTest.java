@@ -0,0 +1,105 @@
+/*
+ * Java Scan, a library for scanning and configuring HBM devices.
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) Hottinger Baldwin Messtechnik GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.hbm.devices.scan.announce;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+public class IPLiteralsTest {
+
+    private static final String[] IPV4_LITERALS = {
+        "0.0.0.0", "255.255.255.255", "172.19.192.57", "10.0.0.1", "010.001.000.001"
+    };
+
+    private static final String[] IPV6_LITERALS = {
+        "::", "::1", "1::", "fe80::209:e5ff:fe00:123a", "FE80::209:E5FF:FE00:123A",
+        "2001:db8:0:0:1:0:0:1", "2001:db8::1:0:0:1", "1:2:3:4:5:6:7:8", "1:2:3:4:5:6:7::",
+        "::2:3:4:5:6:7:8", "::1.2.3.4", "::ffff:1.2.3.4", "1:2:3:4:5:6:1.2.3.4", "1:2:3::255.255.255.255"
+    };
+
+    private static final String[] NO_LITERALS = {
+        "", "1.2.3", "1.2.3.4.5", "256.1.1.1", "1..2.3", ".1.2.3", "1.2.3.", "1.2.3.4 ", "0001.1.1.1",
+        ":", ":::", "1:::2", "1::2::3", ":1:2:3:4:5:6:7", "1:2:3:4:5:6:7:8:", "1:2:3:4:5:6:7:8:9",
+        "1:2:3:4:5:6:7", "12345::", "::g", "::1.2.3", "::1.2.3.4:5", "1:2:3:4:5:6:7:1.2.3.4",
+        "1:2:3:4:5:6:7:8::", "fe80::1%eth0", "[::1]", "localhost", "١.2.3.4"
+    };
+
+    @Test
+    public void parseLiterals() throws UnknownHostException {
+        for (final String literal : IPV4_LITERALS) {
+            assertTrue(IPLiterals.parseIPv4(literal, 0, literal.length()) >= 0, literal);
+            assertEquals(InetAddress.getByName(literal), IPEntry.fromIPv6(literal, 0).getAddress(), literal);
+        }
+        for (final String literal : IPV6_LITERALS) {
+            assertTrue(IPLiterals.parseIPv6(literal, IPEntry.fromIPv6("::", 0)), literal);
+            assertEquals(InetAddress.getByName(literal), IPEntry.fromIPv6(literal, 0).getAddress(), literal);
+        }
+    }
+
+    @Test
+    public void rejectNonLiterals() throws UnknownHostException {
+        for (final String text : NO_LITERALS) {
+            assertEquals(-1, IPLiterals.parseIPv4(text, 0, text.length()), text);
+            assertFalse(IPLiterals.parseIPv6(text, IPEntry.fromIPv6("::", 0)), text);
+        }
+    }
+
+    @Test
+    public void mappedAddressIsIPv4() throws UnknownHostException {
+        final IPEntry entry = IPEntry.fromIPv6("::ffff:172.19.192.57", 64);
+        assertTrue(entry.isIPv4(), "Mapped address not stored as IPv4");
+        assertEquals(0xac13c039, entry.getIPv4());
+        assertEquals(64, entry.getPrefix());
+    }
+
+    @Test
+    public void netmaskToPrefix() throws UnknownHostException {
+        assertEquals(16, IPEntry.fromIPv4("172.19.192.57", "255.255.0.0").getPrefix());
+        assertEquals(0, IPEntry.fromIPv4("172.19.192.57", "0.0.0.0").getPrefix());
+        assertEquals(32, IPEntry.fromIPv4("172.19.192.57", "255.255.255.255").getPrefix());
+        assertEquals(8, IPEntry.fromIPv4("172.19.192.57", "::ff00:0").getPrefix());
+        assertThrows(UnknownHostException.class, () -> IPEntry.fromIPv4("172.19.192.57", "256.0.0.0"));
+    }
+
+    @Test
+    public void namesNotResolved() throws UnknownHostException {
+        assertThrows(UnknownHostException.class, () -> IPEntry.fromIPv4("localhost", "255.0.0.0"));
+        assertThrows(UnknownHostException.class, () -> IPEntry.fromIPv4("127.0.0.1", "localhost"));
+        assertThrows(UnknownHostException.class, () -> IPEntry.fromIPv6("localhost", 64));
+        assertThrows(UnknownHostException.class, () -> IPEntry.fromIPv6("[::1]", 64));
+        assertEquals(InetAddress.getByName("fe80::1"), IPEntry.fromIPv6("fe80::1%eth0", 64).getAddress(),
+            "Zone id not dropped");
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Java Scan, a library for scanning and configuring HBM devices.
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) Hottinger Baldwin Messtechnik GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.hbm.devices.scan.announce;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.InputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import com.hbm.devices.scan.Datagram;
+
+public class LazyAnnounceTest {
+
+    private static final Properties MESSAGES = new Properties();
+
+    @Test
+    public void deferSectionsWithGson() {
+        final String message = MESSAGES.getProperty("scan.announce.correctMessage");
+        final Announce lazy = parse(message, false, true);
+        checkDeferred(lazy, parse(message, false, false));
+    }
+
+    @Test
+    public void deferSectionsWithDirectParser() {
+        final String message = MESSAGES.getProperty("scan.announce.correctMessage");
+        final Announce lazy = parse(message, true, true);
+        checkDeferred(lazy, parse(message, true, false));
+    }
+
+    @Test
+    public void rejectWithoutIdentity() {
+        assertNull(parse(MESSAGES.getProperty("scan.announce.missingDeviceUuidMessage"), false, true),
+            "Announce without device UUID accepted");
+        assertNull(parse(MESSAGES.getProperty("scan.announce.noInterfaceNameMessage"), false, true),
+            "Announce without interface name accepted");
+        assertNull(parse(MESSAGES.getProperty("scan.announce.interfaceTypeIsNumber"), false, true),
+            "Announce with invalid interface type accepted");
+    }
+
+    @Test
+    public void illegalAddressLeavesSectionsEmpty() {
+        final Announce announce = parse(MESSAGES.getProperty("scan.announce.illegalIPv4"), false, true);
+        assertNotNull(announce, "Illegal address checked by lazy parse");
+        assertTrue(announce.getParams().getNetSettings().getInterface().getIPList().isEmpty(), "IP list not empty");
+        assertTrue(announce.getParams().getServices().isEmpty(), "Services not empty");
+    }
+
+    private static void checkDeferred(Announce lazy, Announce eager) {
+        assertNotNull(lazy, "Lazy announce not parsed");
+        assertNotNull(lazy.params.lazySource, "Announce not lazy");
+        assertNull(lazy.params.netSettings.iface.ipList, "IP entries parsed eagerly");
+        assertNull(lazy.params.services, "Services parsed eagerly");
+        assertEquals(eager.getPath(), lazy.getPath(), "Communication paths differ");
+        assertEquals(eager.getParams().getExpiration(), lazy.getParams().getExpiration());
+
+        assertEquals(7, lazy.getParams().getServices().size(), "Services not materialized");
+        assertNull(lazy.params.lazySource, "Announce still lazy after materialization");
+        final List<IPEntry> lazyEntries = lazy.getParams().getNetSettings().getInterface().getIPList();
+        final List<IPEntry> eagerEntries = eager.getParams().getNetSettings().getInterface().getIPList();
+        assertEquals(eagerEntries.size(), lazyEntries.size(), "IP entries not materialized");
+        for (int i = 0; i < eagerEntries.size(); i++) {
+            assertEquals(eagerEntries.get(i).getAddress(), lazyEntries.get(i).getAddress());
+            assertEquals(eagerEntries.get(i).getPrefix(), lazyEntries.get(i).getPrefix());
+        }
+        assertEquals(eager.getParams().getNetSettings().getDefaultGateway().getIpv4Address(),
+            lazy.getParams().getNetSettings().getDefaultGateway().getIpv4Address());
+    }
+
+    private static Announce parse(String message, boolean direct, boolean lazy) {
+        final List<Object> announces = new ArrayList<>();
+        final AnnounceDeserializer deserializer = new AnnounceDeserializer();
+        deserializer.setDirectByteParsing(direct);
+        deserializer.setLazyParsing(lazy);
+        deserializer.addObserver((observable, arg) -> announces.add(arg));
+        if (direct) {
+            final byte[] data = message.getBytes(StandardCharsets.UTF_8);
+            deserializer.update(null, new Datagram(data, data.length));
+        } else {
+            deserializer.update(null, message);
+        }
+        return announces.isEmpty() ? null : (Announce)announces.get(0);
+    }
+
+    static {
+        try (final InputStream is = LazyAnnounceTest.class.getResourceAsStream("/fakemessages.properties")) {
+            MESSAGES.load(is);
+        } catch (IOException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Java Scan, a library for scanning and configuring HBM devices.
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) Hottinger Baldwin Messtechnik GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.hbm.devices.scan.announce;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.InputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import com.hbm.devices.scan.Datagram;
+import com.hbm.devices.scan.ScanConstants;
+
+public class NegativeCacheTest {
+
+    private static final Properties MESSAGES = new Properties();
+    private static final Logger LOGGER = Logger.getLogger(ScanConstants.LOGGER_NAME);
+
+    private AnnounceDeserializer deserializer;
+    private List<Object> announces;
+    private List<LogRecord> records;
+    private Handler handler;
+
+    @BeforeEach
+    public void setUp() {
+        deserializer = new AnnounceDeserializer();
+        announces = new ArrayList<>();
+        deserializer.addObserver((observable, arg) -> announces.add(arg));
+        records = new ArrayList<>();
+        handler = new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                records.add(record);
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        LOGGER.addHandler(handler);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        LOGGER.removeHandler(handler);
+    }
+
+    @Test
+    public void countReasons() {
+        emit("scan.announce.invalidJsonMessage");
+        emit("scan.announce.notAnnounceMessage");
+        emit("scan.announce.version2");
+        emit("scan.announce.missingVersion");
+        emit("scan.announce.missingDeviceUuidMessage");
+        emit("scan.announce.correctMessageNegativeExpire");
+        emit("scan.announce.correctMessage");
+
+        assertEquals(1, announces.size(), "Invalid announces notified");
+        assertEquals(1, deserializer.getRejectionCount(RejectionReason.MALFORMED_JSON));
+        assertEquals(1, deserializer.getRejectionCount(RejectionReason.NOT_AN_ANNOUNCE));
+        assertEquals(2, deserializer.getRejectionCount(RejectionReason.UNSUPPORTED_API_VERSION));
+        assertEquals(1, deserializer.getRejectionCount(RejectionReason.MISSING_DATA));
+        assertEquals(1, deserializer.getRejectionCount(RejectionReason.INVALID_EXPIRATION));
+        assertEquals(6, deserializer.getNegativeCache().size(), "Rejected messages not cached");
+    }
+
+    @Test
+    public void rejectRepeatedMessages() {
+        for (int i = 0; i < 10; i++) {
+            emit("scan.announce.missingDeviceUuidMessage");
+            final byte[] data = MESSAGES.getProperty("scan.announce.version2").getBytes(StandardCharsets.UTF_8);
+            deserializer.update(null, new Datagram(data, data.length));
+        }
+        assertTrue(announces.isEmpty(), "Invalid announces notified");
+        assertEquals(10, deserializer.getRejectionCount(RejectionReason.MISSING_DATA));
+        assertEquals(10, deserializer.getRejectionCount(RejectionReason.UNSUPPORTED_API_VERSION));
+        assertEquals(2, deserializer.getNegativeCache().size(), "Messages cached more than once");
+        assertEquals(2, records.size(), "Repeated rejections logged");
+    }
+
+    @Test
+    public void logSuppressedRejections() {
+        final NegativeCache cache = new NegativeCache(10, 0);
+        final RejectedAnnounceException exception = new RejectedAnnounceException(RejectionReason.MISSING_DATA, "missing");
+        cache.reject(key(1), exception);
+        assertTrue(cache.isRejected(key(1)), "Message not rejected");
+        assertEquals(2, records.size(), "Rejection not logged without interval");
+
+        records.clear();
+        final NegativeCache limited = new NegativeCache(10, Long.MAX_VALUE);
+        for (int i = 0; i < 5; i++) {
+            limited.reject(key(i), exception);
+        }
+        assertEquals(1, records.size(), "Rejections not rate limited");
+        assertEquals(5, limited.getCount(RejectionReason.MISSING_DATA));
+        assertEquals(0, limited.getCount(RejectionReason.MALFORMED_JSON));
+    }
+
+    @Test
+    public void boundedCache() {
+        final NegativeCache cache = new NegativeCache(3, Long.MAX_VALUE);
+        for (int i = 0; i < 10; i++) {
+            cache.reject(key(i), new RejectedAnnounceException(RejectionReason.MALFORMED_JSON, "malformed"));
+        }
+        assertEquals(3, cache.size(), "Negative cache not bounded");
+        assertTrue(cache.isRejected(key(9)), "Latest message evicted");
+    }
+
+    private static MessageKey key(int i) {
+        final byte[] data = Integer.toString(i).getBytes(StandardCharsets.UTF_8);
+        return MessageKey.probe(data, 0, data.length);
+    }
+
+    private void emit(String key) {
+        deserializer.update(null, MESSAGES.getProperty(key));
+    }
+
+    static {
+        try (final InputStream is = NegativeCacheTest.class.getResourceAsStream("/fakemessages.properties")) {
+            MESSAGES.load(is);
+        } catch (IOException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+}
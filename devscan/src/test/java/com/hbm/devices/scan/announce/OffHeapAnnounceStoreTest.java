@@ -0,0 +1,138 @@
+/*
+ * Java Scan, a library for scanning and configuring HBM devices.
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) Hottinger Baldwin Messtechnik GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.hbm.devices.scan.announce;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import com.hbm.devices.scan.FakeMessageReceiver;
+import com.hbm.devices.scan.StressTestMessageReceiver;
+
+public class OffHeapAnnounceStoreTest {
+
+    @Test
+    public void storeAndMaterialize() {
+        final OffHeapAnnounceStore store = new OffHeapAnnounceStore();
+        final Announce announce = StressTestMessageReceiver.getAnnounce(UUID.randomUUID().toString(), 15);
+        final long handle = store.put(announce);
+
+        final Announce stored = store.get(handle);
+        assertEquals(announce, stored, "Materialized announce differs");
+        assertEquals(announce.getPath(), stored.getPath(), "Communication path differs");
+        assertTrue(store.matches(handle, announce), "Stored payload does not match");
+        assertFalse(store.matches(handle, StressTestMessageReceiver.getAnnounce(UUID.randomUUID().toString(), 15)), "Different payload matches");
+        assertEquals(OffHeapAnnounceStore.CHUNK_SIZE, store.getAllocatedBytes(), "Wrong number of allocated bytes");
+    }
+
+    @Test
+    public void reuseFreedRecords() {
+        final OffHeapAnnounceStore store = new OffHeapAnnounceStore();
+        final List<Long> handles = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            handles.add(store.put(StressTestMessageReceiver.getAnnounce(UUID.randomUUID().toString(), 15)));
+        }
+        final long allocated = store.getAllocatedBytes();
+        assertTrue(allocated > OffHeapAnnounceStore.CHUNK_SIZE, "Store did not grow");
+
+        for (final long handle : handles) {
+            store.free(handle);
+        }
+        assertEquals(0, store.getUsedBytes(), "Freed payloads still counted");
+        for (int i = 0; i < 2000; i++) {
+            store.put(StressTestMessageReceiver.getAnnounce(UUID.randomUUID().toString(), 15));
+        }
+        assertEquals(allocated, store.getAllocatedBytes(), "Freed records not reused");
+    }
+
+    @Test
+    public void storeLargeRecord() throws IOException, MissingDataException {
+        final OffHeapAnnounceStore store = new OffHeapAnnounceStore();
+        final StringBuilder padding = new StringBuilder();
+        while (padding.length() < OffHeapAnnounceStore.CHUNK_SIZE) {
+            padding.append("                ");
+        }
+        final String json = StressTestMessageReceiver.getAnnounceString(UUID.randomUUID().toString())
+            .replaceFirst("\\{", "{" + padding);
+        final Announce announce = AnnounceAdapter.parse(json);
+        announce.setJSONString(json);
+        announce.identifyCommunicationPath();
+
+        final long handle = store.put(announce);
+        assertEquals(announce, store.get(handle), "Materialized announce differs");
+        store.free(handle);
+        assertEquals(0, store.getAllocatedBytes(), "Dedicated chunk not released");
+    }
+
+    @Test
+    public void deviceMonitorOffHeap() throws InterruptedException {
+        final FakeMessageReceiver receiver = new FakeMessageReceiver();
+        final AnnounceDeserializer parser = new AnnounceDeserializer();
+        receiver.addObserver(parser);
+        final DeviceMonitor monitor = new DeviceMonitor(true);
+        parser.addObserver(monitor);
+        final List<Object> events = Collections.synchronizedList(new ArrayList<>());
+        monitor.addObserver((observable, arg) -> events.add(arg));
+
+        receiver.emitSingleCorrectMessage();
+        assertEquals(1, events.size(), "No new device event fired");
+        final Announce first = ((NewDeviceEvent)events.get(0)).getAnnounce();
+        assertTrue(monitor.getOffHeapBytes() > 0, "Announce not stored off heap");
+
+        receiver.emitSingleCorrectMessage();
+        assertEquals(1, events.size(), "Event fired for unchanged announce");
+
+        receiver.emitSingleCorrentMessageDifferentIP();
+        assertEquals(2, events.size(), "No update device event fired");
+        final UpdateDeviceEvent update = (UpdateDeviceEvent)events.get(1);
+        assertEquals(first, update.getOldAnnounce(), "Old announce not materialized from store");
+        assertNotEquals(first, update.getNewAnnounce(), "New announce equals old one");
+        monitor.close();
+
+        final DeviceMonitor expiringMonitor = new DeviceMonitor(true);
+        parser.deleteObservers();
+        parser.addObserver(expiringMonitor);
+        events.clear();
+        expiringMonitor.addObserver((observable, arg) -> events.add(arg));
+        receiver.emitSingleCorrectMessageShortExpire();
+        Thread.sleep(2000);
+        assertEquals(2, events.size(), "No lost device event fired");
+        assertEquals(((NewDeviceEvent)events.get(0)).getAnnounce(), ((LostDeviceEvent)events.get(1)).getAnnounce(),
+            "Lost announce not materialized from store");
+        expiringMonitor.close();
+    }
+}
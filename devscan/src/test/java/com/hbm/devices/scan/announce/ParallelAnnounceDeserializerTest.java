@@ -0,0 +1,144 @@
+/*
+ * Java Scan, a library for scanning and configuring HBM devices.
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) Hottinger Baldwin Messtechnik GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.hbm.devices.scan.announce;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.hbm.devices.scan.Datagram;
+import com.hbm.devices.scan.StressTestMessageReceiver;
+
+public class ParallelAnnounceDeserializerTest {
+
+    private static final int DEVICES = 200;
+    private static final int ROUNDS = 20;
+    private static final long TIMEOUT_MS = 20000;
+
+    @Test
+    public void parameters() {
+        assertThrows(IllegalArgumentException.class, () -> new ParallelAnnounceDeserializer(0, 10));
+        assertThrows(IllegalArgumentException.class, () -> new ParallelAnnounceDeserializer(2, 0));
+    }
+
+    @Test
+    public void shardByUuids() {
+        final String uuid = UUID.randomUUID().toString();
+        final String announce = StressTestMessageReceiver.getAnnounceString(uuid);
+        final String otherInterface = announce.replace("\"eth0\"", "\"eth1\"");
+        final String spaced = announce.replace("\"uuid\":\"", "\"uuid\" : \"");
+        assertEquals(ParallelAnnounceDeserializer.shardHash(announce), ParallelAnnounceDeserializer.shardHash(otherInterface));
+        assertEquals(ParallelAnnounceDeserializer.shardHash(announce), ParallelAnnounceDeserializer.shardHash(spaced));
+        final byte[] bytes = announce.getBytes(StandardCharsets.UTF_8);
+        assertEquals(ParallelAnnounceDeserializer.shardHash(announce), ParallelAnnounceDeserializer.shardHash(bytes, bytes.length));
+        assertTrue(ParallelAnnounceDeserializer.shardHash(announce)
+            != ParallelAnnounceDeserializer.shardHash(StressTestMessageReceiver.getAnnounceString(UUID.randomUUID().toString())));
+    }
+
+    @Test
+    public void keepOrderPerPath() throws InterruptedException {
+        checkOrder(false);
+    }
+
+    @Test
+    public void keepOrderPerPathInBatches() throws InterruptedException {
+        checkOrder(true);
+    }
+
+    private static void checkOrder(boolean batches) throws InterruptedException {
+        final List<String> uuids = new ArrayList<>();
+        for (int i = 0; i < DEVICES; i++) {
+            uuids.add(UUID.randomUUID().toString());
+        }
+        final Map<String, Integer> lastExpiration = new HashMap<>();
+        final AtomicInteger received = new AtomicInteger();
+        final AtomicInteger outOfOrder = new AtomicInteger();
+        final AtomicInteger concurrentCalls = new AtomicInteger();
+        final AtomicInteger active = new AtomicInteger();
+
+        try (final ParallelAnnounceDeserializer parser = new ParallelAnnounceDeserializer(4, DEVICES * ROUNDS)) {
+            parser.addObserver((observable, arg) -> {
+                if (active.incrementAndGet() > 1) {
+                    concurrentCalls.incrementAndGet();
+                }
+                final List<Object> announces = new ArrayList<>();
+                if (arg instanceof List) {
+                    announces.addAll((List<?>) arg);
+                } else {
+                    announces.add(arg);
+                }
+                for (final Object element : announces) {
+                    final Announce announce = (Announce) element;
+                    final Integer last = lastExpiration.put(announce.getPath(), announce.getParams().getExpiration());
+                    if (last != null && last > announce.getParams().getExpiration()) {
+                        outOfOrder.incrementAndGet();
+                    }
+                    received.incrementAndGet();
+                }
+                active.decrementAndGet();
+            });
+
+            for (int round = 1; round <= ROUNDS; round++) {
+                final List<Object> batch = new ArrayList<>();
+                for (final String uuid : uuids) {
+                    final byte[] data = StressTestMessageReceiver.getAnnounceString(uuid)
+                        .replace("\"expiration\":15", "\"expiration\":" + round).getBytes(StandardCharsets.UTF_8);
+                    final Datagram datagram = new Datagram(data, data.length);
+                    if (batches) {
+                        batch.add(datagram);
+                    } else {
+                        parser.update(null, datagram);
+                    }
+                }
+                if (batches) {
+                    parser.update(null, batch);
+                }
+            }
+
+            final long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+            while (received.get() < DEVICES * ROUNDS && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(0, parser.getOverflowCount(), "Messages dropped");
+        }
+        assertEquals(DEVICES * ROUNDS, received.get(), "Not all announces notified");
+        assertEquals(DEVICES, lastExpiration.size(), "Wrong number of paths");
+        assertEquals(0, outOfOrder.get(), "Announces of a path notified out of order");
+        assertEquals(0, concurrentCalls.get(), "Observers called concurrently");
+    }
+}
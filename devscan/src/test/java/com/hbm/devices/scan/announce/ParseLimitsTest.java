@@ -0,0 +1,203 @@
+/*
+ * Java Scan, a library for scanning and configuring HBM devices.
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) Hottinger Baldwin Messtechnik GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.hbm.devices.scan.announce;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.InputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import com.hbm.devices.scan.Datagram;
+
+public class ParseLimitsTest {
+
+    private static final String CORRECT_MESSAGE;
+    private static final String ILLEGAL_IPV4_MESSAGE;
+
+    @Test
+    public void parameters() {
+        assertThrows(IllegalArgumentException.class, () -> new ParseLimits(0, 16, 10, 10));
+        assertThrows(IllegalArgumentException.class, () -> new ParseLimits(100, ParseLimits.MIN_DEPTH - 1, 10, 10));
+        assertThrows(IllegalArgumentException.class, () -> new ParseLimits(100, 16, 0, 10));
+        assertThrows(IllegalArgumentException.class, () -> new ParseLimits(100, 16, 10, 0));
+        assertThrows(IllegalArgumentException.class, () -> new AnnounceDeserializer().setParseLimits(null));
+    }
+
+    @Test
+    public void acceptWithinLimits() {
+        final ParseLimits tight = new ParseLimits(CORRECT_MESSAGE.length(), ParseLimits.MIN_DEPTH, 7, 64);
+        assertEquals(4, accepted(CORRECT_MESSAGE, tight), "Announce within limits rejected");
+        assertEquals(4, accepted(CORRECT_MESSAGE, ParseLimits.DEFAULT), "Announce rejected by default limits");
+    }
+
+    @Test
+    public void rejectOversizedMessage() {
+        final ParseLimits limits = new ParseLimits(CORRECT_MESSAGE.length() - 1, 16, 256, 1024);
+        assertEquals(0, accepted(CORRECT_MESSAGE, limits), "Oversized message accepted");
+    }
+
+    @Test
+    public void payloadSizeCountsEncodedBytes() {
+        final String message = withParam("\"unknown\":\"\u00e4\u00f6\u00fc\"");
+        final int bytes = message.getBytes(StandardCharsets.UTF_8).length;
+        assertEquals(message.length() + 3, bytes, "Umlauts not encoded with two bytes");
+        assertEquals(0, accepted(message, new ParseLimits(message.length(), 16, 256, 1024)),
+            "Message accepted by its number of chars");
+        assertEquals(4, accepted(message, new ParseLimits(bytes, 16, 256, 1024)), "Message within limits rejected");
+    }
+
+    @Test
+    public void rejectDeepNesting() {
+        final StringBuilder nested = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            nested.append('[');
+        }
+        for (int i = 0; i < 100000; i++) {
+            nested.append(']');
+        }
+        final String message = withParam("\"nested\":" + nested);
+        final ParseLimits limits = new ParseLimits(message.length(), 16, 256, 1024);
+        assertEquals(0, accepted(message, limits), "Deeply nested message accepted");
+        assertEquals(4, accepted(withParam("\"nested\":[[[[[[[[]]]]]]]]"), ParseLimits.DEFAULT), "Nesting within limits rejected");
+    }
+
+    @Test
+    public void rejectLongArrays() {
+        final StringBuilder services = new StringBuilder("[");
+        for (int i = 0; i < 300; i++) {
+            services.append(i == 0 ? "" : ",").append("{\"port\":").append(i).append(",\"type\":\"s\"}");
+        }
+        services.append(']');
+        final String message = CORRECT_MESSAGE.replaceFirst("\"services\":\\[", "\"services\":" + services + ",\"old\":[");
+        assertEquals(0, accepted(message, new ParseLimits(100000, 16, 256, 1024)), "Long services array accepted");
+        assertEquals(4, accepted(message, new ParseLimits(100000, 16, 300, 1024)), "Array within limits rejected");
+
+        final String skipped = withParam("\"unknown\":" + services);
+        assertEquals(0, accepted(skipped, new ParseLimits(100000, 16, 256, 1024)), "Long unknown array accepted");
+    }
+
+    @Test
+    public void rejectLongStrings() {
+        final StringBuilder name = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            name.append('x');
+        }
+        assertEquals(0, accepted(withParam("\"unknown\":\"" + name + "\""), ParseLimits.DEFAULT), "Long string accepted");
+        assertEquals(0, accepted(withParam("\"" + name + "\":1"), ParseLimits.DEFAULT), "Long member name accepted");
+        assertEquals(4, accepted(withParam("\"unknown\":\"" + name + "\""), new ParseLimits(16384, 16, 256, 2000)),
+            "String within limits rejected");
+    }
+
+    @Test
+    public void changedLimitsApplyToKnownMessages() {
+        final StringBuilder name = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            name.append('x');
+        }
+        final String message = withParam("\"unknown\":\"" + name + "\"");
+        final List<Object> announces = new ArrayList<>();
+        final AnnounceDeserializer deserializer = new AnnounceDeserializer();
+        deserializer.addObserver((observable, arg) -> announces.add(arg));
+
+        deserializer.update(null, message);
+        assertTrue(announces.isEmpty(), "Long string accepted");
+        deserializer.setParseLimits(new ParseLimits(16384, 16, 256, 2000));
+        deserializer.update(null, message);
+        assertEquals(1, announces.size(), "Message still rejected after raising the limits");
+        deserializer.setParseLimits(ParseLimits.DEFAULT);
+        deserializer.update(null, message);
+        assertEquals(1, announces.size(), "Cached message accepted after tightening the limits");
+    }
+
+    @Test
+    public void changedParseModeAppliesToKnownMessages() {
+        final List<Object> announces = new ArrayList<>();
+        final AnnounceDeserializer deserializer = new AnnounceDeserializer();
+        deserializer.addObserver((observable, arg) -> announces.add(arg));
+
+        deserializer.update(null, ILLEGAL_IPV4_MESSAGE);
+        assertTrue(announces.isEmpty(), "Illegal address accepted");
+        deserializer.setLazyParsing(true);
+        deserializer.update(null, ILLEGAL_IPV4_MESSAGE);
+        assertEquals(1, announces.size(), "Message still rejected after enabling lazy parsing");
+        deserializer.setLazyParsing(false);
+        deserializer.update(null, ILLEGAL_IPV4_MESSAGE);
+        assertEquals(1, announces.size(), "Cached lazy announce accepted after disabling lazy parsing");
+    }
+
+    private static String withParam(String member) {
+        return CORRECT_MESSAGE.replaceFirst("\"params\":\\{", "\"params\":{" + member.replace("\\", "\\\\").replace("$", "\\$") + ",");
+    }
+
+    /*
+     * Parses the message with and without direct byte parsing, eager
+     * and lazy. Returns the number of accepted announces and checks
+     * rejections are counted as exceeded limits.
+     */
+    private static int accepted(String message, ParseLimits limits) {
+        int count = 0;
+        for (int mode = 0; mode < 4; mode++) {
+            final List<Object> announces = new ArrayList<>();
+            final AnnounceDeserializer deserializer = new AnnounceDeserializer();
+            deserializer.setParseLimits(limits);
+            deserializer.setDirectByteParsing((mode & 1) != 0);
+            deserializer.setLazyParsing((mode & 2) != 0);
+            deserializer.addObserver((observable, arg) -> announces.add(arg));
+            if ((mode & 1) != 0) {
+                final byte[] data = message.getBytes(StandardCharsets.UTF_8);
+                deserializer.update(null, new Datagram(data, data.length));
+            } else {
+                deserializer.update(null, message);
+            }
+            if (announces.isEmpty()) {
+                assertEquals(1, deserializer.getRejectionCount(RejectionReason.LIMIT_EXCEEDED), "Rejection not counted");
+            }
+            count += announces.size();
+        }
+        return count;
+    }
+
+    static {
+        try (final InputStream is = ParseLimitsTest.class.getResourceAsStream("/fakemessages.properties")) {
+            final Properties props = new Properties();
+            props.load(is);
+            CORRECT_MESSAGE = props.getProperty("scan.announce.correctMessage");
+            ILLEGAL_IPV4_MESSAGE = props.getProperty("scan.announce.illegalIPv4");
+        } catch (IOException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+}
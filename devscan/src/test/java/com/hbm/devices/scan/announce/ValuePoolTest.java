@@ -0,0 +1,124 @@
+/*
+ * Java Scan, a library for scanning and configuring HBM devices.
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) Hottinger Baldwin Messtechnik GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.hbm.devices.scan.announce;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import com.hbm.devices.scan.StressTestMessageReceiver;
+
+public class ValuePoolTest {
+
+    @Test
+    public void shareEqualValues() {
+        final AnnounceDeserializer deserializer = new AnnounceDeserializer();
+        final List<Announce> announces = parse(deserializer, 2);
+        final AnnounceParams first = announces.get(0).getParams();
+        final AnnounceParams second = announces.get(1).getParams();
+
+        assertNotSame(first.getDevice(), second.getDevice(), "Devices shared");
+        assertSame(first.getDevice().getFamilyType(), second.getDevice().getFamilyType(), "Family type not shared");
+        assertSame(first.getDevice().getFirmwareVersion(), second.getDevice().getFirmwareVersion(), "Firmware version not shared");
+        assertSame(first.getNetSettings().getInterface().getName(), second.getNetSettings().getInterface().getName(), "Interface name not shared");
+        assertSame(first.services, second.services, "Services not shared");
+        assertTrue(deserializer.getSavedHeapBytesPerDevice() > 0, "No heap saved");
+    }
+
+    @Test
+    public void shareEqualValuesOfLazyAnnounces() {
+        final AnnounceDeserializer deserializer = new AnnounceDeserializer();
+        deserializer.setLazyParsing(true);
+        final List<Announce> announces = parse(deserializer, 2);
+        final AnnounceParams first = announces.get(0).getParams();
+        final AnnounceParams second = announces.get(1).getParams();
+
+        assertEquals(7, first.getServices().size(), "Services not materialized");
+        assertEquals(7, second.getServices().size(), "Services not materialized");
+        assertSame(first.services, second.services, "Services not shared");
+        assertSame(first.getNetSettings().getInterface().getType(), second.getNetSettings().getInterface().getType(), "Interface type not shared");
+    }
+
+    @Test
+    public void poolIsBounded() {
+        final ValuePool pool = new ValuePool(4);
+        for (int i = 0; i < 10; i++) {
+            final AnnounceParams params = new AnnounceParams();
+            params.device = new Device();
+            params.device.familyType = "family" + i;
+            pool.canonicalize(params);
+        }
+        assertEquals(4, pool.size(), "Pool not bounded");
+    }
+
+    /*
+     * All devices of the stress test announce the same values except
+     * their UUIDs, so every device after the first one shares all of
+     * its pooled values. Changed announces of known devices share them
+     * as well and must not inflate the figure.
+     */
+    @Test
+    public void savedHeapPerDevice() {
+        final AnnounceDeserializer single = new AnnounceDeserializer();
+        parse(single, 2);
+        final long perDuplicate = 2 * single.getSavedHeapBytesPerDevice();
+        assertTrue(perDuplicate >= 1024, "Less than 1 KiB saved per device: " + perDuplicate);
+
+        final int devices = 1000;
+        final AnnounceDeserializer deserializer = new AnnounceDeserializer();
+        final List<Announce> announces = parse(deserializer, devices);
+        assertEquals((devices - 1) * perDuplicate / devices, deserializer.getSavedHeapBytesPerDevice(),
+            "Wrong heap saved per device");
+
+        final List<String> uuids = new ArrayList<>(devices);
+        for (final Announce announce : announces) {
+            uuids.add(announce.getParams().getDevice().getUuid());
+        }
+        for (final String uuid : uuids) {
+            deserializer.update(null, StressTestMessageReceiver.getAnnounceString(uuid, 16));
+        }
+        assertEquals((2 * devices - 1) * perDuplicate / (2 * devices), deserializer.getSavedHeapBytesPerDevice(),
+            "Changed announces distort the heap saved per device");
+    }
+
+    private static List<Announce> parse(AnnounceDeserializer deserializer, int count) {
+        final List<Announce> announces = new ArrayList<>(count);
+        deserializer.addObserver((observable, arg) -> announces.add((Announce)arg));
+        for (int i = 0; i < count; i++) {
+            deserializer.update(null, StressTestMessageReceiver.getAnnounceString(UUID.randomUUID().toString()));
+        }
+        return announces;
+    }
+}
@@ -42,6 +42,7 @@ import com.hbm.devices.scan.ScanInterfaces;
 import com.hbm.devices.scan.announce.Announce;
 import com.hbm.devices.scan.announce.AnnounceDeserializer;
 import com.hbm.devices.scan.announce.AnnounceReceiver;
+import com.hbm.devices.scan.announce.AsyncObserver;
 import com.hbm.devices.scan.announce.ConnectionFinder;
 import com.hbm.devices.scan.announce.Device;
 import com.hbm.devices.scan.announce.DeviceMonitor;
@@ -49,6 +50,7 @@ import com.hbm.devices.scan.announce.IPEntry;
 import com.hbm.devices.scan.announce.Interface;
 import com.hbm.devices.scan.announce.LostDeviceEvent;
 import com.hbm.devices.scan.announce.NewDeviceEvent;
+import com.hbm.devices.scan.announce.OverflowPolicy;
 import com.hbm.devices.scan.announce.ServiceEntry;
 import com.hbm.devices.scan.announce.UpdateDeviceEvent;
 import com.hbm.devices.scan.announce.filter.FamilytypeMatch;
@@ -64,6 +66,7 @@ public final class Receiver implements Observer {
 
     private final EventLogger eventLogger;
     private static final Logger LOGGER = Logger.getLogger(ScanConstants.LOGGER_NAME);
+    private static final int GUI_QUEUE_SIZE = 1024;
 
     private Receiver() throws SocketException {
         eventLogger = new EventLogger();
@@ -93,7 +96,7 @@ public final class Receiver implements Observer {
                 final DeviceMonitor deviceMonitorGuiFrame = new DeviceMonitor();
                 announceParser.addObserver(deviceMonitorGuiFrame);
                 ReceiverFrame guiFrame = new ReceiverFrame();
-                deviceMonitorGuiFrame.addObserver(guiFrame);
+                deviceMonitorGuiFrame.addObserver(new AsyncObserver(guiFrame, GUI_QUEUE_SIZE, OverflowPolicy.COALESCE));
             }
 
             announceReceiver.run();